@@ -0,0 +1,541 @@
+package com.group29.skipbo;
+
+import com.group29.skipbo.card.BuildingPile;
+import com.group29.skipbo.card.Card;
+import com.group29.skipbo.card.CardColor;
+import com.group29.skipbo.card.DiscardPile;
+import com.group29.skipbo.net.ServerMessage;
+import com.group29.skipbo.net.ServerMessageParser;
+import com.group29.skipbo.net.SkipBoNetworkClient;
+import com.group29.skipbo.player.Hand;
+import com.group29.skipbo.player.StockPile;
+import com.group29.skipbo.rules.MoveValidator;
+import com.group29.skipbo.server.LatencyHistogram;
+import protocol.Command;
+import protocol.client.End;
+import protocol.client.Game;
+import protocol.client.Hello;
+import protocol.client.Table;
+import protocol.common.Feature;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// we use this to put real load on a SkipBoServer: thousands of scripted clients on
+// virtual threads, each says HELLO, asks for a game and plays legal moves (found with
+// MoveValidator) until someone wins, then connects again and plays the next game
+// at the end we print the connect rate, commands per second and latency per command
+public class LoadGenerator {
+
+    // a client in a game that hears nothing for this long is stuck, we drop it
+    private static final long STALL_MS = 15_000;
+    private static final long PROGRESS_INTERVAL_S = 5;
+
+    private final String host;
+    private final int port;
+    private final int playersPerGame;
+    private final boolean binary;
+    private final Stats stats;
+    private final List<ScriptedClient> clients;
+    private volatile boolean stopping;
+
+    public LoadGenerator(String host, int port, int playersPerGame, boolean binary) {
+        this.host = host;
+        this.port = port;
+        this.playersPerGame = playersPerGame;
+        this.binary = binary;
+        this.stats = new Stats();
+        this.clients = new CopyOnWriteArrayList<>();
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        String host = "localhost";
+        int port = 7777;
+        int clientCount = 1000;
+        int players = 2;
+        long durationS = 60;
+        long rampS = 10;
+        boolean binary = false;
+
+        List<String> positional = new ArrayList<>();
+        try {
+            for (String arg : args) {
+                if (arg.startsWith("--clients=")) {
+                    clientCount = Integer.parseInt(arg.substring("--clients=".length()));
+                } else if (arg.startsWith("--players=")) {
+                    players = Integer.parseInt(arg.substring("--players=".length()));
+                } else if (arg.startsWith("--duration=")) {
+                    durationS = Long.parseLong(arg.substring("--duration=".length()));
+                } else if (arg.startsWith("--ramp=")) {
+                    rampS = Long.parseLong(arg.substring("--ramp=".length()));
+                } else if (arg.equals("--binary")) {
+                    binary = true;
+                } else {
+                    positional.add(arg);
+                }
+            }
+            if (positional.size() > 0) {
+                host = positional.get(0);
+            }
+            if (positional.size() > 1) {
+                port = Integer.parseInt(positional.get(1));
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("Usage: [host] [port] [--clients=n] [--players=2..6] [--duration=s] [--ramp=s] [--binary]");
+            return;
+        }
+
+        System.out.println("Load test against " + host + ":" + port + ": " + clientCount + " clients, games of "
+                + players + ", " + durationS + " s (ramp " + rampS + " s)" + (binary ? ", binary" : ""));
+        LoadGenerator generator = new LoadGenerator(host, port, players, binary);
+        generator.run(clientCount, durationS, rampS);
+    }
+
+    // we start the clients over rampS seconds, let them play until durationS is over
+    // and print the report
+    public void run(int clientCount, long durationS, long rampS) throws InterruptedException {
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("load-timer").daemon(true).factory());
+        long started = System.nanoTime();
+        timer.scheduleAtFixedRate(this::dropStalled, 1, 1, TimeUnit.SECONDS);
+        timer.scheduleAtFixedRate(() -> printProgress(started), PROGRESS_INTERVAL_S, PROGRESS_INTERVAL_S,
+                TimeUnit.SECONDS);
+
+        List<Thread> threads = new ArrayList<>();
+        long end = started + TimeUnit.SECONDS.toNanos(durationS);
+        long gapNanos = clientCount > 0 ? TimeUnit.SECONDS.toNanos(rampS) / clientCount : 0;
+        for (int i = 0; i < clientCount && System.nanoTime() < end; i++) {
+            ScriptedClient client = new ScriptedClient(i);
+            clients.add(client);
+            threads.add(Thread.ofVirtual().name("load-" + i).start(client));
+            if (gapNanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(gapNanos);
+            }
+        }
+
+        long left = end - System.nanoTime();
+        if (left > 0) {
+            TimeUnit.NANOSECONDS.sleep(left);
+        }
+        stopping = true;
+        for (ScriptedClient client : clients) {
+            client.close();
+        }
+        for (Thread thread : threads) {
+            thread.join(5000);
+        }
+        timer.shutdownNow();
+
+        System.out.println(stats.report(System.nanoTime() - started));
+    }
+
+    private void dropStalled() {
+        long now = System.nanoTime();
+        for (ScriptedClient client : clients) {
+            if (client.inGame && now - client.lastMessage > TimeUnit.MILLISECONDS.toNanos(STALL_MS)) {
+                stats.stalls.increment();
+                client.close();
+            }
+        }
+    }
+
+    private void printProgress(long started) {
+        long seconds = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - started);
+        int connected = 0;
+        for (ScriptedClient client : clients) {
+            if (client.connection != null) {
+                connected++;
+            }
+        }
+        System.out.println("[" + seconds + " s] connected=" + connected + " commands=" + stats.commands.sum()
+                + " games=" + stats.gamesFinished.sum() + " errors=" + stats.errors.sum());
+    }
+
+    // ===== ONE SCRIPTED CLIENT =====
+
+    // one player that keeps connecting and playing games, every callback runs on its
+    // own virtual thread (the read loop), only close() comes from other threads
+    private final class ScriptedClient implements Runnable {
+
+        private final int id;
+        private final MoveValidator validator = new MoveValidator();
+        private int session;
+        private String name;
+        volatile SkipBoNetworkClient connection;
+        volatile long lastMessage;
+        volatile boolean inGame;
+
+        // what the client knows of its game
+        private List<String> hand;
+        private String stockTop;
+        private String[] discardTops;
+        private int[] buildingValues;
+        private boolean myTurn;
+        private boolean sawFirstTurn;
+        private boolean gameOver;
+
+        // the command we wait an answer for, and what we wait for before the next move
+        private String pending;
+        private long pendingSince;
+        private boolean waitingHand;
+        private boolean waitingStock;
+        private boolean waitingTable;
+        private int errorsInRow;
+
+        ScriptedClient(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public void run() {
+            while (!stopping) {
+                playSession();
+            }
+        }
+
+        private void playSession() {
+            name = "load-" + id + "-" + session++;
+            resetGame();
+            long start = System.nanoTime();
+            try (SkipBoNetworkClient client = new SkipBoNetworkClient(host, port)) {
+                stats.connects.increment();
+                stats.latency("CONNECT").record(System.nanoTime() - start);
+                connection = client;
+                lastMessage = System.nanoTime();
+                send("HELLO", new Hello(name, binary ? new Feature[] { Feature.BINARY } : new Feature[0]));
+                client.readLoop(this::onLine);
+            } catch (IOException e) {
+                if (connection == null) {
+                    stats.connectFailures.increment();
+                    sleepQuietly(100); // the server is full or gone, we don't spin
+                } else if (!gameOver && !stopping) {
+                    stats.dropped.increment();
+                }
+            } catch (RuntimeException e) {
+                // a line we couldn't follow, this session is lost but the client goes on
+                stats.errors.increment();
+            } finally {
+                connection = null;
+                inGame = false;
+            }
+        }
+
+        void close() {
+            SkipBoNetworkClient client = connection;
+            if (client != null) {
+                try {
+                    client.close();
+                } catch (IOException e) {
+                    // already closed
+                }
+            }
+        }
+
+        private void resetGame() {
+            hand = new ArrayList<>();
+            stockTop = null;
+            discardTops = new String[] { "X", "X", "X", "X" };
+            buildingValues = new int[4];
+            myTurn = false;
+            sawFirstTurn = false;
+            gameOver = false;
+            pending = null;
+            waitingHand = false;
+            waitingStock = false;
+            waitingTable = false;
+            errorsInRow = 0;
+        }
+
+        private void onLine(String line) {
+            lastMessage = System.nanoTime();
+            ServerMessage msg = ServerMessageParser.parse(line);
+            String[] args = msg.args();
+            switch (msg.command()) {
+                case "WELCOME":
+                    answered("HELLO");
+                    send("GAME", new Game(playersPerGame));
+                    break;
+                case "QUEUE":
+                    answered("GAME");
+                    break;
+                case "START":
+                    answered("GAME");
+                    inGame = true;
+                    break;
+                case "HAND":
+                    hand = parseList(args.length > 0 ? args[0] : "");
+                    waitingHand = false;
+                    answered("HAND");
+                    act();
+                    break;
+                case "STOCK":
+                    if (args.length > 1 && args[0].equals(name)) {
+                        stockTop = args[1];
+                        waitingStock = false;
+                        act();
+                    }
+                    break;
+                case "TURN":
+                    onTurn(args[0]);
+                    break;
+                case "PLAY":
+                    onPlay(args);
+                    break;
+                case "DISCARD":
+                    if (args.length > 2 && args[0].equals(name)) {
+                        if (!hand.isEmpty()) {
+                            hand.remove(0); // the server discards the first card
+                        }
+                        discardTops[Integer.parseInt(args[2])] = args[1];
+                        errorsInRow = 0;
+                        answered("END");
+                    }
+                    break;
+                case "TABLE":
+                    onTable(args);
+                    break;
+                case "ERROR":
+                    onError();
+                    break;
+                case "WINNER":
+                    stats.gamesFinished.increment();
+                    gameOver = true;
+                    close();
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void onTurn(String player) {
+            myTurn = player.equals(name);
+            // the deal sends HAND before the first TURN, every later turn gets its
+            // refilled hand right after the TURN
+            if (myTurn && sawFirstTurn) {
+                waitingHand = true;
+            }
+            sawFirstTurn = true;
+            act();
+        }
+
+        // PLAY~player~from~B.i~value
+        private void onPlay(String[] args) {
+            if (args.length < 4) {
+                return;
+            }
+            int building = Integer.parseInt(args[2].substring(2));
+            buildingValues[building] = Integer.parseInt(args[3]);
+            if (!args[0].equals(name)) {
+                return;
+            }
+
+            String from = args[1];
+            if (from.equals("S")) {
+                // STOCK with the new top follows, or WINNER if it was the last card
+                stockTop = null;
+                waitingStock = true;
+            } else if (from.startsWith("H.")) {
+                hand.remove(Integer.parseInt(from.substring(2)));
+                // the server refills an empty hand and sends it
+                waitingHand = hand.isEmpty();
+            } else {
+                // we can't see the card under the one we played, the table shows it
+                discardTops[Integer.parseInt(from.substring(2))] = null;
+                waitingTable = true;
+                errorsInRow = 0;
+                answered("PLAY");
+                send("TABLE", new Table());
+                return;
+            }
+            errorsInRow = 0;
+            answered("PLAY");
+            act();
+        }
+
+        // TABLE~b0.b1.b2.b3~name.d0.d1.d2.d3,...
+        private void onTable(String[] args) {
+            if (args.length > 1) {
+                for (String player : args[1].split(",")) {
+                    String[] parts = player.split("\\.");
+                    if (parts[0].equals(name) && parts.length == 5) {
+                        System.arraycopy(parts, 1, discardTops, 0, 4);
+                    }
+                }
+            }
+            waitingTable = false;
+            answered("TABLE");
+            act();
+        }
+
+        // we were out of step with the server, we fetch the hand again or give up
+        private void onError() {
+            stats.errors.increment();
+            pending = null;
+            if (++errorsInRow > 3) {
+                close();
+            } else if (myTurn) {
+                waitingHand = true;
+                send("HAND", new protocol.client.Hand());
+            }
+        }
+
+        // on our turn, once we know everything, we play a legal move or end the turn
+        private void act() {
+            if (!myTurn || gameOver || pending != null || waitingHand || waitingStock || waitingTable) {
+                return;
+            }
+
+            BuildingPile[] piles = new BuildingPile[buildingValues.length];
+            for (int i = 0; i < piles.length; i++) {
+                piles[i] = new BuildingPile();
+                for (int v = 0; v < buildingValues[i]; v++) {
+                    piles[i].play(Card.skipBo());
+                }
+            }
+            StockPile stock = new StockPile();
+            if (stockTop != null && !stockTop.equals("X")) {
+                stock.addToTop(parseCard(stockTop));
+            }
+            Hand cards = new Hand();
+            for (String token : hand) {
+                cards.add(parseCard(token));
+            }
+            List<DiscardPile> discards = new ArrayList<>();
+            for (String top : discardTops) {
+                DiscardPile pile = new DiscardPile();
+                if (top != null && !top.equals("X")) {
+                    pile.discard(parseCard(top));
+                }
+                discards.add(pile);
+            }
+
+            // stock first (that is how you win), then discards, then the hand
+            MoveValidator.Move best = null;
+            for (MoveValidator.Move move : validator.allPossibleMoves(stock, cards, discards, piles)) {
+                if (best == null || rank(move) < rank(best)) {
+                    best = move;
+                }
+            }
+            if (best == null) {
+                send("END", new End());
+                return;
+            }
+            String from;
+            if (best.source() == MoveValidator.Move.Source.STOCK) {
+                from = "S";
+            } else if (best.source() == MoveValidator.Move.Source.DISCARD) {
+                from = "D." + best.sourceIndex();
+            } else {
+                from = "H." + best.sourceIndex();
+            }
+            String line = "PLAY~" + from + "~B." + best.buildingIndex();
+            send("PLAY", () -> line);
+        }
+
+        private int rank(MoveValidator.Move move) {
+            switch (move.source()) {
+                case STOCK:
+                    return 0;
+                case DISCARD:
+                    return 1;
+                default:
+                    return 2;
+            }
+        }
+
+        private void send(String command, Command cmd) {
+            SkipBoNetworkClient client = connection;
+            if (client == null) {
+                return;
+            }
+            pending = command;
+            pendingSince = System.nanoTime();
+            stats.commands.increment();
+            client.send(cmd);
+        }
+
+        // we got the answer to command, if it was the one we waited for we time it
+        private void answered(String command) {
+            if (command.equals(pending)) {
+                stats.latency(command).record(System.nanoTime() - pendingSince);
+                pending = null;
+            }
+        }
+    }
+
+    private static List<String> parseList(String value) {
+        List<String> list = new ArrayList<>();
+        if (!value.isEmpty()) {
+            for (String token : value.split(",")) {
+                list.add(token);
+            }
+        }
+        return list;
+    }
+
+    // 7-R or SB, the color doesn't matter for the rules
+    private static Card parseCard(String token) {
+        if (token.equals("SB")) {
+            return Card.skipBo();
+        }
+        int dash = token.indexOf('-');
+        return Card.numbered(CardColor.RED, Integer.parseInt(dash < 0 ? token : token.substring(0, dash)));
+    }
+
+    private static void sleepQuietly(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ===== NUMBERS =====
+
+    private static final class Stats {
+        final LongAdder connects = new LongAdder();
+        final LongAdder connectFailures = new LongAdder();
+        final LongAdder dropped = new LongAdder();
+        final LongAdder commands = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder gamesFinished = new LongAdder();
+        final LongAdder stalls = new LongAdder();
+        private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+
+        LatencyHistogram latency(String command) {
+            return latencies.computeIfAbsent(command, c -> new LatencyHistogram());
+        }
+
+        String report(long elapsedNanos) {
+            double seconds = elapsedNanos / 1e9;
+            StringBuilder out = new StringBuilder();
+            out.append(String.format(Locale.ROOT, "connects: %d (%.1f/s), failed: %d, dropped by server: %d%n",
+                    connects.sum(), connects.sum() / seconds, connectFailures.sum(), dropped.sum()));
+            out.append(String.format(Locale.ROOT, "commands: %d (%.1f/s), errors: %d%n",
+                    commands.sum(), commands.sum() / seconds, errors.sum()));
+            out.append(String.format(Locale.ROOT, "games finished: %d, stalled clients: %d%n",
+                    gamesFinished.sum(), stalls.sum()));
+            out.append(String.format(Locale.ROOT, "%-8s %10s %9s %9s %9s %9s%n",
+                    "latency", "count", "p50 ms", "p90 ms", "p99 ms", "max ms"));
+            for (String command : new String[] { "CONNECT", "HELLO", "GAME", "PLAY", "END", "HAND", "TABLE" }) {
+                LatencyHistogram histogram = latencies.get(command);
+                if (histogram == null) {
+                    continue;
+                }
+                out.append(String.format(Locale.ROOT, "%-8s %10d %9.2f %9.2f %9.2f %9.2f%n", command,
+                        histogram.count(), histogram.percentile(0.50) / 1e3, histogram.percentile(0.90) / 1e3,
+                        histogram.percentile(0.99) / 1e3, histogram.max() / 1e3));
+            }
+            return out.toString();
+        }
+    }
+}
@@ -40,10 +40,11 @@ public class TournamentMain {
                         ServerMessage msg = ServerMessageParser.parse(line);
                         handler.handle(msg);
 
-                        // simple auto-resync strategy
+                        // simple auto-resync strategy, with our versions the server
+                        // answers NOTMODIFIED when nothing changed
                         if (msg.command().equals("PLAY")) {
-                            client.send(new Table());
-                            client.send(new protocol.client.Hand());
+                            client.send(new Table(state.tableVersion));
+                            client.send(new protocol.client.Hand(state.handVersion));
                         }
                         if (msg.command().equals("ERROR")) {
                             client.send(new Table());
@@ -153,6 +154,10 @@ public class TournamentMain {
                 list.add(Feature.LOBBY);
             if (c == 'M')
                 list.add(Feature.MASTER);
+            if (c == 'B')
+                list.add(Feature.BINARY);
+            if (c == 'T')
+                list.add(Feature.TABLE_DELTA);
         }
         return list.toArray(new Feature[0]);
     }
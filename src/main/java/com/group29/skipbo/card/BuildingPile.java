@@ -1,7 +1,10 @@
 package com.group29.skipbo.card;
 
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Deque;
+import java.util.List;
+import java.util.function.Consumer;
 
 public class BuildingPile {
     private static final int MAX_VALUE = 12;
@@ -9,6 +12,19 @@ public class BuildingPile {
     private final Deque<Card> cards = new ArrayDeque<>();
     private int currentValue = 0; // 0 means empty pile (next required is 1)
     private boolean justCompleted = false; // true only immediately after a 12 is played
+    private final Consumer<List<Card>> onCompleted; // gets each completed sequence, null drops it
+
+    public BuildingPile() {
+        this(null);
+    }
+
+    /**
+     * A pile that hands the cards of every completed sequence to onCompleted
+     * while it clears itself (Game puts them back into the draw pile).
+     */
+    public BuildingPile(Consumer<List<Card>> onCompleted) {
+        this.onCompleted = onCompleted;
+    }
 
     public int getNextRequiredNumber() {
         return currentValue + 1;
@@ -63,6 +79,9 @@ public class BuildingPile {
     }
 
     private void clear() {
+        if (onCompleted != null) {
+            onCompleted.accept(new ArrayList<>(cards));
+        }
         cards.clear();
         currentValue = 0;
     }
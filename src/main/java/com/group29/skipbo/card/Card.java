@@ -1,30 +1,68 @@
 package com.group29.skipbo.card;
 
-public class Card {
+// a card is one of 49 canonical instances (12 numbers in each of the 4 colors and
+// the Skip-Bo card), made once; decks and piles only hold references to them, so
+// two cards with the same color and number are the same object
+public final class Card {
+
+    private static final int NUMBERS = 12;
+    private static final CardColor[] COLORS = {CardColor.BLUE, CardColor.GREEN, CardColor.RED, CardColor.YELLOW};
+
+    // how many different cards there are, every ordinal is below this
+    public static final int COUNT = COLORS.length * NUMBERS + 1;
+
+    private static final Card[] CARDS = new Card[COUNT];
+    private static final Card SKIP_BO;
+
+    static {
+        for (CardColor color : COLORS) {
+            for (int number = 1; number <= NUMBERS; number++) {
+                int ordinal = color.ordinal() * NUMBERS + number - 1;
+                CARDS[ordinal] = new Card(color, number, ordinal, number + "-" + label(color));
+            }
+        }
+        SKIP_BO = new Card(CardColor.SKIPBO, 0, COUNT - 1, "SB");
+        CARDS[COUNT - 1] = SKIP_BO;
+    }
 
     private final CardColor color;
-    private final Integer number; // null = skipbo
+    private final int number; // 0 = skipbo
+    private final int ordinal;
+    private final String token;
 
-    private Card(CardColor color, Integer number) {
+    private Card(CardColor color, int number, int ordinal, String token) {
         this.color = color;
         this.number = number;
+        this.ordinal = ordinal;
+        this.token = token;
     }
 
     // numbered cards
     public static Card numbered(CardColor color, int number) {
-        if (number < 1 || number > 12) {
+        if (number < 1 || number > NUMBERS) {
             throw new IllegalArgumentException("Card number must be between 1 and 12");
         }
-        return new Card(color, number);
+        if (color == CardColor.SKIPBO) {
+            throw new IllegalArgumentException("Skip Bo cards have no number");
+        }
+        return CARDS[color.ordinal() * NUMBERS + number - 1];
     }
 
     // skipbo cards
     public static Card skipBo() {
-        return new Card(CardColor.SKIPBO, null);
+        return SKIP_BO;
+    }
+
+    // the card with this ordinal (see getOrdinal)
+    public static Card fromOrdinal(int ordinal) {
+        if (ordinal < 0 || ordinal >= COUNT) {
+            throw new IllegalArgumentException("No card with ordinal " + ordinal);
+        }
+        return CARDS[ordinal];
     }
 
     public boolean isSkipBo() {
-        return number == null;
+        return number == 0;
     }
 
     public int getNumber() {
@@ -37,4 +75,35 @@ public class Card {
     public CardColor getColor() {
         return color;
     }
-}
\ No newline at end of file
+
+    // a compact number for the card, 0 to COUNT - 1, fits in a byte
+    public int getOrdinal() {
+        return ordinal;
+    }
+
+    // the card the way the protocol writes it, 7-R or SB
+    public String getToken() {
+        return token;
+    }
+
+    @Override
+    public String toString() {
+        return token;
+    }
+
+    // we get a single letter for the color
+    private static String label(CardColor color) {
+        switch (color) {
+            case RED:
+                return "R";
+            case GREEN:
+                return "G";
+            case BLUE:
+                return "B";
+            case YELLOW:
+                return "Y";
+            default:
+                return "?";
+        }
+    }
+}
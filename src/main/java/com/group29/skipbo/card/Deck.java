@@ -3,6 +3,7 @@ package com.group29.skipbo.card;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 public class Deck {
 
@@ -17,6 +18,12 @@ public class Deck {
 
     // creates a 126 card deck
     public static Deck createStandardDeck() {
+        return createStandardDeck(new Random());
+    }
+
+    // the same deck shuffled by the given random, a seeded one always deals the same game
+    // (the cards are Card's shared instances, the deck only holds references)
+    public static Deck createStandardDeck(Random random) {
         Deck deck = new Deck();
 
         for (CardColor color : CardColor.values()) {
@@ -33,7 +40,7 @@ public class Deck {
             deck.cards.add(Card.skipBo());
         }
 
-        deck.shuffle();
+        deck.shuffle(random);
         return deck;
     }
 
@@ -41,6 +48,10 @@ public class Deck {
         Collections.shuffle(cards);
     }
 
+    public void shuffle(Random random) {
+        Collections.shuffle(cards, random);
+    }
+
     public Card draw() {
         if (isEmpty()) {
             throw new IllegalStateException("Cannot draw from empty deck");
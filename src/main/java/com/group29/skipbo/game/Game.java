@@ -1,13 +1,17 @@
 package com.group29.skipbo.game;
 
 import com.group29.skipbo.card.BuildingPile;
+import com.group29.skipbo.card.Card;
 import com.group29.skipbo.card.Deck;
 import com.group29.skipbo.player.Player;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 // we use this class to run the game, its the main game logic (Model in MVC)
 public class Game {
@@ -23,18 +27,29 @@ public class Game {
     private GameState state;
     private int currentPlayerIndex;
     private Map<Player, Integer> scores;
+    // every shuffle of this game comes from here, so the seed and the moves are enough
+    // to play the same game again (the move journal relies on that)
+    private final long seed;
+    private final Random random;
 
     // we use this to create a new game, starts in waiting state
     public Game() {
+        this(ThreadLocalRandom.current().nextLong());
+    }
+
+    // the same with a chosen seed, two games with one seed deal the same cards
+    public Game(long seed) {
+        this.seed = seed;
+        this.random = new Random(seed);
         this.players = new ArrayList<>();
         this.buildingPiles = new BuildingPile[NUM_BUILDING_PILES];
         this.state = GameState.WAITING_FOR_PLAYERS;
         this.currentPlayerIndex = 0;
         this.scores = new HashMap<>();
 
-        // we make the 4 building piles here
+        // we make the 4 building piles here, a completed one goes back into the draw pile
         for (int i = 0; i < NUM_BUILDING_PILES; i++) {
-            buildingPiles[i] = new BuildingPile();
+            buildingPiles[i] = new BuildingPile(this::recycle);
         }
     }
 
@@ -74,7 +89,7 @@ public class Game {
         }
 
         // we create the deck and shuffle it
-        this.drawPile = Deck.createStandardDeck();
+        this.drawPile = Deck.createStandardDeck(random);
 
         // we figure out how many stock cards each player gets
         // 2 players = 30 cards, 3-4 players = 20 cards, 5+ players = 15 cards
@@ -150,6 +165,10 @@ public class Game {
         return drawPile;
     }
 
+    public long getSeed() {
+        return seed;
+    }
+
     // we use this to get a players score
     public int getScore(Player player) {
         if (!scores.containsKey(player)) {
@@ -171,6 +190,14 @@ public class Game {
         scores.put(player, current + points);
     }
 
+    // we put the cards of a completed building pile back under the draw pile
+    // (shuffled), otherwise a long game runs out of cards to draw
+    // the pile calls this while the card is played, so every game (server, replay, local) does it
+    private void recycle(List<Card> cards) {
+        Collections.shuffle(cards, random);
+        drawPile.addToBottom(cards);
+    }
+
     // we call this when someone empties their stock pile
     public void endRound(Player winner) {
         if (state != GameState.IN_PROGRESS) {
@@ -213,7 +240,7 @@ public class Game {
 
     // we use this to figure out how many stock cards per player
     // based on number of players (skip-bo rules)
-    private int getStockSize(int playerCount) {
+    public static int getStockSize(int playerCount) {
         if (playerCount <= 2) {
             return 30;
         } else if (playerCount <= 4) {
@@ -0,0 +1,624 @@
+package com.group29.skipbo.gateway;
+
+import com.group29.skipbo.server.ServerView;
+import protocol.Command;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+// we use this to spread games over several SkipBoServer processes
+// clients connect here, the gateway answers HELLO itself (so names are unique over
+// all backends) and queues GAME~n itself, one FIFO per table size like the servers do;
+// once n seats are waiting (a player's bots count as seats) the table gets a number,
+// its backend comes from a consistent hash ring, and all of its players are handed
+// to that backend together, so a backend only ever gets whole tables and its own
+// queue never waits for players that went elsewhere
+// backends register on a port of their own, not the clients' one, by sending
+// REGISTER~port~secret (SkipBoServer --gateway); that port listens on loopback unless
+// it is given an admin interface and a secret, so no client can put itself on the ring
+public class Gateway {
+
+    private static final int ACCEPT_BACKLOG = 1024;
+    // the first line tells a backend from a client, nothing sane is longer
+    private static final int MAX_FIRST_LINE = 1024;
+    static final int MIN_PLAYERS = 2;
+    static final int MAX_PLAYERS = 6;
+    private static final String LOOPBACK = "127.0.0.1";
+    public static final long DEFAULT_RESUME_WAIT_MS = 30_000;
+
+    // one backend process
+    static final class Backend {
+        final String host;
+        final int port;
+
+        Backend(String host, int port) {
+            this.host = host;
+            this.port = port;
+        }
+
+        String id() {
+            return host + ":" + port;
+        }
+
+        @Override
+        public String toString() {
+            return id();
+        }
+    }
+
+    // a player whose connection dropped mid game: RESUME with the token the gateway
+    // gave it finds its backend again, and the gateway shows that backend its own token
+    static final class Parked {
+        final String token;
+        final String features;
+        final Backend backend;
+        final String backendToken;
+        final long until;
+
+        Parked(String token, String features, Backend backend, String backendToken, long until) {
+            this.token = token;
+            this.features = features;
+            this.backend = backend;
+            this.backendToken = backendToken;
+            this.until = until;
+        }
+    }
+
+    // a full table: its number, its backend (null if none was up) and its players
+    // with the seats each one takes (the player and its bots), oldest first
+    static final class Table {
+        final long id;
+        final int size;
+        final Backend backend;
+        final Map<GatewaySession, Integer> seats;
+
+        Table(long id, int size, Backend backend, Map<GatewaySession, Integer> seats) {
+            this.id = id;
+            this.size = size;
+            this.backend = backend;
+            this.seats = seats;
+        }
+
+        List<GatewaySession> players() {
+            return new ArrayList<>(seats.keySet());
+        }
+    }
+
+    private final int port;
+    // where backends register, see configureRegistration
+    private String registrationHost;
+    private int registrationPort;
+    private String registrationSecret;
+    private final HashRing<Backend> ring;
+    // names taken by connected clients, over all backends
+    private final Map<String, GatewaySession> names;
+    // how long a dropped player may RESUME, 0 turns Feature.RESUME off; set it to the
+    // backends' --resume-wait
+    private volatile long resumeWaitMs;
+    private final SecureRandom tokens;
+
+    // the ring and the queues, held only for bookkeeping, never while talking to a socket
+    private final ReentrantLock lock;
+    // per table size: the waiting players and the seats each one takes, oldest first
+    private final List<LinkedHashMap<GatewaySession, Integer>> queues;
+    // which queue a player is in
+    private final Map<GatewaySession, Integer> queuedFor;
+    // dropped players by name, oldest first so the expired ones are at the front
+    private final LinkedHashMap<String, Parked> parked;
+    private long nextTableId;
+
+    private volatile boolean running;
+    private ServerSocket serverSocket;
+    private ServerSocket registrationSocket;
+
+    public Gateway(int port) {
+        this.port = port;
+        this.registrationHost = LOOPBACK;
+        this.registrationPort = port + 1;
+        this.ring = new HashRing<>();
+        this.names = new ConcurrentHashMap<>();
+        this.resumeWaitMs = DEFAULT_RESUME_WAIT_MS;
+        this.tokens = new SecureRandom();
+        this.lock = new ReentrantLock();
+        this.queues = new ArrayList<>(MAX_PLAYERS + 1);
+        for (int size = 0; size <= MAX_PLAYERS; size++) {
+            queues.add(new LinkedHashMap<>());
+        }
+        this.queuedFor = new HashMap<>();
+        this.parked = new LinkedHashMap<>();
+        this.nextTableId = 1;
+    }
+
+    // backends register on host:port; a host other than loopback needs a secret the
+    // backends send along (SkipBoServer --gateway-secret), without one we stay on loopback
+    public void configureRegistration(String host, int port, String secret) {
+        this.registrationSecret = secret == null || secret.isEmpty() ? null : secret;
+        this.registrationPort = port;
+        if (registrationSecret == null && !isLoopback(host)) {
+            ServerView.logError("Registration on " + host + " needs a secret, using " + LOOPBACK);
+            host = LOOPBACK;
+        }
+        this.registrationHost = host;
+    }
+
+    // a dropped player may RESUME for waitMs, 0 turns resumption off (R is no longer offered)
+    public void configureResumption(long waitMs) {
+        this.resumeWaitMs = Math.max(0, waitMs);
+    }
+
+    // usage: [port] [--backend-port=n] [--backend-host=address] [--backend-secret=secret]
+    //        [--resume-wait=ms]
+    public static void main(String[] args) {
+        int port = 7777;
+        int backendPort = -1;
+        String backendHost = LOOPBACK;
+        String backendSecret = null;
+        long resumeWaitMs = DEFAULT_RESUME_WAIT_MS;
+        for (String arg : args) {
+            if (arg.startsWith("--backend-port=")) {
+                try {
+                    backendPort = Integer.parseInt(arg.substring("--backend-port=".length()));
+                } catch (NumberFormatException e) {
+                    System.out.println("Invalid backend port, using the port after the client port");
+                }
+            } else if (arg.startsWith("--backend-host=")) {
+                backendHost = arg.substring("--backend-host=".length());
+            } else if (arg.startsWith("--backend-secret=")) {
+                backendSecret = arg.substring("--backend-secret=".length());
+            } else if (arg.startsWith("--resume-wait=")) {
+                try {
+                    resumeWaitMs = Long.parseLong(arg.substring("--resume-wait=".length()));
+                } catch (NumberFormatException e) {
+                    System.out.println("Invalid resume wait, using " + resumeWaitMs + " ms");
+                }
+            } else {
+                try {
+                    port = Integer.parseInt(arg);
+                } catch (NumberFormatException e) {
+                    System.out.println("Invalid port, using default 7777");
+                }
+            }
+        }
+        System.out.println("=================================");
+        System.out.println("    Skip-Bo Gateway");
+        System.out.println("=================================");
+        Gateway gateway = new Gateway(port);
+        gateway.configureRegistration(backendHost, backendPort >= 0 ? backendPort : port + 1, backendSecret);
+        gateway.configureResumption(resumeWaitMs);
+        gateway.start();
+    }
+
+    // we accept clients and backends until stop() is called, every connection
+    // gets a virtual thread
+    public void start() {
+        running = true;
+        Thread.ofVirtual().name("gateway-registration").start(this::acceptBackends);
+        try (ServerSocket server = new ServerSocket(port, ACCEPT_BACKLOG)) {
+            serverSocket = server;
+            ServerView.log("Gateway listening on port " + port);
+            while (running) {
+                try {
+                    Socket socket = server.accept();
+                    socket.setTcpNoDelay(true);
+                    Thread.ofVirtual().name("gateway-", 0).start(() -> handleConnection(socket));
+                } catch (IOException e) {
+                    if (running) {
+                        ServerView.logError("Error accepting connection: " + e.getMessage());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            ServerView.logError("Could not start gateway: " + e.getMessage());
+        }
+    }
+
+    public void stop() {
+        running = false;
+        for (ServerSocket socket : new ServerSocket[]{serverSocket, registrationSocket}) {
+            try {
+                if (socket != null) {
+                    socket.close();
+                }
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    // a client, REGISTER here is just a command the gateway doesn't know
+    private void handleConnection(Socket socket) {
+        try {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            String first = readLine(in);
+            if (first == null) {
+                socket.close();
+            } else {
+                new GatewaySession(this, socket, in).run(first);
+            }
+        } catch (IOException e) {
+            closeQuietly(socket);
+        }
+    }
+
+    // ===== BACKENDS =====
+
+    private void acceptBackends() {
+        try (ServerSocket server = new ServerSocket(registrationPort, ACCEPT_BACKLOG,
+                InetAddress.getByName(registrationHost))) {
+            registrationSocket = server;
+            ServerView.log("Backends register on " + registrationHost + ":" + registrationPort);
+            while (running) {
+                try {
+                    Socket socket = server.accept();
+                    Thread.ofVirtual().name("gateway-backend-", 0).start(() -> handleBackend(socket));
+                } catch (IOException e) {
+                    if (running) {
+                        ServerView.logError("Error accepting backend: " + e.getMessage());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            ServerView.logError("Could not listen for backends: " + e.getMessage());
+        }
+    }
+
+    private void handleBackend(Socket socket) {
+        try {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            String first = readLine(in);
+            if (first == null || !first.startsWith("REGISTER~")) {
+                socket.close();
+            } else {
+                serveBackend(socket, in, first);
+            }
+        } catch (IOException e) {
+            closeQuietly(socket);
+        }
+    }
+
+    // REGISTER~port~secret: the backend stays on the ring while this connection is open
+    private void serveBackend(Socket socket, InputStream in, String line) throws IOException {
+        String[] parts = line.split(Command.SEPERATOR, -1);
+        String secret = parts.length > 2 ? parts[2] : "";
+        boolean allowed = registrationSecret != null
+                ? MessageDigest.isEqual(secret.getBytes(StandardCharsets.UTF_8),
+                        registrationSecret.getBytes(StandardCharsets.UTF_8))
+                : socket.getInetAddress().isLoopbackAddress();
+        if (!allowed) {
+            ServerView.logError("Refused backend registration from " + socket.getInetAddress().getHostAddress());
+            socket.close();
+            return;
+        }
+        Backend backend;
+        try {
+            int backendPort = Integer.parseInt(parts[1].trim());
+            backend = new Backend(socket.getInetAddress().getHostAddress(), backendPort);
+        } catch (NumberFormatException e) {
+            socket.close();
+            return;
+        }
+
+        lock.lock();
+        try {
+            ring.add(backend.id(), backend);
+        } finally {
+            lock.unlock();
+        }
+        ServerView.log("Backend registered: " + backend + " (" + backendCount() + " backends)");
+        socket.getOutputStream().write("REGISTERED\n".getBytes(StandardCharsets.UTF_8));
+
+        try {
+            // the backend never sends anything else, EOF means it is gone
+            while (in.read() >= 0) {
+                // keep reading
+            }
+        } catch (IOException e) {
+            // the same as EOF
+        } finally {
+            lock.lock();
+            try {
+                ring.remove(backend.id());
+            } finally {
+                lock.unlock();
+            }
+            closeQuietly(socket);
+            ServerView.log("Backend left: " + backend + " (" + backendCount() + " backends)");
+        }
+    }
+
+    int backendCount() {
+        lock.lock();
+        try {
+            return ring.nodes().size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // ===== MATCHING =====
+
+    boolean hasBackends() {
+        return backendCount() > 0;
+    }
+
+    // we queue a player (and its bots) for a table of playerCount, asking again for the
+    // same size keeps its place; false if its table is being seated right now
+    boolean queue(GatewaySession session, int playerCount, int seats) {
+        lock.lock();
+        try {
+            if (session.state != GatewaySession.State.IDLE && session.state != GatewaySession.State.QUEUED) {
+                return false;
+            }
+            Integer queued = queuedFor.get(session);
+            if (queued != null && queued != playerCount) {
+                queues.get(queued).remove(session);
+            }
+            queues.get(playerCount).put(session, seats);
+            queuedFor.put(session, playerCount);
+            session.state = GatewaySession.State.QUEUED;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // a full table of this size if enough seats are waiting, its players are no longer
+    // queued; null while there aren't enough
+    Table takeTable(int size) {
+        lock.lock();
+        try {
+            return formTable(size);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // the seats waiting for a table of this size
+    int waiting(int size) {
+        lock.lock();
+        try {
+            int seats = 0;
+            for (int taken : queues.get(size).values()) {
+                seats += taken;
+            }
+            return seats;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // the player left, its seats are free again
+    void leave(GatewaySession session) {
+        lock.lock();
+        try {
+            Integer queued = queuedFor.remove(session);
+            if (queued != null) {
+                queues.get(queued).remove(session);
+                session.state = GatewaySession.State.IDLE;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // we hand a full table to its backend: everyone says HELLO there first and only once
+    // all of them are in do they send GAME, so the backend gets the whole table or none
+    // of it; if someone can't be seated, the others go back to the front of the queue
+    void seat(Table table) {
+        while (table != null) {
+            List<GatewaySession> connected = new ArrayList<>();
+            boolean complete = table.backend != null;
+            if (complete) {
+                for (GatewaySession player : table.players()) {
+                    if (player.connect(table.backend)) {
+                        connected.add(player);
+                    } else {
+                        complete = false;
+                    }
+                }
+                // someone may have left while the others said HELLO
+                for (GatewaySession player : connected) {
+                    complete &= player.isOpen();
+                }
+            }
+            if (complete) {
+                for (Map.Entry<GatewaySession, Integer> seat : table.seats.entrySet()) {
+                    seat.getKey().join(table.size, seat.getValue() - 1);
+                }
+                ServerView.log("Table " + table.id + " (" + table.size + " seats) -> " + table.backend);
+                return;
+            }
+            table = requeue(table, connected);
+        }
+    }
+
+    // the players of a table that could not be seated: the ones that reached the backend
+    // wait at the front of the queue again, the rest are told (ERROR~205)
+    private Table requeue(Table table, List<GatewaySession> connected) {
+        List<GatewaySession> back = new ArrayList<>();
+        List<GatewaySession> failed = new ArrayList<>();
+        for (GatewaySession player : table.players()) {
+            if (connected.contains(player)) {
+                player.disconnectBackend();
+            }
+            if (connected.contains(player) && player.isOpen()) {
+                back.add(player);
+            } else {
+                failed.add(player);
+            }
+        }
+        lock.lock();
+        try {
+            for (GatewaySession player : failed) {
+                player.state = GatewaySession.State.IDLE;
+            }
+            LinkedHashMap<GatewaySession, Integer> queue = queues.get(table.size);
+            LinkedHashMap<GatewaySession, Integer> reordered = new LinkedHashMap<>();
+            for (GatewaySession player : back) {
+                reordered.put(player, table.seats.get(player));
+                queuedFor.put(player, table.size);
+                player.state = GatewaySession.State.QUEUED;
+            }
+            reordered.putAll(queue);
+            queue.clear();
+            queue.putAll(reordered);
+        } finally {
+            lock.unlock();
+        }
+        for (GatewaySession player : failed) {
+            player.seatFailed();
+        }
+        return takeTable(table.size);
+    }
+
+    // the oldest players whose seats add up to a table, the first that fit so a player
+    // with bots never holds up the ones behind it; null while there aren't enough
+    // caller must hold the lock
+    private Table formTable(int size) {
+        LinkedHashMap<GatewaySession, Integer> queue = queues.get(size);
+        Map<GatewaySession, Integer> seats = new LinkedHashMap<>();
+        int free = size;
+        for (Map.Entry<GatewaySession, Integer> waiting : queue.entrySet()) {
+            if (waiting.getValue() <= free) {
+                seats.put(waiting.getKey(), waiting.getValue());
+                free -= waiting.getValue();
+                if (free == 0) {
+                    break;
+                }
+            }
+        }
+        if (free > 0) {
+            return null;
+        }
+        for (GatewaySession player : seats.keySet()) {
+            queue.remove(player);
+            queuedFor.remove(player);
+            player.state = GatewaySession.State.SEATING;
+        }
+        long tableId = nextTableId++;
+        return new Table(tableId, size, ring.get(tableId), seats);
+    }
+
+    // ===== NAMES =====
+
+    boolean claimName(String name, GatewaySession session) {
+        return names.putIfAbsent(name, session) == null;
+    }
+
+    void releaseName(String name, GatewaySession session) {
+        names.remove(name, session);
+    }
+
+    GatewaySession sessionNamed(String name) {
+        return names.get(name);
+    }
+
+    // ===== RESUMPTION =====
+
+    boolean isResumable() {
+        return resumeWaitMs > 0;
+    }
+
+    // the token a resumable client gets in WELCOME, RESUME has to show it
+    String newSessionToken() {
+        byte[] bytes = new byte[18];
+        tokens.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    // the client dropped during a game, its seat waits on its backend
+    void park(String name, String token, String features, Backend backend, String backendToken) {
+        lock.lock();
+        try {
+            forgetExpired();
+            parked.remove(name);
+            parked.put(name, new Parked(token, features, backend, backendToken,
+                    System.currentTimeMillis() + resumeWaitMs));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // RESUME~name~token: the parked seat if the token is right, it is no longer parked
+    Parked unpark(String name, String token) {
+        lock.lock();
+        try {
+            forgetExpired();
+            Parked seat = parked.get(name);
+            if (seat == null || !MessageDigest.isEqual(seat.token.getBytes(StandardCharsets.UTF_8),
+                    token.getBytes(StandardCharsets.UTF_8))) {
+                return null;
+            }
+            parked.remove(name);
+            return seat;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // caller must hold the lock
+    private void forgetExpired() {
+        long now = System.currentTimeMillis();
+        Iterator<Parked> oldest = parked.values().iterator();
+        while (oldest.hasNext() && oldest.next().until <= now) {
+            oldest.remove();
+        }
+    }
+
+    // ===== HELPERS =====
+
+    // we read one text line without buffering past it, null at EOF
+    static String readLine(InputStream in) throws IOException {
+        return readLine(in, MAX_FIRST_LINE);
+    }
+
+    static String readLine(InputStream in, int maxLength) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                return line.size() > 0 ? line.toString(StandardCharsets.UTF_8) : null;
+            }
+            if (b != '\r') {
+                line.write(b);
+            }
+            if (line.size() > maxLength) {
+                throw new IOException("Line too long");
+            }
+        }
+        return line.toString(StandardCharsets.UTF_8);
+    }
+
+    private static boolean isLoopback(String host) {
+        try {
+            return InetAddress.getByName(host).isLoopbackAddress();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+}
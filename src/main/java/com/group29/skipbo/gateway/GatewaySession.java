@@ -0,0 +1,523 @@
+package com.group29.skipbo.gateway;
+
+import com.group29.skipbo.server.ServerView;
+import protocol.BinaryProtocol;
+import protocol.Command;
+import protocol.ProtocolException;
+import protocol.common.Feature;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+// we use this for one client of the gateway
+// until its table is full we answer the client ourselves (HELLO, ADDBOT, GAME, PING,
+// errors), the gateway queues it; once the table is seated we say HELLO at its backend
+// for it and from then on pass its lines both ways, only watching for WINNER so that
+// the next GAME (or ADDBOT) is queued at the gateway again instead of on that backend
+// with Feature.RESUME the client gets the gateway's token, the backend gives us its
+// own; a client that drops mid game is parked with both, and RESUME with the
+// gateway's token takes the seat back on the same backend with the backend's token
+final class GatewaySession {
+
+    // the features a backend can agree on, we offer the same so the bytes we copy
+    // mean the same on both sides (RESUME only while the gateway keeps dropped seats)
+    private static final String FEATURES = "" + Feature.BINARY.getLetter() + Feature.TABLE_DELTA.getLetter()
+            + Feature.RESUME.getLetter();
+    // a backend's lines can be long (TABLE with six players), but not this long
+    private static final int MAX_BACKEND_LINE = 64 * 1024;
+
+    // where the client is; only the gateway (under its lock) moves it into or out of
+    // a queue or a table being seated
+    enum State {
+        IDLE, QUEUED, SEATING, PLAYING
+    }
+
+    private final Gateway gateway;
+    private final Socket client;
+    private final DataInputStream in;
+    private final OutputStream out;
+
+    private String name;
+    private String features = "";
+    private boolean binary;
+    // with Feature.RESUME: ours for the client, and its backend's for the seat there
+    private volatile String token;
+    private volatile String backendToken;
+    private volatile Gateway.Backend seatedAt;
+    // ADDBOT sent for the next game, they take seats at the client's table
+    private int bots;
+    // the size the client queued for
+    private int playerCount;
+    // the body of the last frame the client sent, passed on as it is while playing
+    private byte[] lastFrame;
+
+    volatile State state = State.IDLE;
+    private volatile boolean closed;
+    private boolean ended;
+
+    // the client's connection to its backend, set while SEATING or PLAYING
+    private volatile Socket backend;
+    private volatile InputStream backendIn;
+    private volatile OutputStream backendOut;
+    private volatile Thread pump;
+    // the backend sent WINNER, the client's next GAME is ours again
+    private volatile boolean finished;
+    // we close the backend on purpose, the pump leaves the client open
+    private volatile boolean detaching;
+
+    GatewaySession(Gateway gateway, Socket client, InputStream in) throws IOException {
+        this.gateway = gateway;
+        this.client = client;
+        this.in = new DataInputStream(in);
+        this.out = client.getOutputStream();
+    }
+
+    // we serve the client until it leaves, first is the line the gateway already read
+    void run(String first) {
+        try {
+            String line = first;
+            while (line != null) {
+                handle(line);
+                line = binary ? readFrame() : Gateway.readLine(in);
+            }
+        } catch (IOException e) {
+            // the client went away
+        } finally {
+            end();
+        }
+    }
+
+    // the client is gone, or a RESUME with its token replaced it; this runs once (a
+    // second caller waits for the first, so a RESUME finds the seat parked):
+    // a queued client gives its seats back, one being seated is noticed there, and one
+    // in a running game that can resume is parked, its backend keeps the seat meanwhile
+    synchronized void end() {
+        if (ended) {
+            return;
+        }
+        ended = true;
+        closed = true;
+        gateway.leave(this);
+        Gateway.Backend at = seatedAt;
+        if (state == State.PLAYING && !finished && token != null && backendToken != null && at != null) {
+            gateway.park(name, token, features, at, backendToken);
+        }
+        disconnectBackend();
+        if (name != null) {
+            gateway.releaseName(name, this);
+        }
+        Gateway.closeQuietly(client);
+    }
+
+    boolean isOpen() {
+        return !closed && !client.isClosed();
+    }
+
+    // one command from the client
+    private void handle(String line) throws IOException {
+        String[] parts = line.trim().split(Command.SEPERATOR, -1);
+        String word = parts[0].toUpperCase();
+        if (state == State.PLAYING) {
+            if (!finished || !(word.equals("GAME") || word.equals("ADDBOT"))) {
+                // the game (or the lobby after it) is the backend's
+                forward(line);
+                return;
+            }
+            // the game is over, the next one is queued here
+            detach();
+        }
+        switch (word) {
+            case "":
+                return;
+            case "HELLO":
+                hello(parts);
+                return;
+            case "PING":
+                send("PONG");
+                return;
+            case "PONG":
+                return;
+            case "ADDBOT":
+                addBot();
+                return;
+            case "GAME":
+                game(parts);
+                return;
+            case "RESUME":
+                resume(parts);
+                return;
+            case "HAND":
+            case "TABLE":
+            case "PLAY":
+            case "END":
+            case "METRICS":
+                send("ERROR~205"); // no game yet, and the gateway keeps no metrics
+                return;
+            default:
+                send("ERROR~204");
+        }
+    }
+
+    // HELLO~name~features, the name must be free on every backend
+    private void hello(String[] parts) throws IOException {
+        if (name != null) {
+            send("ERROR~205");
+            return;
+        }
+        String requested = parts.length > 1 ? parts[1].trim() : "";
+        if (requested.isEmpty()) {
+            send("ERROR~001");
+            return;
+        }
+        if (!gateway.claimName(requested, this)) {
+            send("ERROR~002");
+            return;
+        }
+        name = requested;
+        StringBuilder agreed = new StringBuilder();
+        if (parts.length > 2) {
+            for (char letter : FEATURES.toCharArray()) {
+                if (parts[2].indexOf(letter) >= 0
+                        && (letter != Feature.RESUME.getLetter() || gateway.isResumable())) {
+                    agreed.append(letter);
+                }
+            }
+        }
+        features = agreed.toString();
+        if (features.indexOf(Feature.RESUME.getLetter()) >= 0) {
+            token = gateway.newSessionToken();
+        }
+        welcome();
+    }
+
+    // WELCOME~name~features, with RESUME also our token
+    private void welcome() throws IOException {
+        String line = features.isEmpty() ? "WELCOME~" + name : "WELCOME~" + name + "~" + features;
+        send(token != null ? line + "~" + token : line);
+        binary = features.indexOf(Feature.BINARY.getLetter()) >= 0;
+    }
+
+    // RESUME~name~token~lastSeq instead of HELLO: the client dropped during a game, we
+    // take it to the backend its seat waits on and pass the RESUME on with that
+    // backend's token; WELCOME is ours, RESUMED and the missed events are the backend's
+    private void resume(String[] parts) throws IOException {
+        if (name != null) {
+            send("ERROR~205");
+            return;
+        }
+        if (parts.length < 4) {
+            send("ERROR~204");
+            return;
+        }
+        String requested = parts[1].trim();
+        String given = parts[2].trim();
+        int lastSeq;
+        try {
+            lastSeq = Integer.parseInt(parts[3].trim());
+        } catch (NumberFormatException e) {
+            send("ERROR~204");
+            return;
+        }
+        // we may not have noticed the old connection die yet, the right token ends it
+        GatewaySession old = gateway.sessionNamed(requested);
+        String oldToken = old != null ? old.token : null;
+        if (oldToken != null && MessageDigest.isEqual(oldToken.getBytes(StandardCharsets.UTF_8),
+                given.getBytes(StandardCharsets.UTF_8))) {
+            old.end();
+        }
+        if (!gateway.claimName(requested, this)) {
+            send("ERROR~002");
+            return;
+        }
+        Gateway.Parked seat = gateway.unpark(requested, given);
+        if (seat == null) {
+            gateway.releaseName(requested, this);
+            send("ERROR~205"); // no seat waits for this session
+            return;
+        }
+        name = requested;
+        features = seat.features;
+        token = seat.token;
+        String welcome = open(seat.backend,
+                "RESUME~" + name + "~" + seat.backendToken + "~" + lastSeq);
+        if (welcome == null || !welcome.startsWith("WELCOME")) {
+            // the seat went to a bot meanwhile, or the backend is gone
+            disconnectBackend();
+            gateway.releaseName(name, this);
+            name = null;
+            token = null;
+            send(welcome != null && welcome.startsWith("ERROR") ? welcome : "ERROR~205");
+            return;
+        }
+        backendToken = seat.backendToken;
+        seatedAt = seat.backend;
+        welcome();
+        finished = false;
+        detaching = false;
+        state = State.PLAYING;
+        startPump(0);
+        ServerView.log(name + " resumed on " + seat.backend);
+    }
+
+    // ADDBOT: one more seat for a bot at the client's next table, there must be one
+    // seat left for the client itself
+    private void addBot() throws IOException {
+        State current = state;
+        int limit = current == State.QUEUED ? playerCount - 1 : Gateway.MAX_PLAYERS - 1;
+        if (name == null || current == State.SEATING || bots >= limit) {
+            send("ERROR~205");
+            return;
+        }
+        bots++;
+        send("BOT_ADDED");
+        if (current == State.QUEUED) {
+            queue();
+        }
+    }
+
+    // GAME~n: the gateway queues the client (and its bots) until the table is full
+    private void game(String[] parts) throws IOException {
+        if (name == null || state == State.SEATING) {
+            send("ERROR~205");
+            return;
+        }
+        int requested;
+        try {
+            requested = Integer.parseInt(parts.length > 1 ? parts[1].trim() : "");
+        } catch (NumberFormatException e) {
+            requested = -1;
+        }
+        if (requested < Gateway.MIN_PLAYERS || requested > Gateway.MAX_PLAYERS) {
+            send("ERROR~204");
+            return;
+        }
+        if (!gateway.hasBackends()) {
+            ServerView.logError("No backend for " + name);
+            send("ERROR~205");
+            return;
+        }
+        // a player and its bots sit at one table
+        playerCount = requested;
+        bots = Math.min(bots, playerCount - 1);
+        send("QUEUE");
+        queue();
+    }
+
+    // we (re)queue with our current seats and seat the table if that filled it
+    private void queue() {
+        if (gateway.queue(this, playerCount, 1 + bots)) {
+            gateway.seat(gateway.takeTable(playerCount));
+        }
+    }
+
+    // ===== SEATING (called by whichever client filled the table) =====
+
+    // HELLO at the backend; false if it can't be reached, won't have us, or doesn't
+    // agree on the features the client got from us
+    boolean connect(Gateway.Backend target) {
+        String welcome = open(target, features.isEmpty() ? "HELLO~" + name : "HELLO~" + name + "~" + features);
+        String[] parts = (welcome != null ? welcome : "").split(Command.SEPERATOR, -1);
+        String agreed = parts.length > 2 ? parts[2] : "";
+        if (!parts[0].equals("WELCOME") || !agreed.equals(features)) {
+            ServerView.logError("Backend " + target + " refused " + name + ": " + welcome);
+            disconnectBackend();
+            return false;
+        }
+        backendToken = parts.length > 3 ? parts[3] : null;
+        seatedAt = target;
+        return true;
+    }
+
+    // we connect to the backend and send the client's first line, the backend's answer
+    // (always text, the client already got ours) or null if it can't be reached
+    private String open(Gateway.Backend target, String first) {
+        Socket socket = null;
+        try {
+            socket = new Socket(target.host, target.port);
+            socket.setTcpNoDelay(true);
+            InputStream socketIn = new BufferedInputStream(socket.getInputStream());
+            OutputStream socketOut = socket.getOutputStream();
+            socketOut.write(encodeText(first));
+            socketOut.flush();
+            backend = socket;
+            backendIn = socketIn;
+            backendOut = socketOut;
+            return Gateway.readLine(socketIn);
+        } catch (IOException e) {
+            ServerView.logError("Backend " + target + " unreachable: " + e.getMessage());
+            if (socket != null) {
+                Gateway.closeQuietly(socket);
+            }
+            return null;
+        }
+    }
+
+    // the whole table reached the backend: the bots go first so the backend queues
+    // them together with the client on GAME, then the client's lines flow both ways
+    void join(int size, int tableBots) {
+        finished = false;
+        detaching = false;
+        state = State.PLAYING;
+        try {
+            for (int i = 0; i < tableBots; i++) {
+                backendOut.write(encode("ADDBOT"));
+            }
+            backendOut.write(encode("GAME~" + size));
+            backendOut.flush();
+        } catch (IOException e) {
+            // the pump sees the backend is gone and closes the client
+        }
+        startPump(tableBots + 1);
+    }
+
+    private void startPump(int replies) {
+        InputStream source = backendIn;
+        pump = Thread.ofVirtual().name("gateway-pump-", 0).start(() -> pump(source, replies));
+    }
+
+    // the table could not be seated and the client is not queued again
+    void seatFailed() {
+        if (isOpen()) {
+            try {
+                send("ERROR~205");
+            } catch (IOException e) {
+                // it is leaving anyway
+            }
+        }
+    }
+
+    // we let go of the backend connection (a failed seating or a client that left)
+    void disconnectBackend() {
+        detaching = true;
+        if (backend != null) {
+            Gateway.closeQuietly(backend);
+        }
+    }
+
+    // the game is over and the client wants another, we leave its backend
+    private void detach() {
+        disconnectBackend();
+        if (pump != null) {
+            try {
+                pump.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        backend = null;
+        pump = null;
+        seatedAt = null;
+        backendToken = null;
+        bots = 0;
+        state = State.IDLE;
+    }
+
+    // we pass the backend's lines to the client, leaving out the replies to our own
+    // ADDBOT and GAME (the client got those from us) and noting the end of the game
+    private void pump(InputStream source, int replies) {
+        DataInputStream from = new DataInputStream(source);
+        try {
+            while (true) {
+                byte[] message;
+                String head = null;
+                if (binary) {
+                    int length;
+                    try {
+                        length = from.readUnsignedShort();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    byte[] body = new byte[length];
+                    from.readFully(body);
+                    int opcode = length > 0 ? body[0] & 0x7F : BinaryProtocol.RAW;
+                    if (opcode == BinaryProtocol.WINNER) {
+                        head = "WINNER";
+                    } else if (replies > 0 || opcode == BinaryProtocol.RAW) {
+                        head = BinaryProtocol.decode(ByteBuffer.wrap(body));
+                    }
+                    message = ByteBuffer.allocate(BinaryProtocol.HEADER_LENGTH + length)
+                            .putShort((short) length).put(body).array();
+                } else {
+                    head = Gateway.readLine(source, MAX_BACKEND_LINE);
+                    if (head == null) {
+                        break;
+                    }
+                    message = encodeText(head);
+                }
+                if (replies > 0 && head != null && (head.equals("QUEUE") || head.equals("BOT_ADDED"))) {
+                    replies--;
+                    continue;
+                }
+                if (head != null && head.startsWith("WINNER")) {
+                    finished = true;
+                }
+                write(message);
+            }
+        } catch (IOException | ProtocolException e) {
+            // either side went away
+        } finally {
+            if (!detaching) {
+                // the backend left mid game, so does the client
+                Gateway.closeQuietly(client);
+            }
+        }
+    }
+
+    // a client line for the backend, binary clients' frames go as they came
+    private void forward(String line) throws IOException {
+        OutputStream target = backendOut;
+        if (binary) {
+            target.write(ByteBuffer.allocate(BinaryProtocol.HEADER_LENGTH + lastFrame.length)
+                    .putShort((short) lastFrame.length).put(lastFrame).array());
+        } else {
+            target.write(encodeText(line));
+        }
+        target.flush();
+    }
+
+    private String readFrame() throws IOException {
+        int length;
+        try {
+            length = in.readUnsignedShort();
+        } catch (EOFException e) {
+            return null;
+        }
+        byte[] body = new byte[length];
+        in.readFully(body);
+        lastFrame = body;
+        try {
+            return BinaryProtocol.decode(ByteBuffer.wrap(body));
+        } catch (ProtocolException e) {
+            throw new IOException("Bad frame from client: " + e.getMessage());
+        }
+    }
+
+    private void send(String line) throws IOException {
+        write(encode(line));
+    }
+
+    // the client's own thread and the pump both write, one line at a time
+    private void write(byte[] bytes) throws IOException {
+        synchronized (out) {
+            out.write(bytes);
+            out.flush();
+        }
+    }
+
+    // a line the way the client (and its backend connection) reads them
+    private byte[] encode(String line) {
+        return binary ? BinaryProtocol.encode(line) : encodeText(line);
+    }
+
+    private static byte[] encodeText(String line) {
+        return (line + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+}
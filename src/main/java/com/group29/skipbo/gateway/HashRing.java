@@ -0,0 +1,79 @@
+package com.group29.skipbo.gateway;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// we use this to pick the backend of a table by consistent hashing
+// every node sits on the ring at VIRTUAL_NODES points, a key belongs to the first
+// point at or after its hash; adding or removing a node only moves the keys of
+// that node's points, so the other backends keep their tables
+// not thread safe, Gateway only uses it under its lock
+final class HashRing<N> {
+
+    static final int VIRTUAL_NODES = 128;
+
+    private final TreeMap<Long, N> points;
+
+    HashRing() {
+        this.points = new TreeMap<>();
+    }
+
+    void add(String id, N node) {
+        for (int i = 0; i < VIRTUAL_NODES; i++) {
+            points.put(hash(id + "#" + i), node);
+        }
+    }
+
+    void remove(String id) {
+        for (int i = 0; i < VIRTUAL_NODES; i++) {
+            points.remove(hash(id + "#" + i));
+        }
+    }
+
+    boolean isEmpty() {
+        return points.isEmpty();
+    }
+
+    // the node that owns this key, null if the ring is empty
+    N get(long key) {
+        if (points.isEmpty()) {
+            return null;
+        }
+        Map.Entry<Long, N> owner = points.ceilingEntry(mix(key));
+        return owner != null ? owner.getValue() : points.firstEntry().getValue();
+    }
+
+    // every distinct node once
+    List<N> nodes() {
+        List<N> nodes = new ArrayList<>();
+        for (N node : points.values()) {
+            if (!nodes.contains(node)) {
+                nodes.add(node);
+            }
+        }
+        return nodes;
+    }
+
+    private static long hash(String id) {
+        // FNV-1a, then the same mixing as the keys so points spread over the whole ring
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : id.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    // the finalizer of MurmurHash3, neighbouring table ids land far apart
+    static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
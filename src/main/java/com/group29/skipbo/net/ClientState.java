@@ -21,6 +21,11 @@ public class ClientState {
 
     public Map<String, PlayerView> tablePlayers = new HashMap<>();
 
+    // state versions of the TABLE and HAND we last got, 0 if we have none
+    // we send them with TABLE and HAND so the server can answer NOTMODIFIED
+    public int tableVersion = 0;
+    public int handVersion = 0;
+
     public boolean isYourTurn() {
         return yourName != null && yourName.equals(currentTurnPlayer);
     }
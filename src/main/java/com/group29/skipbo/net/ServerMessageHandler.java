@@ -32,7 +32,20 @@ public class ServerMessageHandler {
                     (state.isYourTurn() ? " (YOUR TURN)" : ""));
         } else if (cmd.equals("HAND")) {
             state.hand = Arrays.asList(msg.args()[0].split(","));
+            // args[1]: the state version, only sent when we asked with one
+            if (msg.args().length > 1) {
+                state.handVersion = parseVersion(msg.args()[1]);
+            }
             System.out.println("[SERVER] HAND " + state.hand);
+        } else if (cmd.equals("NOTMODIFIED")) {
+            // NOTMODIFIED~TABLE~version or NOTMODIFIED~HAND~version, what we have is still right
+            if (msg.args().length > 1) {
+                if (msg.args()[0].equals("TABLE")) {
+                    state.tableVersion = parseVersion(msg.args()[1]);
+                } else if (msg.args()[0].equals("HAND")) {
+                    state.handVersion = parseVersion(msg.args()[1]);
+                }
+            }
         } else if (cmd.equals("STOCK")) {
             String player = msg.args()[0];
             String top = msg.args()[1];
@@ -42,6 +55,12 @@ public class ServerMessageHandler {
         } else if (cmd.equals("TABLE")) {
             parseTable(msg.args());
             System.out.println("[SERVER] TABLE updated");
+        } else if (cmd.equals("TABLEDELTA")) {
+            if (applyTableDelta(msg.args())) {
+                System.out.println("[SERVER] TABLE updated to version " + state.tableVersion);
+            } else {
+                System.out.println("[SERVER] TABLE delta does not fit version " + state.tableVersion);
+            }
         } else if (cmd.equals("PLAY")) {
             // Parse: PLAY~playerName~from~to~newBuildingValue
             if (msg.args().length >= 3) {
@@ -120,6 +139,51 @@ public class ServerMessageHandler {
             pv.discards[2] = parts.length > 3 ? parts[3] : "X";
             pv.discards[3] = parts.length > 4 ? parts[4] : "X";
         }
+
+        // args[2]: the state version, only sent with TABLE_DELTA or when we asked with one
+        if (args.length > 2) {
+            state.tableVersion = parseVersion(args[2]);
+        }
+    }
+
+    // a version we can't read counts as none, so the next answer is in full
+    private static int parseVersion(String text) {
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    // TABLEDELTA~base~version~B.pile.card,D.seat.pile.card,...
+    // only the slots that changed since base, returns false if we don't have base
+    private boolean applyTableDelta(String[] args) {
+        if (args.length < 2)
+            return false;
+
+        try {
+            int base = Integer.parseInt(args[0]);
+            int version = Integer.parseInt(args[1]);
+            if (base != state.tableVersion)
+                return false;
+
+            if (args.length > 2 && !args[2].isEmpty()) {
+                for (String entry : args[2].split(",")) {
+                    String[] parts = entry.split("\\.");
+                    if (parts[0].equals("B") && parts.length == 3) {
+                        state.buildingTops[Integer.parseInt(parts[1])] = parts[2];
+                    } else if (parts[0].equals("D") && parts.length == 4) {
+                        String name = state.players.get(Integer.parseInt(parts[1]));
+                        state.tablePlayers.putIfAbsent(name, new ClientState.PlayerView());
+                        state.tablePlayers.get(name).discards[Integer.parseInt(parts[2])] = parts[3];
+                    }
+                }
+            }
+            state.tableVersion = version;
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
     }
 
     // we decode error codes - simple version without external dependency
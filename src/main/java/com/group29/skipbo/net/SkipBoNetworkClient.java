@@ -1,43 +1,162 @@
 package com.group29.skipbo.net;
 
+import protocol.BinaryProtocol;
 import protocol.Command;
+import protocol.ProtocolException;
+import protocol.client.Hello;
+import protocol.common.Feature;
 
 import java.io.*;
 import java.net.Socket;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 public class SkipBoNetworkClient implements Closeable {
 
+    // how long send() waits for the WELCOME after a HELLO that asked for binary
+    private static final long NEGOTIATION_TIMEOUT_MS = 5000;
+
     private final Socket socket;
-    private final BufferedReader in;
-    private final PrintWriter out;
+    private final DataInputStream in;
+    private final OutputStream out;
+    private final ByteArrayOutputStream lineBuffer;
+
+    // set once the server's WELCOME also listed Feature.BINARY
+    private volatile boolean binary;
+    // open while we wait for the answer to a HELLO that asked for binary
+    private volatile CountDownLatch negotiation;
 
     public SkipBoNetworkClient(String host, int port) throws IOException {
         this.socket = new Socket(host, port);
-        this.in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
-        this.out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true);
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.out = new BufferedOutputStream(socket.getOutputStream());
+        this.lineBuffer = new ByteArrayOutputStream(256);
     }
 
     public void send(Command cmd) {
-        String line = cmd.transformToProtocolString();
-        out.println(line);
+        awaitNegotiation();
+        if (cmd instanceof Hello && asksForBinary((Hello) cmd)) {
+            // the server switches right after its WELCOME, so nothing may go out before we read it
+            negotiation = new CountDownLatch(1);
+        }
+        synchronized (out) {
+            try {
+                if (binary) {
+                    out.write(cmd.transformToBinary());
+                } else {
+                    out.write((cmd.transformToProtocolString() + "\n").getBytes(StandardCharsets.UTF_8));
+                }
+                out.flush();
+            } catch (IOException e) {
+                // like a PrintWriter, the read loop notices the broken connection
+            }
+        }
+    }
+
+    // true once both sides use binary frames
+    public boolean isBinary() {
+        return binary;
     }
 
     /**
      * Blocking loop: call from a separate thread.
+     * Binary frames are handed on as their text line, so callers parse one format.
+     * The server's PING is answered here, a client that doesn't answer gets dropped.
      */
     public void readLoop(Consumer<String> onLine) throws IOException {
         String line;
-        while ((line = in.readLine()) != null) {
-            if (!line.isBlank()) {
+        while ((line = binary ? readFrame() : readLine()) != null) {
+            if (negotiation != null) {
+                checkNegotiation(line);
+            }
+            if (line.equals("PING")) {
+                send(() -> "PONG");
+            } else if (!line.isBlank()) {
                 onLine.accept(line);
             }
         }
+        // nobody will answer anymore, so we stop holding back sends
+        finishNegotiation();
+    }
+
+    private String readLine() throws IOException {
+        lineBuffer.reset();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                return lineBuffer.size() > 0 ? lineBuffer.toString(StandardCharsets.UTF_8) : null;
+            }
+            if (b != '\r') {
+                lineBuffer.write(b);
+            }
+        }
+        return lineBuffer.toString(StandardCharsets.UTF_8);
+    }
+
+    private String readFrame() throws IOException {
+        int length;
+        try {
+            length = in.readUnsignedShort();
+        } catch (EOFException e) {
+            return null;
+        }
+        byte[] body = new byte[length];
+        in.readFully(body);
+        try {
+            return BinaryProtocol.decode(ByteBuffer.wrap(body));
+        } catch (ProtocolException e) {
+            throw new IOException("Bad frame from server: " + e.getMessage());
+        }
+    }
+
+    // WELCOME~name~features tells us if the server switched, ERROR means it didn't
+    private void checkNegotiation(String line) {
+        if (line.startsWith("WELCOME")) {
+            String[] parts = line.split(Command.SEPERATOR);
+            binary = parts.length > 2 && parts[2].indexOf(Feature.BINARY.getLetter()) >= 0;
+            finishNegotiation();
+        } else if (line.startsWith("ERROR")) {
+            finishNegotiation();
+        }
+    }
+
+    private void finishNegotiation() {
+        CountDownLatch waiting = negotiation;
+        negotiation = null;
+        if (waiting != null) {
+            waiting.countDown();
+        }
+    }
+
+    private void awaitNegotiation() {
+        CountDownLatch waiting = negotiation;
+        if (waiting == null) {
+            return;
+        }
+        try {
+            waiting.await(NEGOTIATION_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static boolean asksForBinary(Hello hello) {
+        if (hello.supportedFeatures == null) {
+            return false;
+        }
+        for (Feature feature : hello.supportedFeatures) {
+            if (feature == Feature.BINARY) {
+                return true;
+            }
+        }
+        return false;
     }
 
     @Override
     public void close() throws IOException {
         socket.close();
     }
-}
\ No newline at end of file
+}
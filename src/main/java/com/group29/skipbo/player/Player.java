@@ -13,10 +13,37 @@ public class Player {
 
     private static final int DISCARD_PILE_COUNT = 4;
 
+    /**
+     * Told about every change the turn actions and refillHand make,
+     * so whoever shows the game can keep what it rendered until it changes.
+     */
+    public interface ChangeListener {
+        void handChanged(Player player);
+
+        void discardChanged(Player player, int discardPileIndex);
+
+        void buildingChanged(BuildingPile buildingPile);
+    }
+
+    private static final ChangeListener NO_LISTENER = new ChangeListener() {
+        @Override
+        public void handChanged(Player player) {
+        }
+
+        @Override
+        public void discardChanged(Player player, int discardPileIndex) {
+        }
+
+        @Override
+        public void buildingChanged(BuildingPile buildingPile) {
+        }
+    };
+
     private final String name;
     private final Hand hand;
     private final StockPile stockPile;
     private final List<DiscardPile> discardPiles;
+    private ChangeListener listener = NO_LISTENER;
 
     public Player(String name, StockPile stockPile) {
         this.name = Objects.requireNonNull(name, "name");
@@ -45,6 +72,10 @@ public class Player {
         return discardPiles;
     }
 
+    public void setChangeListener(ChangeListener listener) {
+        this.listener = listener == null ? NO_LISTENER : listener;
+    }
+
     public DiscardPile getDiscardPile(int index) {
         if (index < 0 || index >= discardPiles.size()) {
             throw new IllegalArgumentException("Invalid discard pile index: " + index);
@@ -54,11 +85,18 @@ public class Player {
 
     public void refillHand(Deck deck) {
         Objects.requireNonNull(deck, "deck");
-        while (!hand.isFull()) {
-            if (deck.isEmpty()) {
-                throw new IllegalStateException("Deck is empty; cannot refill hand");
+        int before = hand.size();
+        try {
+            while (!hand.isFull()) {
+                if (deck.isEmpty()) {
+                    throw new IllegalStateException("Deck is empty; cannot refill hand");
+                }
+                hand.add(deck.draw());
+            }
+        } finally {
+            if (hand.size() != before) {
+                listener.handChanged(this);
             }
-            hand.add(deck.draw());
         }
     }
 
@@ -77,6 +115,8 @@ public class Player {
         // Remove then play
         hand.removeAt(handIndex);
         buildingPile.play(card);
+        listener.handChanged(this);
+        listener.buildingChanged(buildingPile);
     }
 
     /**
@@ -92,6 +132,7 @@ public class Player {
 
         stockPile.drawTop();
         buildingPile.play(card);
+        listener.buildingChanged(buildingPile);
     }
 
     /**
@@ -112,6 +153,8 @@ public class Player {
 
         pile.playTopCard();
         buildingPile.play(card);
+        listener.discardChanged(this, discardPileIndex);
+        listener.buildingChanged(buildingPile);
     }
 
     /**
@@ -121,5 +164,7 @@ public class Player {
         DiscardPile pile = getDiscardPile(discardPileIndex);
         Card card = hand.removeAt(handIndex);
         pile.discard(card);
+        listener.handChanged(this);
+        listener.discardChanged(this, discardPileIndex);
     }
 }
\ No newline at end of file
@@ -0,0 +1,188 @@
+package com.group29.skipbo.replay;
+
+import com.group29.skipbo.game.Game;
+import com.group29.skipbo.player.Hand;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// we use this for one finished game in a replay file
+// the header has everything needed to deal the game again (seed, seats and the rule
+// parameters it was played under), then come the packed MoveRecords and the winner:
+//
+//   int magic "SKBR", byte version, byte players, byte stock size, byte hand size,
+//   byte building piles, int table id, long seed, long started, long ended (epoch ms),
+//   per seat: byte bot (1) or human (0) at the deal, short name length, UTF-8 name,
+//   int move count, short per move, byte winner seat (-1 for none)
+public final class GameRecord {
+
+    public static final int MAGIC = 0x534B4252; // "SKBR"
+    public static final int VERSION = 1;
+
+    private final int tableId;
+    private final long seed;
+    private final long startedAt;
+    private final long endedAt;
+    private final List<String> names;
+    private final boolean[] bots;
+    private final int stockSize;
+    private final int handSize;
+    private final int buildingPiles;
+    private final short[] moves;
+    private final int winner;
+
+    // a game played under the current rules
+    public GameRecord(int tableId, long seed, long startedAt, long endedAt, List<String> names, boolean[] bots,
+            short[] moves, int winner) {
+        this(tableId, seed, startedAt, endedAt, names, bots, Game.getStockSize(names.size()),
+                Hand.DEFAULT_MAX_SIZE, Game.NUM_BUILDING_PILES, moves, winner);
+    }
+
+    private GameRecord(int tableId, long seed, long startedAt, long endedAt, List<String> names, boolean[] bots,
+            int stockSize, int handSize, int buildingPiles, short[] moves, int winner) {
+        this.tableId = tableId;
+        this.seed = seed;
+        this.startedAt = startedAt;
+        this.endedAt = endedAt;
+        this.names = List.copyOf(names);
+        this.bots = bots.clone();
+        this.stockSize = stockSize;
+        this.handSize = handSize;
+        this.buildingPiles = buildingPiles;
+        this.moves = moves;
+        this.winner = winner;
+    }
+
+    public int getTableId() {
+        return tableId;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    public long getEndedAt() {
+        return endedAt;
+    }
+
+    public List<String> getNames() {
+        return names;
+    }
+
+    // true if a bot had this seat when the game was dealt (BOT moves say who took over later)
+    public boolean isBot(int seat) {
+        return bots[seat];
+    }
+
+    public int getMoveCount() {
+        return moves.length;
+    }
+
+    public short getMove(int index) {
+        return moves[index];
+    }
+
+    // the seat that won, -1 if nobody did
+    public int getWinner() {
+        return winner;
+    }
+
+    // true if the game was played under the rules Game has now, only then a replay
+    // deals the same cards
+    public boolean hasCurrentRules() {
+        return stockSize == Game.getStockSize(names.size()) && handSize == Hand.DEFAULT_MAX_SIZE
+                && buildingPiles == Game.NUM_BUILDING_PILES;
+    }
+
+    // we deal the game again, ready for its first move
+    public Replayer replayer() {
+        if (!hasCurrentRules()) {
+            throw new IllegalStateException("table " + tableId + " was played under other rules");
+        }
+        return new Replayer(seed, names, bots);
+    }
+
+    // ===== ENCODING =====
+
+    public int size() {
+        int size = 4 + 1 + 1 + 3 + 4 + 8 + 8 + 8 + 4 + 2 * moves.length + 1;
+        for (String name : names) {
+            size += 1 + 2 + name.getBytes(StandardCharsets.UTF_8).length;
+        }
+        return size;
+    }
+
+    public void write(ByteBuffer out) {
+        out.putInt(MAGIC);
+        out.put((byte) VERSION);
+        out.put((byte) names.size());
+        out.put((byte) stockSize);
+        out.put((byte) handSize);
+        out.put((byte) buildingPiles);
+        out.putInt(tableId);
+        out.putLong(seed);
+        out.putLong(startedAt);
+        out.putLong(endedAt);
+        for (int seat = 0; seat < names.size(); seat++) {
+            byte[] bytes = names.get(seat).getBytes(StandardCharsets.UTF_8);
+            out.put((byte) (bots[seat] ? 1 : 0));
+            out.putShort((short) bytes.length);
+            out.put(bytes);
+        }
+        out.putInt(moves.length);
+        for (short move : moves) {
+            out.putShort(move);
+        }
+        out.put((byte) winner);
+    }
+
+    // we read the record at the buffer's position and move past it
+    public static GameRecord read(ByteBuffer in) {
+        try {
+            if (in.getInt() != MAGIC) {
+                throw new IllegalArgumentException("not a game record");
+            }
+            int version = in.get();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("unknown record version " + version);
+            }
+            int players = in.get();
+            int stockSize = in.get();
+            int handSize = in.get();
+            int buildingPiles = in.get();
+            int tableId = in.getInt();
+            long seed = in.getLong();
+            long startedAt = in.getLong();
+            long endedAt = in.getLong();
+            List<String> names = new ArrayList<>(players);
+            boolean[] bots = new boolean[players];
+            for (int seat = 0; seat < players; seat++) {
+                bots[seat] = in.get() == 1;
+                byte[] bytes = new byte[in.getShort()];
+                in.get(bytes);
+                names.add(new String(bytes, StandardCharsets.UTF_8));
+            }
+            short[] moves = new short[in.getInt()];
+            in.asShortBuffer().get(moves);
+            in.position(in.position() + 2 * moves.length);
+            int winner = in.get();
+            return new GameRecord(tableId, seed, startedAt, endedAt, names, bots, stockSize, handSize,
+                    buildingPiles, moves, winner);
+        } catch (BufferUnderflowException | NegativeArraySizeException e) {
+            throw new IllegalArgumentException("truncated game record");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "table " + tableId + " " + names + " " + moves.length + " moves"
+                + (winner >= 0 ? ", won by " + names.get(winner) : "");
+    }
+}
@@ -0,0 +1,79 @@
+package com.group29.skipbo.replay;
+
+// we use this to pack one applied move into 16 bits
+// the move journal and the replay files store the same records:
+// bits 15-13 type, 12-10 seat, 9-8 source, 7-4 hand or discard index, 3-0 pile
+// the type is never 0, so a zero record marks the end of a journal
+public final class MoveRecord {
+
+    public static final int PLAY = 1; // seat, source and index, building pile
+    public static final int DISCARD = 2; // seat, hand index, discard pile
+    public static final int TURN = 3; // seat of the next player
+    public static final int BOT = 4; // seat a bot took over
+
+    // where a PLAY came from, in the order of the server's ClientCommand.Source
+    public static final int STOCK = 0;
+    public static final int HAND = 1;
+    public static final int DISCARD_PILE = 2;
+
+    private MoveRecord() {
+    }
+
+    public static short play(int seat, int source, int index, int buildingPile) {
+        return pack(PLAY, seat, source, index, buildingPile);
+    }
+
+    public static short discard(int seat, int handIndex, int discardPile) {
+        return pack(DISCARD, seat, 0, handIndex, discardPile);
+    }
+
+    public static short turn(int nextSeat) {
+        return pack(TURN, nextSeat, 0, 0, 0);
+    }
+
+    public static short bot(int seat) {
+        return pack(BOT, seat, 0, 0, 0);
+    }
+
+    private static short pack(int type, int seat, int source, int index, int pile) {
+        return (short) (type << 13 | (seat & 0x7) << 10 | (source & 0x3) << 8 | (index & 0xF) << 4 | pile & 0xF);
+    }
+
+    public static int type(short record) {
+        return (record >>> 13) & 0x7;
+    }
+
+    public static int seat(short record) {
+        return (record >>> 10) & 0x7;
+    }
+
+    public static int source(short record) {
+        return (record >>> 8) & 0x3;
+    }
+
+    public static int index(short record) {
+        return (record >>> 4) & 0xF;
+    }
+
+    public static int pile(short record) {
+        return record & 0xF;
+    }
+
+    // we show a record the way the protocol writes moves, for tools and logs
+    public static String format(short record) {
+        switch (type(record)) {
+            case PLAY:
+                String from = source(record) == STOCK ? "S"
+                        : (source(record) == HAND ? "H." : "D.") + index(record);
+                return "PLAY " + seat(record) + " " + from + " B." + pile(record);
+            case DISCARD:
+                return "DISCARD " + seat(record) + " H." + index(record) + " D." + pile(record);
+            case TURN:
+                return "TURN " + seat(record);
+            case BOT:
+                return "BOT " + seat(record);
+            default:
+                return "? " + (record & 0xFFFF);
+        }
+    }
+}
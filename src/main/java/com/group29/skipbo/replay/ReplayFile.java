@@ -0,0 +1,118 @@
+package com.group29.skipbo.replay;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+// we use this for the files finished games are archived in
+// a replay file is GameRecords one after another, the server appends to one file
+// per day; a record that was cut off (the server died while appending) ends the file,
+// so a writer calls repair before it appends to a file it did not write itself
+public final class ReplayFile {
+
+    public static final String SUFFIX = ".replay";
+    // repair reads the file this much at a time, a window grows only for a game
+    // bigger than itself, and no game is bigger than MAX_GAME_BYTES
+    static final int REPAIR_WINDOW = 1024 * 1024;
+    static final int MAX_GAME_BYTES = 64 * 1024 * 1024;
+
+    private ReplayFile() {
+    }
+
+    // games-2026-10-18.replay
+    public static String nameFor(LocalDate day) {
+        return "games-" + day + SUFFIX;
+    }
+
+    // we add games at the end of the file in one write, the file is made if needed
+    public static void append(Path file, List<GameRecord> records) throws IOException {
+        int size = 0;
+        for (GameRecord record : records) {
+            size += record.size();
+        }
+        ByteBuffer out = ByteBuffer.allocate(size);
+        for (GameRecord record : records) {
+            record.write(out);
+        }
+        out.flip();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        }
+    }
+
+    // we read every complete game of the file, the file is mapped instead of copied
+    public static List<GameRecord> read(Path file) throws IOException {
+        List<GameRecord> records = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            readComplete(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), records);
+        }
+        return records;
+    }
+
+    // we cut the file back to its last complete game, so games appended later stay
+    // readable; returns how many bytes were dropped (0 if the file is fine or missing)
+    // we copy a window at a time instead of mapping here, some systems can't truncate
+    // a mapped file, and a day's file may be bigger than any one buffer
+    public static long repair(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            long end = 0;
+            ByteBuffer window = ByteBuffer.allocate((int) Math.min(size, REPAIR_WINDOW));
+            while (end < size) {
+                window.clear();
+                while (window.hasRemaining() && channel.read(window, end + window.position()) >= 0) {
+                    // we keep reading until the window is full or the file ends
+                }
+                window.flip();
+                boolean last = end + window.limit() >= size;
+                long complete = readComplete(window, null);
+                end += complete;
+                if (last && complete < window.limit()) {
+                    break; // the rest of the file is a cut-off game
+                }
+                if (complete == 0) {
+                    // one game doesn't fit the window, unless nothing sane would
+                    if (window.capacity() >= MAX_GAME_BYTES) {
+                        break;
+                    }
+                    window = ByteBuffer.allocate((int) Math.min(size - end, 2L * window.capacity()));
+                }
+            }
+            if (end < size) {
+                channel.truncate(end);
+                channel.force(true);
+            }
+            return size - end;
+        }
+    }
+
+    // we walk the complete games (adding them to records unless it is null),
+    // returns where the last one ends
+    private static long readComplete(ByteBuffer in, List<GameRecord> records) {
+        int end = 0;
+        while (in.hasRemaining()) {
+            try {
+                GameRecord record = GameRecord.read(in);
+                if (records != null) {
+                    records.add(record);
+                }
+                end = in.position();
+            } catch (IllegalArgumentException e) {
+                break;
+            }
+        }
+        return end;
+    }
+}
@@ -0,0 +1,211 @@
+package com.group29.skipbo.replay;
+
+import com.group29.skipbo.card.BuildingPile;
+import com.group29.skipbo.game.Game;
+import com.group29.skipbo.game.GameState;
+import com.group29.skipbo.player.ComputerPlayer;
+import com.group29.skipbo.player.HumanPlayer;
+import com.group29.skipbo.player.Player;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+// we use this to play a recorded game again, one MoveRecord at a time
+// the game is dealt from its seed and every record does exactly what the server's
+// GameTable did when it applied the move, so the state after each record is the
+// state the players saw; the move journal recovers games with it and the replay
+// tools re-analyse archived ones
+public final class Replayer {
+
+    private final Game game;
+    private final boolean[] bots;
+    private int applied;
+
+    // we replay every game in the given replay files (or the .replay files of the given
+    // directories), check that each ends the way it was recorded and print what we found
+    // usage: java com.group29.skipbo.replay.Replayer <file or directory>...
+    public static void main(String[] args) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (String arg : args) {
+            Path path = Path.of(arg);
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> listed = Files.list(path)) {
+                    listed.filter(file -> file.toString().endsWith(ReplayFile.SUFFIX)).sorted().forEach(files::add);
+                }
+            } else {
+                files.add(path);
+            }
+        }
+        if (files.isEmpty()) {
+            System.out.println("usage: java com.group29.skipbo.replay.Replayer <file or directory>...");
+            return;
+        }
+
+        List<GameRecord> records = new ArrayList<>();
+        for (Path file : files) {
+            records.addAll(ReplayFile.read(file));
+        }
+
+        long moves = 0;
+        int humanWins = 0;
+        int botWins = 0;
+        List<String> mismatches = new ArrayList<>();
+        long started = System.nanoTime();
+        for (GameRecord record : records) {
+            moves += record.getMoveCount();
+            Replayer replayer;
+            try {
+                replayer = replay(record);
+            } catch (IllegalStateException e) {
+                mismatches.add("table " + record.getTableId() + ": " + e.getMessage());
+                continue;
+            }
+            int winner = replayer.getWinner();
+            if (winner != record.getWinner()) {
+                mismatches.add("table " + record.getTableId() + ": recorded winner " + record.getWinner()
+                        + ", replayed " + winner);
+            } else if (winner >= 0 && replayer.isBot(winner)) {
+                botWins++;
+            } else if (winner >= 0) {
+                humanWins++;
+            }
+        }
+        long elapsed = Math.max(1, System.nanoTime() - started);
+
+        System.out.println("Replayed " + records.size() + " games from " + files.size() + " file(s)");
+        System.out.printf("%d moves in %.1f ms (%.2f M moves/s, %.1f moves per game)%n", moves, elapsed / 1e6,
+                moves * 1e3 / elapsed, records.isEmpty() ? 0.0 : (double) moves / records.size());
+        System.out.println("won by humans: " + humanWins + ", by bots: " + botWins);
+        System.out.println("games that don't replay as recorded: " + mismatches.size());
+        for (int i = 0; i < Math.min(10, mismatches.size()); i++) {
+            System.out.println("  " + mismatches.get(i));
+        }
+    }
+
+    // we deal a recorded game and apply all of its moves
+    public static Replayer replay(GameRecord record) {
+        Replayer replayer = record.replayer();
+        for (int i = 0; i < record.getMoveCount(); i++) {
+            replayer.apply(record.getMove(i));
+        }
+        return replayer;
+    }
+
+    // bots[seat] is true for the seats a bot had when the game was dealt
+    public Replayer(long seed, List<String> names, boolean[] bots) {
+        this.game = new Game(seed);
+        this.bots = bots.clone();
+        for (int seat = 0; seat < names.size(); seat++) {
+            String name = names.get(seat);
+            game.addPlayer(bots[seat] ? ComputerPlayer.create(name) : HumanPlayer.create(name));
+        }
+        game.startGame();
+    }
+
+    public Game getGame() {
+        return game;
+    }
+
+    public boolean isBot(int seat) {
+        return bots[seat];
+    }
+
+    // how many records were applied so far
+    public int getApplied() {
+        return applied;
+    }
+
+    public boolean isOver() {
+        return game.getState() != GameState.IN_PROGRESS;
+    }
+
+    // the seat that emptied its stock, -1 while the game runs
+    public int getWinner() {
+        return isOver() ? game.getPlayers().indexOf(game.getWinner()) : -1;
+    }
+
+    // we apply one record, a record that doesn't fit the game throws
+    // IllegalStateException and leaves the game as it was
+    public void apply(short record) {
+        if (isOver()) {
+            throw new IllegalStateException("game is over");
+        }
+        int seat = MoveRecord.seat(record);
+        if (seat >= game.getPlayerCount()) {
+            throw new IllegalStateException("no seat " + seat);
+        }
+        Player player = game.getPlayers().get(seat);
+        switch (MoveRecord.type(record)) {
+            case MoveRecord.PLAY:
+                checkTurn(player);
+                play(player, record);
+                break;
+            case MoveRecord.DISCARD:
+                checkTurn(player);
+                try {
+                    player.discardFromHand(MoveRecord.index(record), MoveRecord.pile(record));
+                } catch (RuntimeException e) {
+                    // a bad pile throws before the card leaves the hand
+                    throw new IllegalStateException("illegal discard " + MoveRecord.format(record));
+                }
+                break;
+            case MoveRecord.TURN:
+                // we check first, a bad record must not change the game
+                int current = game.getPlayers().indexOf(game.getCurrentPlayer());
+                if ((current + 1) % game.getPlayerCount() != seat) {
+                    throw new IllegalStateException("turn to the wrong seat");
+                }
+                game.nextTurn();
+                if (!game.getDrawPile().isEmpty()) {
+                    player.refillHand(game.getDrawPile());
+                }
+                break;
+            case MoveRecord.BOT:
+                bots[seat] = true;
+                break;
+            default:
+                throw new IllegalStateException("unknown record " + MoveRecord.format(record));
+        }
+        applied++;
+    }
+
+    private void play(Player player, short record) {
+        if (MoveRecord.pile(record) >= Game.NUM_BUILDING_PILES) {
+            throw new IllegalStateException("no such pile: " + MoveRecord.format(record));
+        }
+        BuildingPile pile = game.getBuildingPile(MoveRecord.pile(record));
+        try {
+            switch (MoveRecord.source(record)) {
+                case MoveRecord.STOCK:
+                    player.playFromStock(pile);
+                    break;
+                case MoveRecord.HAND:
+                    player.playFromHand(MoveRecord.index(record), pile);
+                    break;
+                default:
+                    player.playFromDiscard(MoveRecord.index(record), pile);
+                    break;
+            }
+        } catch (RuntimeException e) {
+            // the player methods check the move before they change anything
+            throw new IllegalStateException("illegal move " + MoveRecord.format(record) + ": " + e.getMessage());
+        }
+
+        // what GameTable's applyPlay does after a move (a completed pile was recycled by the game)
+        if (player.getStockPile().isEmpty()) {
+            game.endRound(player);
+        } else if (player.getHand().isEmpty() && !game.getDrawPile().isEmpty()) {
+            player.refillHand(game.getDrawPile());
+        }
+    }
+
+    private void checkTurn(Player player) {
+        if (!game.isPlayerTurn(player)) {
+            throw new IllegalStateException("move out of turn");
+        }
+    }
+}
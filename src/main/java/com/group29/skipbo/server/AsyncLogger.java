@@ -0,0 +1,278 @@
+package com.group29.skipbo.server;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+// we use this so logging never waits on the console or a disk on the move path
+// callers put an entry in a lock-free ring buffer (a CAS on the tail, no lock, no I/O)
+// and one writer thread builds the lines and writes them in batches to the console
+// or to a file that rolls over at maxBytes; when the ring is full we drop the line
+// and count it instead of blocking a table
+final class AsyncLogger {
+
+    enum Level {
+        DEBUG, INFO, WARN, ERROR
+    }
+
+    // one queued line, the message is a String or a Supplier built on the writer thread
+    private static final class Entry {
+        final Level level;
+        final String tag;
+        final Object message;
+        final long timeMillis;
+
+        Entry(Level level, String tag, Object message, long timeMillis) {
+            this.level = level;
+            this.tag = tag;
+            this.message = message;
+            this.timeMillis = timeMillis;
+        }
+    }
+
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS")
+            .withZone(ZoneId.systemDefault());
+    // how long the writer sleeps when there is nothing to write (a new line wakes it sooner)
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    // the ring: slot i holds the entry of position p when sequences[i] == p + 1,
+    // and is free for position p when sequences[i] == p
+    private final Entry[] entries;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail;
+    // only the writer thread moves the head
+    private long head;
+
+    private final LongAdder dropped;
+    private volatile Level level;
+    private volatile boolean running;
+    private volatile boolean sleeping;
+
+    // where the lines go: the console, or a file we roll over
+    private final Path file;
+    private final long maxBytes;
+    private final int keepFiles;
+    private Writer out;
+    private long written;
+
+    private final Thread writer;
+
+    // capacity is rounded up to a power of two, file null writes to System.out
+    AsyncLogger(int capacity, Level level, Path file, long maxBytes, int keepFiles) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.entries = new Entry[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.mask = size - 1;
+        this.tail = new AtomicLong();
+        this.dropped = new LongAdder();
+        this.level = level;
+        this.file = file;
+        this.maxBytes = maxBytes;
+        this.keepFiles = Math.max(1, keepFiles);
+        this.running = true;
+        this.writer = Thread.ofPlatform().name("log-writer").daemon(true).unstarted(this::drainLoop);
+        writer.start();
+    }
+
+    void setLevel(Level level) {
+        this.level = level;
+    }
+
+    boolean isEnabled(Level candidate) {
+        return candidate.ordinal() >= level.ordinal();
+    }
+
+    long getDropped() {
+        return dropped.sum();
+    }
+
+    // ===== PRODUCERS (any thread) =====
+
+    void log(Level at, String tag, String message) {
+        if (isEnabled(at)) {
+            offer(new Entry(at, tag, message, System.currentTimeMillis()));
+        }
+    }
+
+    // the message is only built if the level is on, and then on the writer thread,
+    // so the supplier must only capture values that don't change afterwards
+    void log(Level at, String tag, Supplier<String> message) {
+        if (isEnabled(at)) {
+            offer(new Entry(at, tag, message, System.currentTimeMillis()));
+        }
+    }
+
+    private void offer(Entry entry) {
+        while (true) {
+            long position = tail.get();
+            int slot = (int) position & mask;
+            long sequence = sequences.get(slot);
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    entries[slot] = entry;
+                    sequences.set(slot, position + 1); // publishes the entry
+                    break;
+                }
+            } else if (sequence < position) {
+                // the writer hasn't freed this slot yet, the ring is full
+                dropped.increment();
+                return;
+            }
+            // another producer took this position, we try the next one
+        }
+        if (sleeping) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    // ===== WRITER THREAD =====
+
+    private void drainLoop() {
+        StringBuilder batch = new StringBuilder(4096);
+        while (running || hasNext()) {
+            if (!drain(batch)) {
+                sleeping = true;
+                // a producer that published before we set sleeping won't wake us
+                if (!hasNext() && running) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                sleeping = false;
+            }
+        }
+        closeOut();
+    }
+
+    private boolean hasNext() {
+        return sequences.get((int) head & mask) == head + 1;
+    }
+
+    // we write everything queued so far in one go, false if there was nothing
+    private boolean drain(StringBuilder batch) {
+        batch.setLength(0);
+        while (hasNext()) {
+            int slot = (int) head & mask;
+            Entry entry = entries[slot];
+            entries[slot] = null;
+            sequences.set(slot, head + mask + 1); // free for the next turn of the ring
+            head++;
+            format(entry, batch);
+        }
+        if (batch.length() == 0) {
+            return false;
+        }
+        write(batch);
+        return true;
+    }
+
+    private void format(Entry entry, StringBuilder line) {
+        String message;
+        try {
+            message = entry.message instanceof Supplier ? String.valueOf(((Supplier<?>) entry.message).get())
+                    : (String) entry.message;
+        } catch (RuntimeException e) {
+            message = "(log message failed: " + e + ")";
+        }
+        if (file != null) {
+            // the console never had timestamps, a file needs them
+            TIME.formatTo(Instant.ofEpochMilli(entry.timeMillis), line);
+            line.append(' ');
+        }
+        line.append('[').append(entry.tag).append("] ").append(message).append('\n');
+    }
+
+    private void write(StringBuilder batch) {
+        try {
+            if (out == null) {
+                out = open();
+            }
+            out.append(batch);
+            out.flush();
+            written += batch.length();
+            if (file != null && written >= maxBytes) {
+                roll();
+            }
+        } catch (IOException e) {
+            // nowhere better to say it, and the next batch tries again
+            System.err.println("[ERROR] Log write failed: " + e.getMessage());
+            closeOut();
+        }
+    }
+
+    private Writer open() throws IOException {
+        if (file == null) {
+            return new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+        }
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        written = Files.exists(file) ? Files.size(file) : 0;
+        return new BufferedWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND));
+    }
+
+    // server.log becomes server.log.1, server.log.1 becomes server.log.2 and so on,
+    // the oldest of keepFiles goes away
+    private void roll() throws IOException {
+        closeOut();
+        for (int i = keepFiles - 1; i >= 1; i--) {
+            Path older = rolled(i);
+            if (Files.exists(older)) {
+                Files.move(older, rolled(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.move(file, rolled(1), StandardCopyOption.REPLACE_EXISTING);
+        Files.deleteIfExists(rolled(keepFiles + 1));
+        written = 0;
+    }
+
+    private Path rolled(int index) {
+        return file.resolveSibling(file.getFileName() + "." + index);
+    }
+
+    private void closeOut() {
+        if (out == null) {
+            return;
+        }
+        try {
+            if (file == null) {
+                out.flush(); // we never close System.out
+            } else {
+                out.close();
+            }
+        } catch (IOException e) {
+            // ignore
+        }
+        out = null;
+    }
+
+    // we stop taking lines, write what is queued and wait for the writer (at most timeoutMs)
+    void close(long timeoutMs) {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(timeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
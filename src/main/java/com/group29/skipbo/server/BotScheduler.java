@@ -0,0 +1,37 @@
+package com.group29.skipbo.server;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// we use this to pace the bot turns of every table with one timer thread
+// the timer only queues the turn on the table's mailbox when the pause is over,
+// so nothing ever sleeps while it owns a table
+class BotScheduler {
+
+    private final ScheduledExecutorService timer;
+
+    BotScheduler() {
+        this.timer = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("bot-timer").daemon(true).factory());
+    }
+
+    // we run the turn on the mailbox after the delay (right away for 0)
+    void schedule(Executor mailbox, Runnable turn, long delayMs) {
+        if (delayMs <= 0) {
+            mailbox.execute(turn);
+        } else {
+            timer.schedule(() -> mailbox.execute(turn), delayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // we run a short task on the timer thread after the delay
+    void later(Runnable task, long delayMs) {
+        timer.schedule(task, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    void shutdown() {
+        timer.shutdownNow();
+    }
+}
@@ -0,0 +1,452 @@
+package com.group29.skipbo.server;
+
+import protocol.BinaryProtocol;
+import protocol.common.ErrorCode;
+import protocol.common.Feature;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// we use this for one parsed client line
+// every handler keeps one instance and parse() refills it in a single pass
+// over the line (or binary frame), without split, substrings, toUpperCase or exceptions
+final class ClientCommand {
+
+    enum Type {
+        HELLO(false, Budget.CHANGE), GAME(false, Budget.CHANGE), HAND(true, Budget.QUERY),
+        TABLE(true, Budget.QUERY), PLAY(true, Budget.CHANGE), END(true, Budget.CHANGE),
+        ADDBOT(false, Budget.CHANGE), PING(false, Budget.FREE), PONG(false, Budget.FREE),
+        METRICS(false, Budget.QUERY), WATCH(true, Budget.CHANGE), RESUME(true, Budget.CHANGE);
+
+        // the table's mailbox answers it (and times it), not the reading thread
+        final boolean runsOnTable;
+        // which of the connection's rate limits it counts against
+        final Budget budget;
+
+        Type(boolean runsOnTable, Budget budget) {
+            this.runsOnTable = runsOnTable;
+            this.budget = budget;
+        }
+    }
+
+    // read-only queries and state-changing commands have separate rate limits,
+    // the heartbeat has none
+    enum Budget {
+        FREE, QUERY, CHANGE
+    }
+
+    // where a played card comes from
+    enum Source {
+        STOCK("S"), HAND("H"), DISCARD("D");
+
+        final String token;
+
+        Source(String token) {
+            this.token = token;
+        }
+    }
+
+    private static final char SEPARATOR = '~';
+    private static final char VALUE = '.';
+    // values() copies the array on every call, so we keep one
+    private static final Type[] TYPES = Type.values();
+    private static final Feature[] FEATURES = Feature.values();
+    // no count or index in the game gets near this, it keeps readNumber from overflowing
+    private static final int MAX_NUMBER = 1_000_000;
+
+    Type type;
+    String name; // HELLO and RESUME
+    int features; // HELLO, one bit per Feature the client asked for (see hasFeature)
+    int playerCount; // GAME
+    Source source; // PLAY
+    int sourceIndex; // PLAY, hand or discard pile index (0 for the stock)
+    int buildingIndex; // PLAY
+    int version; // HAND and TABLE, the state version the client has or -1 if it sent none
+    String token; // METRICS, the admin token or null; RESUME, the session token
+    int tableId; // WATCH
+    int sequence; // RESUME, the last game event the client got
+
+    private CharSequence line;
+    private int pos;
+    private int end;
+
+    // we parse one line, returns null on success or the error to send back
+    // a blank line leaves type null, fields after the ones we need are ignored
+    ErrorCode parse(CharSequence text) {
+        reset();
+        line = text;
+        pos = 0;
+        end = text.length();
+
+        // we skip the same whitespace String.trim() would
+        while (pos < end && line.charAt(pos) <= ' ') {
+            pos++;
+        }
+        while (end > pos && line.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (pos == end) {
+            return null;
+        }
+
+        type = readType();
+        if (type == null) {
+            return ErrorCode.INVALID_COMMAND;
+        }
+        switch (type) {
+            case HELLO:
+                return parseHello();
+            case GAME:
+                return parseGame();
+            case PLAY:
+                return parsePlay();
+            case HAND:
+            case TABLE:
+                return parseVersion();
+            case METRICS:
+                if (skipSeparator()) {
+                    token = readField();
+                }
+                return null;
+            case WATCH:
+                return parseWatch();
+            case RESUME:
+                return parseResume();
+            default:
+                return null;
+        }
+    }
+
+    // we parse one binary frame body (see protocol.BinaryProtocol), same result as parse(line)
+    ErrorCode parse(ByteBuffer body) {
+        reset();
+        if (!body.hasRemaining()) {
+            return ErrorCode.INVALID_COMMAND;
+        }
+        byte opcode = body.get();
+        switch (opcode) {
+            case BinaryProtocol.RAW:
+                // a line the client couldn't pack, we parse it as text
+                return parse(StandardCharsets.UTF_8.decode(body));
+            case BinaryProtocol.HELLO:
+                type = Type.HELLO;
+                return parseHello(body);
+            case BinaryProtocol.GAME:
+                type = Type.GAME;
+                if (!body.hasRemaining()) {
+                    return ErrorCode.INVALID_COMMAND;
+                }
+                playerCount = body.get() & 0xFF;
+                return null;
+            case BinaryProtocol.HAND:
+                type = Type.HAND;
+                return parseVersion(body);
+            case BinaryProtocol.TABLE:
+                type = Type.TABLE;
+                return parseVersion(body);
+            case BinaryProtocol.PLAY:
+                type = Type.PLAY;
+                return parsePlay(body);
+            case BinaryProtocol.END:
+                type = Type.END;
+                return null;
+            case BinaryProtocol.ADDBOT:
+                type = Type.ADDBOT;
+                return null;
+            case BinaryProtocol.PING:
+                type = Type.PING;
+                return null;
+            case BinaryProtocol.PONG:
+                type = Type.PONG;
+                return null;
+            default:
+                return ErrorCode.INVALID_COMMAND;
+        }
+    }
+
+    private void reset() {
+        type = null;
+        name = null;
+        features = 0;
+        playerCount = 0;
+        source = null;
+        sourceIndex = 0;
+        buildingIndex = 0;
+        version = -1;
+        token = null;
+        tableId = 0;
+        sequence = 0;
+    }
+
+    // we format a source the way the protocol writes it (S, H.i or D.i)
+    static String formatSource(Source source, int index) {
+        return source == Source.STOCK ? source.token : source.token + VALUE + index;
+    }
+
+    // we format a building pile position (B.i)
+    static String formatBuilding(int index) {
+        return "B" + VALUE + index;
+    }
+
+    // HELLO~name~features
+    private ErrorCode parseHello() {
+        if (!skipSeparator()) {
+            return ErrorCode.INVALID_PLAYER_NAME;
+        }
+        name = readField();
+        if (name == null) {
+            return ErrorCode.INVALID_PLAYER_NAME;
+        }
+
+        // the features are single letters
+        if (skipSeparator()) {
+            while (pos < end && line.charAt(pos) != SEPARATOR) {
+                addFeature(line.charAt(pos++));
+            }
+        }
+        return null;
+    }
+
+    // binary HELLO: name and features, each a length byte and UTF-8
+    private ErrorCode parseHello(ByteBuffer body) {
+        if (!body.hasRemaining()) {
+            return ErrorCode.INVALID_PLAYER_NAME;
+        }
+        int length = body.get() & 0xFF;
+        if (length > body.remaining()) {
+            return ErrorCode.INVALID_PLAYER_NAME;
+        }
+        byte[] bytes = new byte[length];
+        body.get(bytes);
+        name = new String(bytes, StandardCharsets.UTF_8).trim();
+        if (name.isEmpty()) {
+            name = null;
+            return ErrorCode.INVALID_PLAYER_NAME;
+        }
+
+        if (body.hasRemaining()) {
+            int letters = Math.min(body.get() & 0xFF, body.remaining());
+            for (int i = 0; i < letters; i++) {
+                addFeature((char) body.get());
+            }
+        }
+        return null;
+    }
+
+    boolean hasFeature(Feature feature) {
+        return (features & 1 << feature.ordinal()) != 0;
+    }
+
+    private void addFeature(char letter) {
+        for (Feature feature : FEATURES) {
+            if (feature.getLetter() == letter) {
+                features |= 1 << feature.ordinal();
+            }
+        }
+    }
+
+    // binary PLAY: two packed position bytes
+    private ErrorCode parsePlay(ByteBuffer body) {
+        if (body.remaining() < 2) {
+            return ErrorCode.INVALID_COMMAND;
+        }
+        int from = body.get() & 0xFF;
+        int to = body.get() & 0xFF;
+
+        int kind = from >>> 4;
+        int value = from & 0x0F;
+        if (kind == BinaryProtocol.POSITION_STOCK && value == BinaryProtocol.VALUE_ABSENT) {
+            source = Source.STOCK;
+        } else if ((kind == BinaryProtocol.POSITION_HAND || kind == BinaryProtocol.POSITION_DISCARD)
+                && value <= 12) {
+            source = kind == BinaryProtocol.POSITION_HAND ? Source.HAND : Source.DISCARD;
+            sourceIndex = value;
+        } else {
+            return ErrorCode.INVALID_MOVE;
+        }
+
+        if (to >>> 4 != BinaryProtocol.POSITION_BUILDING || (to & 0x0F) > 12) {
+            return ErrorCode.INVALID_MOVE;
+        }
+        buildingIndex = to & 0x0F;
+        return null;
+    }
+
+    // binary HAND or TABLE: an optional 4 byte version
+    private ErrorCode parseVersion(ByteBuffer body) {
+        if (!body.hasRemaining()) {
+            return null;
+        }
+        if (body.remaining() < 4) {
+            return ErrorCode.INVALID_COMMAND;
+        }
+        version = body.getInt();
+        return version < 0 ? ErrorCode.INVALID_COMMAND : null;
+    }
+
+    // HAND~version or TABLE~version, the version is optional
+    private ErrorCode parseVersion() {
+        if (!skipSeparator()) {
+            return null;
+        }
+        version = readNumber();
+        if (version < 0 || !atFieldEnd()) {
+            return ErrorCode.INVALID_COMMAND;
+        }
+        return null;
+    }
+
+    // GAME~n
+    private ErrorCode parseGame() {
+        if (!skipSeparator()) {
+            return ErrorCode.INVALID_COMMAND;
+        }
+        playerCount = readNumber();
+        if (playerCount < 0 || !atFieldEnd()) {
+            return ErrorCode.INVALID_COMMAND;
+        }
+        return null;
+    }
+
+    // WATCH~table
+    private ErrorCode parseWatch() {
+        if (!skipSeparator()) {
+            return ErrorCode.INVALID_COMMAND;
+        }
+        tableId = readNumber();
+        if (tableId < 0 || !atFieldEnd()) {
+            return ErrorCode.INVALID_COMMAND;
+        }
+        return null;
+    }
+
+    // RESUME~name~token~lastSeq
+    private ErrorCode parseResume() {
+        if (!skipSeparator() || (name = readField()) == null) {
+            return ErrorCode.INVALID_PLAYER_NAME;
+        }
+        if (!skipSeparator() || (token = readField()) == null || !skipSeparator()) {
+            return ErrorCode.INVALID_COMMAND;
+        }
+        sequence = readNumber();
+        if (sequence < 0 || !atFieldEnd()) {
+            return ErrorCode.INVALID_COMMAND;
+        }
+        return null;
+    }
+
+    // PLAY~from~to, from is S, H.i or D.i and to is B.i
+    private ErrorCode parsePlay() {
+        if (!skipSeparator()) {
+            return ErrorCode.INVALID_COMMAND;
+        }
+        if (pos == end) {
+            return ErrorCode.INVALID_COMMAND;
+        }
+        char kind = Character.toUpperCase(line.charAt(pos++));
+        if (kind == 'S') {
+            source = Source.STOCK;
+        } else if (kind == 'H' || kind == 'D') {
+            source = kind == 'H' ? Source.HAND : Source.DISCARD;
+            if (!skip(VALUE)) {
+                return ErrorCode.INVALID_MOVE;
+            }
+            sourceIndex = readNumber();
+            if (sourceIndex < 0) {
+                return ErrorCode.INVALID_MOVE;
+            }
+        } else {
+            return ErrorCode.INVALID_MOVE;
+        }
+        if (pos == end) {
+            return ErrorCode.INVALID_COMMAND; // no destination
+        }
+        if (!skipSeparator()) {
+            return ErrorCode.INVALID_MOVE;
+        }
+
+        if (pos == end || Character.toUpperCase(line.charAt(pos++)) != 'B' || !skip(VALUE)) {
+            return ErrorCode.INVALID_MOVE;
+        }
+        buildingIndex = readNumber();
+        if (buildingIndex < 0 || !atFieldEnd()) {
+            return ErrorCode.INVALID_MOVE;
+        }
+        return null;
+    }
+
+    // we match the command word against the types, ignoring case
+    private Type readType() {
+        int start = pos;
+        while (pos < end && line.charAt(pos) != SEPARATOR) {
+            pos++;
+        }
+        int length = pos - start;
+        for (Type candidate : TYPES) {
+            String word = candidate.name();
+            if (word.length() != length) {
+                continue;
+            }
+            int i = 0;
+            while (i < length && Character.toUpperCase(line.charAt(start + i)) == word.charAt(i)) {
+                i++;
+            }
+            if (i == length) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    // we read the rest of a field trimmed, null if it is blank
+    // (the only strings we keep, a name or token outlives the line)
+    private String readField() {
+        int start = pos;
+        while (pos < end && line.charAt(pos) != SEPARATOR) {
+            pos++;
+        }
+        int stop = pos;
+        while (start < stop && line.charAt(start) <= ' ') {
+            start++;
+        }
+        while (stop > start && line.charAt(stop - 1) <= ' ') {
+            stop--;
+        }
+        return start == stop ? null : line.subSequence(start, stop).toString();
+    }
+
+    // we read a non-negative number, -1 if there are no digits or it is too big
+    private int readNumber() {
+        int start = pos;
+        int value = 0;
+        while (pos < end) {
+            char c = line.charAt(pos);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            value = value * 10 + (c - '0');
+            if (value > MAX_NUMBER) {
+                return -1;
+            }
+            pos++;
+        }
+        return pos == start ? -1 : value;
+    }
+
+    private boolean skipSeparator() {
+        return skip(SEPARATOR);
+    }
+
+    private boolean skip(char expected) {
+        if (pos < end && line.charAt(pos) == expected) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    // a field ends at the end of the line or at the next separator
+    private boolean atFieldEnd() {
+        return pos == end || line.charAt(pos) == SEPARATOR;
+    }
+}
@@ -0,0 +1,43 @@
+package com.group29.skipbo.server;
+
+import protocol.BinaryProtocol;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// we use this to hide how a client's lines reach the network
+// (blocking socket streams or the NIO selector transport)
+// lines are queued first and only written on flush(), so everything one game
+// event produces for a client goes out in a single write
+interface ClientConnection {
+
+    // we encode a protocol line once, the result can be queued for any number of clients
+    static ByteBuffer encode(String line) {
+        return ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8)).asReadOnlyBuffer();
+    }
+
+    // the same for clients that agreed on binary frames
+    static ByteBuffer encodeBinary(String line) {
+        return ByteBuffer.wrap(BinaryProtocol.encode(line)).asReadOnlyBuffer();
+    }
+
+    // we queue one encoded line (see encode and encodeBinary), false if the queue is full
+    // the frame is shared with other clients, so we only ever read a duplicate of it
+    boolean offer(ByteBuffer frame);
+
+    // we ask the writer to write everything queued so far, never blocks
+    void flush();
+
+    // we get how many lines are queued but not written yet
+    int pendingLines();
+
+    // we get System.nanoTime() of the last write progress while lines are waiting,
+    // 0 when nothing waits, so the handler can tell a stuck client from a busy one
+    long pendingSince();
+
+    // we drop every queued line that was not started yet and queue frame instead
+    void replacePending(ByteBuffer frame);
+
+    // we close the underlying socket or channel
+    void close();
+}
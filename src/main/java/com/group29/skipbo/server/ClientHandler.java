@@ -2,37 +2,103 @@ package com.group29.skipbo.server;
 
 import java.io.*;
 import java.net.Socket;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
 
-// we use this to handle one client connection (one thread per client)
+import protocol.common.ErrorCode;
+import protocol.common.Feature;
+
+// we use this to handle one client connection
+// with the blocking transport it runs on its own thread, with the NIO
+// transport the selector thread feeds it lines through handleLine
 public class ClientHandler implements Runnable {
 
+    // how many lines may wait for a client before we give up on it
+    static final int OUTBOUND_CAPACITY = 1024;
+    // the features this server can agree on
+    private static final int SERVER_FEATURES = 1 << Feature.BINARY.ordinal() | 1 << Feature.TABLE_DELTA.ordinal()
+            | 1 << Feature.RESUME.ordinal();
+    private static final int READ_BUFFER_SIZE = 4096;
+    // a writer mostly waits for a flush, as a virtual thread it costs no platform
+    // thread, so a blocking client needs only its reader
+    private static final ThreadFactory WRITER_THREADS = Thread.ofVirtual().name("writer-", 0).factory();
+
     private final Socket socket;
     private final GameController gameController;
-    private BufferedReader in;
-    private PrintWriter out;
+    private final ThreadFactory writerThreads;
+    private volatile ClientConnection connection;
     private String playerName;
-    private boolean connected;
+    private volatile GameTable table;
+    // the table this client watches as a spectator (null if none), see stopWatching
+    private GameTable watching;
+    private volatile boolean connected;
+    // set once HELLO and WELCOME agreed on Feature.BINARY, from then on both
+    // directions use length-prefixed frames
+    private volatile boolean binary;
+    // the features both sides agreed on in HELLO/WELCOME, one bit per Feature
+    private volatile int features;
+    // with Feature.RESUME, the token RESUME needs to take this session's seat back
+    private volatile String sessionToken;
+    // the table version this client last got in full or as a delta (0 = none yet),
+    // only the table's mailbox and a resync touch it
+    private volatile int tableVersion;
+    // set after we sent RESYNC, until the client asks for TABLE or HAND again
+    private volatile boolean resyncing;
+    // reused for every line, only the reading thread touches it
+    private final ClientCommand command = new ClientCommand();
+    // System.nanoTime() of the last command from the client, the idle wheel reads it
+    private volatile long lastActivity;
+    // rate limits for read-only queries and for commands that change state (null if off),
+    // only the reading thread touches them
+    private TokenBucket queryBudget;
+    private TokenBucket changeBudget;
 
     public ClientHandler(Socket socket, GameController gameController) {
+        this(socket, gameController, WRITER_THREADS);
+    }
+
+    // the writer thread of the socket comes from writerThreads
+    public ClientHandler(Socket socket, GameController gameController, ThreadFactory writerThreads) {
         this.socket = socket;
         this.gameController = gameController;
+        this.writerThreads = writerThreads;
+        this.playerName = null;
+        this.connected = true;
+        ServerMetrics.recordConnectionOpened();
+        createBudgets();
+    }
+
+    // we use this when the NIO transport already owns the channel
+    ClientHandler(ClientConnection connection, GameController gameController) {
+        this.socket = null;
+        this.writerThreads = null;
+        this.connection = connection;
+        this.gameController = gameController;
         this.playerName = null;
         this.connected = true;
+        ServerMetrics.recordConnectionOpened();
+        createBudgets();
+    }
+
+    private void createBudgets() {
+        long now = System.nanoTime();
+        queryBudget = gameController.newRateLimit(ClientCommand.Budget.QUERY, now);
+        changeBudget = gameController.newRateLimit(ClientCommand.Budget.CHANGE, now);
     }
 
     @Override
     public void run() {
         try {
             // we set up the input/output streams
-            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
-            out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true);
+            InputStream in = socket.getInputStream();
+            connection = new SocketConnection(socket, OUTBOUND_CAPACITY, writerThreads);
 
-            String line;
-            while (connected && (line = in.readLine()) != null) {
-                if (!line.trim().isEmpty()) {
-                    handleCommand(line.trim());
-                }
+            InboundFramer framer = new InboundFramer(this);
+            byte[] buffer = new byte[READ_BUFFER_SIZE];
+            int read;
+            while (connected && (read = in.read(buffer)) > 0) {
+                framer.onBytes(buffer, 0, read);
             }
 
         } catch (IOException e) {
@@ -45,46 +111,147 @@ public class ClientHandler implements Runnable {
         }
     }
 
-    // we parse and handle a command from the client
-    private void handleCommand(String line) {
-        String[] parts = line.split("~");
-        String command = parts[0].toUpperCase();
+    // we handle one raw line from the network (both transports end up here)
+    void handleLine(String line) {
+        lastActivity = System.nanoTime();
+        handleParsed(command.parse(line));
+    }
+
+    // we handle one binary frame body, it is only valid during this call
+    void handleFrame(ByteBuffer body) {
+        lastActivity = System.nanoTime();
+        handleParsed(command.parse(body));
+    }
+
+    private void handleParsed(ErrorCode error) {
+        if (error != null) {
+            sendError(error.getCode());
+        } else if (command.type != null) {
+            ClientCommand.Type type = command.type;
+            ServerMetrics.recordCommand(type);
+            if (!withinBudget(type.budget)) {
+                // over the limit, we answer without going near the controller or a table
+                sendError(ErrorCode.RATE_LIMITED.getCode());
+                return;
+            }
+            handleCommand(command);
+            // a table times the commands it answers itself (see GameTable.submitCommand)
+            if (!type.runsOnTable) {
+                ServerMetrics.recordLatency(type, System.nanoTime() - lastActivity);
+            }
+        }
+    }
+
+    private boolean withinBudget(ClientCommand.Budget budget) {
+        TokenBucket bucket = budget == ClientCommand.Budget.QUERY ? queryBudget
+                : budget == ClientCommand.Budget.CHANGE ? changeBudget : null;
+        return bucket == null || bucket.tryTake(lastActivity);
+    }
 
-        switch (command) {
-            case "HELLO":
-                handleHello(parts);
+    // we handle a command the parser already checked
+    private void handleCommand(ClientCommand command) {
+        switch (command.type) {
+            case HELLO:
+                handleHello(command.name, command.features);
                 break;
-            case "GAME":
-                handleGame(parts);
+            case GAME:
+                handleGame(command.playerCount);
                 break;
-            case "HAND":
-                handleHand();
+            case HAND:
+                resyncing = false;
+                handleHand(command.version);
                 break;
-            case "TABLE":
-                handleTable();
+            case TABLE:
+                resyncing = false;
+                handleTable(command.version);
                 break;
-            case "PLAY":
-                handlePlay(parts);
+            case PLAY:
+                handlePlay(command.source, command.sourceIndex, command.buildingIndex);
                 break;
-            case "END":
+            case END:
                 handleEnd();
                 break;
-            case "ADDBOT":
+            case ADDBOT:
                 handleAddBot();
                 break;
-            default:
-                sendError("204"); // INVALID_COMMAND
+            case PING:
+                send("PONG");
+                break;
+            case PONG:
+                break; // the answer to our PING, reading it was all we needed
+            case METRICS:
+                handleMetrics(command.token);
+                break;
+            case WATCH:
+                handleWatch(command.tableId);
+                break;
+            case RESUME:
+                handleResume(command.name, command.token, command.sequence);
                 break;
         }
     }
 
+    // METRICS~token - an operator wants the server metrics, works before HELLO too
+    private void handleMetrics(String token) {
+        String adminToken = gameController.getAdminToken();
+        if (adminToken == null || !adminToken.equals(token)) {
+            sendError("205"); // COMMAND_NOT_ALLOWED
+            return;
+        }
+        StringBuilder line = new StringBuilder("METRICS");
+        for (Map.Entry<String, String> entry : ServerMetrics.snapshot().entrySet()) {
+            line.append('~').append(entry.getKey()).append('=').append(entry.getValue());
+        }
+        send(line.toString());
+    }
+
+    // WATCH~table - client wants to follow a running table without playing,
+    // players of a running game can't
+    private void handleWatch(int tableId) {
+        if (playerName == null) {
+            sendError("205");
+            return;
+        }
+        GameTable seat = table;
+        GameTable target = gameController.getTableById(tableId);
+        if (seat != null && seat.isInProgress() || target == null || !target.isInProgress()) {
+            sendError("205");
+            return;
+        }
+        watch(target);
+        target.watch(this); // the table replies with WATCHING and the snapshot, or ERROR
+    }
+
+    // we watch target instead of the table we watched before (null watches none)
+    void watch(GameTable target) {
+        GameTable old;
+        synchronized (this) {
+            old = watching;
+            watching = target;
+        }
+        if (old != null) {
+            old.unwatch(this);
+        }
+    }
+
+    // the table is done with us, unless we already watch another one
+    synchronized void stopWatching(GameTable finished) {
+        if (watching == finished) {
+            watching = null;
+        }
+    }
+
+    synchronized GameTable getWatching() {
+        return watching;
+    }
+
     // ADDBOT - client wants to add a computer player
     private void handleAddBot() {
         if (playerName == null) {
             sendError("205");
             return;
         }
-        String result = gameController.addBot();
+        String result = gameController.addBot(playerName);
         if (result != null) {
             sendError(result);
         } else {
@@ -93,102 +260,127 @@ public class ClientHandler implements Runnable {
     }
 
     // HELLO~name~features - client wants to register
-    private void handleHello(String[] parts) {
-        if (parts.length < 2) {
-            sendError("001"); // INVALID_PLAYER_NAME
-            return;
-        }
-
-        String name = parts[1].trim();
-        if (name.isEmpty()) {
-            sendError("001");
-            return;
-        }
-
+    private void handleHello(String name, int requestedFeatures) {
         // we try to register with the game controller
         String result = gameController.registerPlayer(name, this);
         if (result == null) {
             this.playerName = name;
-            send("WELCOME~" + name);
+            // we answer with the features we support out of the ones asked for
+            features = requestedFeatures & SERVER_FEATURES;
+            if (!gameController.isResumable()) {
+                features &= ~(1 << Feature.RESUME.ordinal());
+            }
+            if (supports(Feature.RESUME)) {
+                sessionToken = gameController.newSessionToken();
+            }
+            welcome();
             ServerView.logPlayerJoined(name);
         } else {
             sendError(result);
         }
     }
 
-    // GAME~n - client wants to start/join a game with n players
-    private void handleGame(String[] parts) {
-        if (playerName == null) {
-            sendError("205"); // COMMAND_NOT_ALLOWED
+    // WELCOME~name~features, with RESUME also the session token
+    private void welcome() {
+        StringBuilder letters = new StringBuilder();
+        for (Feature feature : Feature.values()) {
+            if (supports(feature)) {
+                letters.append(feature.getLetter());
+            }
+        }
+        String line = letters.length() > 0 ? "WELCOME~" + playerName + "~" + letters : "WELCOME~" + playerName;
+        // WELCOME still goes out as text, with BINARY everything after it is binary
+        send(sessionToken != null ? line + "~" + sessionToken : line);
+        binary = supports(Feature.BINARY);
+    }
+
+    // RESUME~name~token~lastSeq - instead of HELLO, a client whose connection dropped
+    // takes its session and seat back
+    private void handleResume(String name, String token, int lastSeq) {
+        if (playerName != null) {
+            sendError("205");
             return;
         }
+        String result = gameController.resumePlayer(name, token, lastSeq, this);
+        if (result != null) {
+            sendError(result);
+        }
+        // if successful, we sent WELCOME and the table sends RESUMED and what we missed
+    }
 
-        if (parts.length < 2) {
-            sendError("204"); // INVALID_COMMAND
+    // the controller gave us the seat of a dropped session, we agree on what it agreed on
+    void resumed(String name, String token, int features) {
+        this.playerName = name;
+        this.sessionToken = token;
+        this.features = features;
+        welcome();
+        ServerView.logPlayerJoined(name);
+    }
+
+    // GAME~n - client wants to start/join a game with n players
+    private void handleGame(int playerCount) {
+        if (playerName == null) {
+            sendError("205"); // COMMAND_NOT_ALLOWED
             return;
         }
 
-        try {
-            int playerCount = Integer.parseInt(parts[1]);
-            String result = gameController.requestGame(playerName, playerCount, this);
-            if (result != null) {
-                sendError(result);
-            }
-            // if successful, controller will send QUEUE or START
-        } catch (NumberFormatException e) {
-            sendError("204");
+        String result = gameController.requestGame(playerName, playerCount, this);
+        if (result != null) {
+            sendError(result);
         }
+        // if successful, controller will send QUEUE or START
     }
 
-    // HAND - client wants to see their hand
-    private void handleHand() {
+    // HAND or HAND~version - client wants to see their hand
+    private void handleHand(int version) {
         if (playerName == null) {
             sendError("205");
             return;
         }
 
-        String hand = gameController.getPlayerHand(playerName);
-        if (hand != null) {
-            send("HAND~" + hand);
+        GameTable current = table;
+        if (current != null) {
+            current.requestHand(this, version); // the table replies with HAND, NOTMODIFIED or ERROR
         } else {
             sendError("205"); // game not started
         }
     }
 
-    // TABLE - client wants to see the table
-    private void handleTable() {
+    // TABLE or TABLE~version - client wants to see the table
+    private void handleTable(int version) {
         if (playerName == null) {
             sendError("205");
             return;
         }
 
-        String table = gameController.getTableState(playerName);
-        if (table != null) {
-            send("TABLE~" + table);
+        // a spectator asks the table it watches (after a RESYNC, say)
+        GameTable current = table;
+        GameTable watched = getWatching();
+        if (watched != null && (current == null || !current.isInProgress())) {
+            current = watched;
+        }
+        if (current != null) {
+            current.requestTable(this, version);
         } else {
             sendError("205");
         }
     }
 
     // PLAY~from~to - client makes a move
-    private void handlePlay(String[] parts) {
+    private void handlePlay(ClientCommand.Source source, int sourceIndex, int buildingIndex) {
         if (playerName == null) {
             sendError("205");
             return;
         }
 
-        if (parts.length < 3) {
-            sendError("204");
+        GameTable current = table;
+        if (current == null) {
+            sendError("205");
             return;
         }
 
-        String from = parts[1];
-        String to = parts[2];
-        String result = gameController.handlePlay(playerName, from, to);
-        if (result != null) {
-            sendError(result);
-        }
-        // if successful, controller broadcasts PLAY to all
+        current.play(this, source, sourceIndex, buildingIndex);
+        // the table broadcasts PLAY to all, or sends us an ERROR
     }
 
     // END - client ends their turn (must discard)
@@ -198,42 +390,195 @@ public class ClientHandler implements Runnable {
             return;
         }
 
-        String result = gameController.handleEndTurn(playerName);
-        if (result != null) {
-            sendError(result);
+        GameTable current = table;
+        if (current == null) {
+            sendError("205");
+            return;
         }
+
+        current.endTurn(this);
     }
 
-    // we send a message to this client
+    // we send a message to this client right away
     public void send(String message) {
-        if (out != null && connected) {
-            out.println(message);
+        queue(message);
+        flush();
+    }
+
+    // we queue a message without writing it, the table flushes once per game event
+    void queue(String message) {
+        queue(encode(message));
+    }
+
+    // we encode a line the way this client reads them
+    private ByteBuffer encode(String message) {
+        return binary ? ClientConnection.encodeBinary(message) : ClientConnection.encode(message);
+    }
+
+    // we queue a message that was already encoded (shared by every receiver of a broadcast)
+    void queue(ByteBuffer frame) {
+        ClientConnection current = connection;
+        if (current == null || !connected) {
+            return;
+        }
+        if (isFallingBehind(current) || !current.offer(frame)) {
+            handleSlowConsumer(current);
+        }
+    }
+
+    // a client falls behind when too many lines wait for it, or when nothing
+    // was written to it for longer than the write deadline
+    private boolean isFallingBehind(ClientConnection current) {
+        if (current.pendingLines() >= gameController.getOutboundHighWater()) {
+            return true;
+        }
+        long since = current.pendingSince();
+        long deadlineMs = gameController.getWriteDeadlineMs();
+        return since != 0 && deadlineMs > 0 && System.nanoTime() - since > deadlineMs * 1_000_000L;
+    }
+
+    // we can't hold a slow client's messages forever, the policy says what we do instead
+    private void handleSlowConsumer(ClientConnection current) {
+        SlowConsumerPolicy policy = gameController.getSlowConsumerPolicy();
+        GameTable seat = table;
+        if (policy == SlowConsumerPolicy.BOT && (seat == null || !seat.isInProgress())) {
+            policy = SlowConsumerPolicy.DISCONNECT; // no game to hand over
+        }
+        ServerMetrics.recordSlowConsumer(policy);
+
+        String name = playerName != null ? playerName : "unknown";
+        switch (policy) {
+            case RESYNC:
+                // the client asks for TABLE and HAND again once it reads RESYNC,
+                // until then we only log the first drop
+                if (!resyncing) {
+                    resyncing = true;
+                    ServerView.logError("Slow consumer " + name + ", dropping " + current.pendingLines()
+                            + " queued lines");
+                }
+                current.replacePending(encode("RESYNC"));
+                tableVersion = 0; // the deltas it missed are gone, so the next TABLE is full
+                break;
+            case BOT:
+                ServerView.logError("Slow consumer " + name + ", a bot takes the seat");
+                seat.handOverToBot(playerName);
+                disconnect();
+                break;
+            default:
+                ServerView.logError("Slow consumer " + name + ", disconnecting");
+                disconnect();
+                break;
         }
     }
 
+    // we write everything queued for this client
+    void flush() {
+        ClientConnection current = connection;
+        if (current != null && connected) {
+            current.flush();
+        }
+    }
+
+    // we get how many lines wait to be written to this client
+    public int getOutboundDepth() {
+        ClientConnection current = connection;
+        return current != null ? current.pendingLines() : 0;
+    }
+
     // we send an error to this client
     public void sendError(String code) {
+        ServerMetrics.recordError(code);
         send("ERROR~" + code);
     }
 
+    int getFeatures() {
+        return features;
+    }
+
+    String getSessionToken() {
+        return sessionToken;
+    }
+
+    // true if we agreed on this feature in HELLO/WELCOME
+    boolean supports(Feature feature) {
+        return (features & 1 << feature.ordinal()) != 0;
+    }
+
+    int getTableVersion() {
+        return tableVersion;
+    }
+
+    void setTableVersion(int tableVersion) {
+        this.tableVersion = tableVersion;
+    }
+
+    // true once this client gets binary frames instead of text lines
+    boolean isBinary() {
+        return binary;
+    }
+
+    boolean isConnected() {
+        return connected;
+    }
+
+    // we ask a quiet client to show it is still there, it answers PONG
+    void sendPing() {
+        send("PING");
+    }
+
+    long getLastActivity() {
+        return lastActivity;
+    }
+
+    // we count now as activity, the idle wheel does this when it starts watching
+    void touch(long now) {
+        lastActivity = now;
+    }
+
     // we get the player name
     public String getPlayerName() {
         return playerName;
     }
 
+    // we get the table this client is seated at (null if none)
+    public GameTable getTable() {
+        return table;
+    }
+
+    // the controller calls this when the client gets a seat (or leaves it)
+    // a player stops watching once they have a seat
+    void setTable(GameTable table) {
+        this.table = table;
+        this.tableVersion = 0;
+        if (table != null) {
+            watch(null);
+        }
+    }
+
     // we disconnect this client
     public void disconnect() {
-        connected = false;
+        synchronized (this) {
+            if (!connected) {
+                return;
+            }
+            connected = false;
+        }
+        ServerMetrics.recordConnectionClosed();
+        watch(null);
         if (playerName != null) {
-            gameController.removePlayer(playerName);
+            gameController.dropPlayer(playerName, this);
             ServerView.logPlayerLeft(playerName);
         }
-        try {
-            if (socket != null && !socket.isClosed()) {
-                socket.close();
+        if (connection != null) {
+            connection.close();
+        } else {
+            try {
+                if (socket != null && !socket.isClosed()) {
+                    socket.close();
+                }
+            } catch (IOException e) {
+                // ignore
             }
-        } catch (IOException e) {
-            // ignore
         }
     }
 }
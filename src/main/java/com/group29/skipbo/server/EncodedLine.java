@@ -0,0 +1,66 @@
+package com.group29.skipbo.server;
+
+import protocol.common.Feature;
+
+import java.nio.ByteBuffer;
+
+// we use this for one line a table sends about its game
+// it is encoded once per encoding, every player and every spectator that gets it
+// shares the same read-only bytes; the table and its spectators' fan-out may both
+// ask for it, so the buffers are volatile (at worst one is encoded twice)
+// a game event also has its sequence number, clients that agreed on Feature.RESUME
+// get it as one more field at the end of the line
+final class EncodedLine {
+
+    private final String message;
+    private final int sequence;
+    private volatile ByteBuffer text;
+    private volatile ByteBuffer binary;
+    private volatile ByteBuffer sequencedText;
+    private volatile ByteBuffer sequencedBinary;
+
+    // a line that is no game event (a reply or a snapshot line)
+    EncodedLine(String message) {
+        this(message, 0);
+    }
+
+    EncodedLine(String message, int sequence) {
+        this.message = message;
+        this.sequence = sequence;
+    }
+
+    int getSequence() {
+        return sequence;
+    }
+
+    // the line the way this client reads it
+    ByteBuffer encodedFor(ClientHandler client) {
+        if (sequence > 0 && client.supports(Feature.RESUME)) {
+            if (client.isBinary()) {
+                if (sequencedBinary == null) {
+                    sequencedBinary = ClientConnection.encodeBinary(message + "~" + sequence);
+                }
+                return sequencedBinary;
+            }
+            if (sequencedText == null) {
+                sequencedText = ClientConnection.encode(message + "~" + sequence);
+            }
+            return sequencedText;
+        }
+        if (client.isBinary()) {
+            if (binary == null) {
+                binary = ClientConnection.encodeBinary(message);
+            }
+            return binary;
+        }
+        if (text == null) {
+            text = ClientConnection.encode(message);
+        }
+        return text;
+    }
+
+    @Override
+    public String toString() {
+        return message;
+    }
+}
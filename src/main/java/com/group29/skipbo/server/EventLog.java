@@ -0,0 +1,52 @@
+package com.group29.skipbo.server;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// we use this for the recent events of one game, numbered from 1 in the order the
+// table sent them, so a player whose connection dropped gets exactly what they
+// missed when they RESUME; a ring of the last CAPACITY events, older ones are
+// overwritten (only the table's mailbox touches it)
+final class EventLog {
+
+    static final int CAPACITY = 256;
+
+    private final EncodedLine[] lines;
+    // the seat a private event (HAND) went to, -1 for everyone
+    private final int[] seats;
+    private int last;
+
+    EventLog() {
+        this.lines = new EncodedLine[CAPACITY];
+        this.seats = new int[CAPACITY];
+    }
+
+    // we number the next event and keep it
+    EncodedLine append(String message, int seat) {
+        EncodedLine line = new EncodedLine(message, ++last);
+        lines[last % CAPACITY] = line;
+        seats[last % CAPACITY] = seat;
+        return line;
+    }
+
+    // the number of the newest event, 0 before the first
+    int last() {
+        return last;
+    }
+
+    // the events after sequence that seat got, oldest first,
+    // null if some of them were overwritten already (or sequence is from the future)
+    List<EncodedLine> since(int sequence, int seat) {
+        if (sequence < 0 || sequence > last || last - sequence > CAPACITY) {
+            return null;
+        }
+        List<EncodedLine> missed = new ArrayList<>(last - sequence);
+        for (int next = sequence + 1; next <= last; next++) {
+            int slot = next % CAPACITY;
+            if (seats[slot] < 0 || seats[slot] == seat) {
+                missed.add(lines[slot]);
+            }
+        }
+        return missed;
+    }
+}
@@ -0,0 +1,78 @@
+package com.group29.skipbo.server;
+
+import com.group29.skipbo.replay.GameRecord;
+import com.group29.skipbo.replay.ReplayFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// we use this to archive finished games as replay files, one file per day
+// tables only queue their GameRecord, one thread appends whatever has queued up
+// in a single write, so a table never waits for the disk
+final class GameArchive {
+
+    private final Path directory;
+    private final Queue<GameRecord> pending;
+    private final ExecutorService writer;
+    // the file we last appended to, only the writer thread touches it
+    private Path current;
+
+    GameArchive(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.pending = new ConcurrentLinkedQueue<>();
+        this.writer = Executors.newSingleThreadExecutor(
+                Thread.ofPlatform().name("replay-archive").daemon(true).factory());
+    }
+
+    void add(GameRecord record) {
+        pending.add(record);
+        writer.execute(this::write);
+    }
+
+    // an earlier call may have written our record already, then there is nothing to do
+    private void write() {
+        List<GameRecord> batch = new ArrayList<>();
+        GameRecord record;
+        while ((record = pending.poll()) != null) {
+            batch.add(record);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        Path file = directory.resolve(ReplayFile.nameFor(LocalDate.now()));
+        try {
+            if (!file.equals(current)) {
+                // an earlier run may have died halfway through a game, we cut that off first
+                long dropped = ReplayFile.repair(file);
+                if (dropped > 0) {
+                    ServerView.logError("Dropped " + dropped + " byte(s) of a cut-off game at the end of " + file);
+                }
+                current = file;
+            }
+            ReplayFile.append(file, batch);
+        } catch (IOException e) {
+            ServerView.logError("Could not archive " + batch.size() + " game(s) in " + file + ": " + e.getMessage());
+            // the write may have stopped halfway through a game, the next one repairs the file first
+            current = null;
+        }
+    }
+
+    // we write what is still queued and stop
+    void shutdown() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -1,564 +1,645 @@
 package com.group29.skipbo.server;
 
-import com.group29.skipbo.card.BuildingPile;
-import com.group29.skipbo.card.Card;
-import com.group29.skipbo.card.DiscardPile;
-import com.group29.skipbo.game.Game;
-import com.group29.skipbo.game.GameState;
-import com.group29.skipbo.player.ComputerPlayer;
-import com.group29.skipbo.player.HumanPlayer;
-import com.group29.skipbo.player.Player;
+import com.group29.skipbo.replay.GameRecord;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.HashMap;
-import java.util.Map;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.ArrayList;
+import java.util.Map;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 // we use this as the Controller in MVC
-// it manages the game state and handles all game logic
+// it keeps the registry of names and tables and forms new tables from the
+// waiting players, the game logic itself lives in GameTable
 public class GameController {
 
-    // we track players waiting for a game
-    private final Map<String, ClientHandler> waitingPlayers;
-    private int requestedPlayerCount;
-
-    // we track the actual game
-    private Game game;
-    private final Map<String, ClientHandler> gamePlayers;
-    private final Map<String, Player> playerObjects;
-    private final List<String> botNames;
+    // we track every name in use (bots have a null handler)
+    private final Map<String, ClientHandler> registeredPlayers;
+
+    // we track players waiting for a game, one FIFO queue per table size
+    private final MatchQueues matchQueues;
+    // bots added before their requester asked for a table size, they join that queue
+    private final Map<String, List<String>> pendingBots;
+
+    // we track the running tables and who sits where
+    private final Map<Integer, GameTable> tables;
+    private final Map<String, GameTable> playerTables;
+    private final AtomicInteger nextTableId;
+
+    // registry lock, only held for lobby bookkeeping, never while a table deals
+    private final ReentrantLock lock;
+    private final BotScheduler botScheduler;
+    // one wheel finds the quiet clients of the whole server
+    private final IdleWheel idleWheel;
+    private final long botDelayMs;
+    // the pool that runs the table mailboxes, one table uses one thread at a time
+    private final ExecutorService tablePool;
+    // the pool that sends the spectators their lines, apart so watchers never hold up players
+    private final ExecutorService fanoutPool;
+
+    // what we do with clients that can't keep up (set once at startup)
+    private volatile SlowConsumerPolicy slowConsumerPolicy;
+    private volatile int outboundHighWater;
+    private volatile long writeDeadlineMs;
+    // how long a player waits before bots fill the rest of the table (0 never)
+    private volatile long botBackfillMs;
+    // the token METRICS needs, null turns the admin command off
+    private volatile String adminToken;
+    // commands per second one connection may send, per ClientCommand.Budget (0 no limit)
+    private volatile double queryRate;
+    private volatile double changeRate;
+    // where the running games keep their move journals, null keeps no journal
+    private volatile JournalStore journals;
+    // where finished games are archived for replay, null archives nothing
+    private volatile GameArchive archive;
+    // how long the seat of a player whose connection dropped waits for RESUME (0 never)
+    private volatile long resumeWaitMs;
+    private final SecureRandom tokens;
+
+    public static final long DEFAULT_BOT_DELAY_MS = 500;
+    public static final int DEFAULT_OUTBOUND_HIGH_WATER = 256;
+    public static final long DEFAULT_WRITE_DEADLINE_MS = 10_000;
+    public static final long DEFAULT_PING_INTERVAL_MS = 30_000;
+    public static final long DEFAULT_IDLE_TIMEOUT_MS = 90_000;
+    public static final long DEFAULT_BOT_BACKFILL_MS = 0;
+    public static final double DEFAULT_QUERY_RATE = 100;
+    public static final double DEFAULT_CHANGE_RATE = 100;
+    // a connection may save up this many seconds' worth of commands
+    public static final int RATE_BURST_SECONDS = 2;
+    public static final long DEFAULT_JOURNAL_SYNC_MS = 10;
+    // how long a recovered seat waits for its player before a bot takes it
+    public static final long RECOVERED_SEAT_WAIT_MS = 120_000;
+    public static final long DEFAULT_RESUME_WAIT_MS = 30_000;
 
     public GameController() {
-        this.waitingPlayers = new HashMap<>();
-        this.gamePlayers = new HashMap<>();
-        this.playerObjects = new HashMap<>();
-        this.botNames = new ArrayList<>();
-        this.requestedPlayerCount = 0;
-        this.game = null;
-    }
-
-    // ===== PLAYER REGISTRATION =====
-
-    // we register a new player, returns error code or null if success
-    public synchronized String registerPlayer(String name, ClientHandler handler) {
-        // we check if name is already taken
-        if (waitingPlayers.containsKey(name) || gamePlayers.containsKey(name)) {
-            return "002"; // NAME_IN_USE
-        }
-        waitingPlayers.put(name, handler);
-        return null;
+        this(DEFAULT_BOT_DELAY_MS);
     }
 
-    // we remove a player who disconnected
-    public synchronized void removePlayer(String name) {
-        waitingPlayers.remove(name);
-        gamePlayers.remove(name);
-        playerObjects.remove(name);
-        // we could handle mid-game disconnection here
+    // bots wait botDelayMs before each turn at tables with humans
+    public GameController(long botDelayMs) {
+        this.botScheduler = new BotScheduler();
+        this.idleWheel = new IdleWheel(DEFAULT_PING_INTERVAL_MS, DEFAULT_IDLE_TIMEOUT_MS);
+        this.botDelayMs = botDelayMs;
+        this.lock = new ReentrantLock();
+        this.tablePool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                Thread.ofPlatform().name("table-", 0).daemon(true).factory());
+        this.fanoutPool = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors() / 2),
+                Thread.ofPlatform().name("fanout-", 0).daemon(true).factory());
+        this.registeredPlayers = new HashMap<>();
+        this.matchQueues = new MatchQueues();
+        this.pendingBots = new HashMap<>();
+        this.tables = new ConcurrentHashMap<>();
+        this.playerTables = new ConcurrentHashMap<>();
+        this.nextTableId = new AtomicInteger(1);
+        this.slowConsumerPolicy = SlowConsumerPolicy.DISCONNECT;
+        this.outboundHighWater = DEFAULT_OUTBOUND_HIGH_WATER;
+        this.writeDeadlineMs = DEFAULT_WRITE_DEADLINE_MS;
+        this.botBackfillMs = DEFAULT_BOT_BACKFILL_MS;
+        this.queryRate = DEFAULT_QUERY_RATE;
+        this.changeRate = DEFAULT_CHANGE_RATE;
+        this.resumeWaitMs = DEFAULT_RESUME_WAIT_MS;
+        this.tokens = new SecureRandom();
     }
 
-    // ===== BOT SUPPORT =====
+    // ===== RATE LIMITS =====
 
-    private int botCounter = 0;
+    // every connection may send queryRate TABLE/HAND/METRICS and changeRate other
+    // commands per second, with bursts of RATE_BURST_SECONDS' worth; 0 turns a limit off
+    // connections made before this keep the limits they started with
+    public void configureRateLimits(double queryRate, double changeRate) {
+        this.queryRate = Math.max(0, queryRate);
+        this.changeRate = Math.max(0, changeRate);
+    }
 
-    // we add a computer player to the waiting list
-    public synchronized String addBot() {
-        if (game != null && game.getState() == GameState.IN_PROGRESS) {
-            return "205"; // game already running
+    // a new bucket for one connection, null if that budget has no limit
+    TokenBucket newRateLimit(ClientCommand.Budget budget, long now) {
+        double rate = budget == ClientCommand.Budget.QUERY ? queryRate
+                : budget == ClientCommand.Budget.CHANGE ? changeRate : 0;
+        if (rate <= 0) {
+            return null;
         }
+        return new TokenBucket(rate, (int) Math.max(1, Math.ceil(rate * RATE_BURST_SECONDS)), now);
+    }
 
-        botCounter++;
-        String botName = "Bot" + botCounter;
-
-        // we register the bot with a null handler (bots don't have network connections)
-        waitingPlayers.put(botName, null);
-        ServerView.log("Bot added: " + botName);
+    // ===== JOURNAL =====
 
-        // we check if we can start the game now
-        if (requestedPlayerCount > 0 && waitingPlayers.size() >= requestedPlayerCount) {
-            startGame();
+    // every game journals its moves in directory, forced to disk every syncMs;
+    // call before recoverGames() and before any table deals
+    public void configureJournal(Path directory, long syncMs) {
+        try {
+            this.journals = new JournalStore(directory, syncMs);
+        } catch (IOException e) {
+            ServerView.logError("Can't use journal directory " + directory + ", not journaling: " + e.getMessage());
         }
-
-        return null;
     }
 
-    // ===== GAME REQUEST =====
-
-    // we handle a player requesting a game
-    public synchronized String requestGame(String name, int playerCount, ClientHandler handler) {
-        // we validate player count
-        if (playerCount < 2 || playerCount > 6) {
-            return "204"; // INVALID_COMMAND
-        }
+    // the journal of a table that is dealing now, null if we keep none
+    MoveJournal createJournal(int tableId, long seed, long startedAt, List<String> names, List<String> bots) {
+        JournalStore store = journals;
+        return store != null ? store.create(tableId, seed, startedAt, names, bots) : null;
+    }
 
-        // we check if a game is already running
-        if (game != null && game.getState() == GameState.IN_PROGRESS) {
-            return "205"; // COMMAND_NOT_ALLOWED
+    // the table's game ended, its journal goes
+    void finishJournal(MoveJournal journal) {
+        JournalStore store = journals;
+        if (store != null) {
+            store.finish(journal);
         }
+    }
 
-        // we set or validate requested player count
-        if (requestedPlayerCount == 0) {
-            requestedPlayerCount = playerCount;
+    // we rebuild the games the journals hold and seat them again, bots play on and
+    // every human seat waits RECOVERED_SEAT_WAIT_MS for its player to send GAME
+    // returns how many games came back
+    public int recoverGames() {
+        JournalStore store = journals;
+        if (store == null) {
+            return 0;
+        }
+        List<GameTable> recovered = new ArrayList<>();
+        List<MoveJournal.Recovered> games = store.recover();
+        lockRegistry();
+        try {
+            for (MoveJournal.Recovered game : games) {
+                GameTable table = new GameTable(game, store.reopen(game), this, tablePool, botScheduler, botDelayMs);
+                tables.put(table.getId(), table);
+                nextTableId.accumulateAndGet(table.getId() + 1, Math::max);
+                for (String name : game.names) {
+                    playerTables.put(name, table);
+                    if (game.bots.contains(name)) {
+                        registeredPlayers.put(name, null);
+                    }
+                }
+                recovered.add(table);
+                ServerView.logGame("Table " + table.getId() + " recovered after " + game.moves.length + " moves");
+            }
+        } finally {
+            lock.unlock();
         }
-
-        // we send QUEUE to this player
-        handler.send("QUEUE");
-
-        // we check if we have enough players
-        if (waitingPlayers.size() >= requestedPlayerCount) {
-            startGame();
+        for (GameTable table : recovered) {
+            table.resume();
+            botScheduler.later(table::releaseVacantSeats, RECOVERED_SEAT_WAIT_MS);
         }
-
-        return null;
+        return recovered.size();
     }
 
-    // we start the game when we have enough players
-    private void startGame() {
-        game = new Game();
-
-        // we take players from waiting list
-        List<String> playerNames = new ArrayList<>();
-        int count = 0;
-        for (Map.Entry<String, ClientHandler> entry : waitingPlayers.entrySet()) {
-            if (count >= requestedPlayerCount)
-                break;
+    // ===== REPLAY ARCHIVE =====
 
-            String name = entry.getKey();
-            ClientHandler handler = entry.getValue();
-
-            // we create the right player type based on whether it's a bot
-            Player player;
-            if (handler == null) {
-                // this is a bot
-                player = ComputerPlayer.create(name);
-                botNames.add(name);
-            } else {
-                player = HumanPlayer.create(name);
-            }
-            game.addPlayer(player);
-            playerObjects.put(name, player);
-            gamePlayers.put(name, handler);
-            playerNames.add(name);
-            count++;
-            ;
-        }
-
-        // we clear waiting list
-        for (String name : playerNames) {
-            waitingPlayers.remove(name);
+    // every finished game is appended to a replay file in directory, one file per day
+    public void configureArchive(Path directory) {
+        try {
+            this.archive = new GameArchive(directory);
+        } catch (IOException e) {
+            ServerView.logError("Can't use archive directory " + directory + ", not archiving: " + e.getMessage());
         }
+    }
 
-        // we start the game
-        game.startGame();
-        ServerView.logGameStarted(playerNames.size());
-
-        // we send START to all players
-        String playerList = String.join(",", playerNames);
-        broadcast("START~" + playerList);
+    boolean isArchiving() {
+        return archive != null;
+    }
 
-        // we send initial state to each player
-        for (String name : playerNames) {
-            sendPlayerHand(name);
-            sendPlayerStock(name);
+    // a table calls this when someone won, the file is written on the archive's thread
+    void archiveGame(GameRecord record) {
+        GameArchive current = archive;
+        if (current != null) {
+            current.add(record);
         }
+    }
 
-        // we send TURN to indicate whose turn
-        String currentPlayer = game.getCurrentPlayer().getName();
-        broadcast("TURN~" + currentPlayer);
-        ServerView.logTurn(currentPlayer);
+    // ===== SESSION RESUMPTION =====
 
-        // if current player is a bot, trigger auto-play
-        triggerBotTurnIfNeeded();
+    // a player that agreed on Feature.RESUME keeps their seat for waitMs after their
+    // connection drops, 0 turns resumption off (the feature is no longer offered)
+    public void configureResumption(long waitMs) {
+        this.resumeWaitMs = Math.max(0, waitMs);
     }
 
-    // we check if current player is a bot and play their turn
-    private void triggerBotTurnIfNeeded() {
-        if (game == null || game.getState() != GameState.IN_PROGRESS)
-            return;
+    boolean isResumable() {
+        return resumeWaitMs > 0;
+    }
 
-        String currentName = game.getCurrentPlayer().getName();
-        if (botNames.contains(currentName)) {
-            // run bot turn in a separate thread to avoid blocking
-            new Thread(() -> playBotTurn(currentName)).start();
-        }
+    // the token a resumable session gets in WELCOME, RESUME has to show it
+    String newSessionToken() {
+        byte[] bytes = new byte[18];
+        tokens.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
     }
 
-    // we play a bot's turn automatically
-    private synchronized void playBotTurn(String botName) {
+    // a connection closed; a resumable player in a running game keeps the seat
+    // (the name is free meanwhile), everyone else leaves as before
+    void dropPlayer(String name, ClientHandler handler) {
+        long waitMs = resumeWaitMs;
+        String token = handler.getSessionToken();
+        lockRegistry();
         try {
-            Thread.sleep(500);
-        } catch (InterruptedException e) {
-            return;
-        }
-
-        if (game == null || game.getState() != GameState.IN_PROGRESS)
-            return;
-        if (!game.getCurrentPlayer().getName().equals(botName))
-            return;
-
-        Player player = playerObjects.get(botName);
-        if (!(player instanceof ComputerPlayer))
-            return;
-
-        ComputerPlayer bot = (ComputerPlayer) player;
-
-        // Bot plays cards until it can't
-        // We need to track plays manually to broadcast them
-        boolean keepPlaying = true;
-        while (keepPlaying) {
-            keepPlaying = false;
-
-            // Try to play from stock first
-            for (int i = 0; i < game.getBuildingPiles().length; i++) {
-                BuildingPile pile = game.getBuildingPile(i);
-                if (!bot.getStockPile().isEmpty() && pile.canPlay(bot.getStockPile().peekTop())) {
-                    Card card = bot.getStockPile().peekTop();
-                    bot.playFromStock(pile);
-
-                    // Broadcast the play
-                    int newValue = pile.getCurrentValue();
-                    broadcast("PLAY~" + botName + "~S~B." + i + "~" + newValue);
-                    ServerView.logMove(botName, "S", "B." + i);
-
-                    keepPlaying = true;
-                    break;
-                }
+            GameTable table = playerTables.get(name);
+            if (token != null && waitMs > 0 && registeredPlayers.get(name) == handler && table != null
+                    && table.isInProgress() && !table.isVacant(name)) {
+                registeredPlayers.remove(name);
+                table.vacate(name, token, handler.getFeatures(), waitMs);
+                return;
             }
+        } finally {
+            lock.unlock();
+        }
+        removePlayer(name);
+    }
 
-            // If didn't play from stock, try hand
-            if (!keepPlaying) {
-                for (int h = 0; h < bot.getHand().size(); h++) {
-                    Card card = bot.getHand().get(h);
-                    for (int i = 0; i < game.getBuildingPiles().length; i++) {
-                        BuildingPile pile = game.getBuildingPile(i);
-                        if (pile.canPlay(card)) {
-                            bot.playFromHand(h, pile);
-
-                            // Broadcast the play
-                            int newValue = pile.getCurrentValue();
-                            broadcast("PLAY~" + botName + "~H." + h + "~B." + i + "~" + newValue);
-                            ServerView.logMove(botName, "H." + h, "B." + i);
-
-                            keepPlaying = true;
-                            break;
-                        }
-                    }
-                    if (keepPlaying) break;
-                }
+    // RESUME~name~token~lastSeq - a player takes their dropped seat back on a new
+    // connection, returns error code or null (the table then replays what they missed)
+    public String resumePlayer(String name, String token, int lastSeq, ClientHandler handler) {
+        lockRegistry();
+        try {
+            ClientHandler old = registeredPlayers.get(name);
+            if (old != null && token.equals(old.getSessionToken())) {
+                // we didn't notice the old connection die yet, closing it frees the seat
+                old.disconnect();
             }
-
-            // If didn't play from hand, try discard piles
-            if (!keepPlaying) {
-                for (int d = 0; d < bot.getDiscardPiles().size(); d++) {
-                    if (bot.getDiscardPile(d).isEmpty()) continue;
-                    Card card = bot.getDiscardPile(d).getTopCard();
-                    for (int i = 0; i < game.getBuildingPiles().length; i++) {
-                        BuildingPile pile = game.getBuildingPile(i);
-                        if (pile.canPlay(card)) {
-                            bot.playFromDiscard(d, pile);
-
-                            // Broadcast the play
-                            int newValue = pile.getCurrentValue();
-                            broadcast("PLAY~" + botName + "~D." + d + "~B." + i + "~" + newValue);
-                            ServerView.logMove(botName, "D." + d, "B." + i);
-
-                            keepPlaying = true;
-                            break;
-                        }
-                    }
-                    if (keepPlaying) break;
-                }
+            if (registeredPlayers.containsKey(name)) {
+                return "002"; // NAME_IN_USE
             }
-
-            // Check for winner after each play
-            if (keepPlaying && bot.getStockPile().isEmpty()) {
-                game.endRound(bot);
-                broadcast("WINNER~" + botName);
-                ServerView.logWinner(botName);
-                return;
+            GameTable table = playerTables.get(name);
+            int features = table != null ? table.claimDroppedSeat(name, token) : -1;
+            if (features < 0) {
+                return "205"; // COMMAND_NOT_ALLOWED, no seat waits for this session
             }
+            registeredPlayers.put(name, handler);
+            handler.resumed(name, token, features);
+            handler.setTable(table);
+            table.resumeSeat(name, handler, lastSeq);
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
 
-            // Refill hand if empty
-            if (keepPlaying && bot.getHand().isEmpty() && !game.getDrawPile().isEmpty()) {
-                bot.refillHand(game.getDrawPile());
-            }
+    // a seat's wait for its player ended, the name may join other games again
+    void releaseSeat(String name, GameTable table) {
+        lockRegistry();
+        try {
+            playerTables.remove(name, table);
+        } finally {
+            lock.unlock();
         }
+    }
 
-        // Bot must discard to end turn
-        if (!bot.getHand().isEmpty()) {
-            int handIndex = (int) (Math.random() * bot.getHand().size());
-            int discardIndex = (int) (Math.random() * 4);
+    // ===== SPECTATORS =====
 
-            Card card = bot.getHand().removeAt(handIndex);
-            bot.getDiscardPile(discardIndex).discard(card);
+    // the watchers of one table, served on the fan-out pool
+    Spectators newSpectators() {
+        return new Spectators(fanoutPool);
+    }
 
-            // Broadcast the discard
-            broadcast("DISCARD~" + botName + "~" + formatCard(card) + "~" + discardIndex);
-        }
+    // ===== ADMIN =====
 
-        // Move to next player
-        game.nextTurn();
+    // METRICS~token answers with ServerMetrics.snapshot(), null (the default) turns it off
+    public void configureAdmin(String adminToken) {
+        this.adminToken = adminToken == null || adminToken.isEmpty() ? null : adminToken;
+    }
 
-        Player nextPlayer = game.getCurrentPlayer();
-        if (!game.getDrawPile().isEmpty()) {
-            nextPlayer.refillHand(game.getDrawPile());
-        }
+    String getAdminToken() {
+        return adminToken;
+    }
 
-        String nextPlayerName = nextPlayer.getName();
-        broadcast("TURN~" + nextPlayerName);
-        ServerView.logTurn(nextPlayerName);
+    // ===== MATCHMAKING =====
 
-        sendPlayerHand(nextPlayerName);
+    // a player that waited botBackfillMs for a table gets bots for the empty seats
+    // (0 turns it off, then a table only starts once its queue is full)
+    public void configureMatchmaking(long botBackfillMs) {
+        this.botBackfillMs = Math.max(0, botBackfillMs);
+    }
 
-        triggerBotTurnIfNeeded();
+    public long getBotBackfill() {
+        return botBackfillMs;
     }
 
-    // ===== GAME QUERIES =====
+    // ===== BACKPRESSURE =====
 
-    // we get a player's hand as a string
-    public synchronized String getPlayerHand(String name) {
-        if (game == null || game.getState() != GameState.IN_PROGRESS) {
-            return null;
-        }
+    // a client is slow once highWater lines wait for it or nothing was written to it
+    // for writeDeadlineMs (0 turns the deadline off)
+    public void configureBackpressure(SlowConsumerPolicy policy, int highWater, long writeDeadlineMs) {
+        this.slowConsumerPolicy = policy;
+        this.outboundHighWater = Math.max(1, Math.min(highWater, ClientHandler.OUTBOUND_CAPACITY));
+        this.writeDeadlineMs = Math.max(0, writeDeadlineMs);
+    }
 
-        Player player = playerObjects.get(name);
-        if (player == null)
-            return null;
+    // ===== HEARTBEAT =====
 
-        return formatHand(player);
+    // a client that sent nothing for pingIntervalMs gets PING, after idleTimeoutMs
+    // without a command (or PONG) we drop it; 0 turns either off
+    public void configureHeartbeat(long pingIntervalMs, long idleTimeoutMs) {
+        idleWheel.configure(pingIntervalMs, idleTimeoutMs);
     }
 
-    // we get the table state
-    public synchronized String getTableState(String name) {
-        if (game == null || game.getState() != GameState.IN_PROGRESS) {
-            return null;
-        }
+    public long getPingInterval() {
+        return idleWheel.getPingInterval();
+    }
 
-        // we format building piles
-        StringBuilder building = new StringBuilder();
-        for (int i = 0; i < Game.NUM_BUILDING_PILES; i++) {
-            if (i > 0)
-                building.append(".");
-            Card top = game.getBuildingPile(i).getTopCard();
-            building.append(formatCard(top));
-        }
+    public long getIdleTimeout() {
+        return idleWheel.getIdleTimeout();
+    }
 
-        // we format each player's discards
-        StringBuilder players = new StringBuilder();
-        boolean first = true;
-        for (Player p : game.getPlayers()) {
-            if (!first)
-                players.append(",");
-            first = false;
-
-            players.append(p.getName());
-            for (DiscardPile dp : p.getDiscardPiles()) {
-                players.append(".");
-                players.append(formatCard(dp.getTopCard()));
-            }
-        }
+    // the server calls this once per accepted handler, disconnecting takes it off the wheel
+    void watchIdle(ClientHandler handler) {
+        idleWheel.watch(handler);
+    }
 
-        return building.toString() + "~" + players.toString();
+    public SlowConsumerPolicy getSlowConsumerPolicy() {
+        return slowConsumerPolicy;
     }
 
-    // ===== GAME ACTIONS =====
+    public int getOutboundHighWater() {
+        return outboundHighWater;
+    }
 
-    // we handle a PLAY command
-    public synchronized String handlePlay(String name, String from, String to) {
-        if (game == null || game.getState() != GameState.IN_PROGRESS) {
-            return "205"; // COMMAND_NOT_ALLOWED
-        }
+    public long getWriteDeadlineMs() {
+        return writeDeadlineMs;
+    }
 
-        Player player = playerObjects.get(name);
-        if (player == null)
-            return "205";
+    // ===== PLAYER REGISTRATION =====
 
-        // we check if it's their turn
-        if (!game.isPlayerTurn(player)) {
-            return "205"; // NOT_YOUR_TURN
+    // we register a new player, returns error code or null if success
+    public String registerPlayer(String name, ClientHandler handler) {
+        lockRegistry();
+        try {
+            // we check if name is already taken
+            if (registeredPlayers.containsKey(name)) {
+                return "002"; // NAME_IN_USE
+            }
+            registeredPlayers.put(name, handler);
+            return null;
+        } finally {
+            lock.unlock();
         }
+    }
 
-        // we parse the destination (must be building pile)
-        int buildingIndex;
+    // we remove a player who disconnected
+    public void removePlayer(String name) {
+        GameTable table;
+        lockRegistry();
         try {
-            if (!to.toUpperCase().startsWith("B.")) {
-                return "206"; // INVALID_MOVE
+            registeredPlayers.remove(name);
+            matchQueues.remove(name);
+            // the bots this player added go with them, queued or still waiting for a size
+            for (String bot : matchQueues.removeBots(name)) {
+                registeredPlayers.remove(bot);
             }
-            buildingIndex = Integer.parseInt(to.substring(2));
-            if (buildingIndex < 0 || buildingIndex >= Game.NUM_BUILDING_PILES) {
-                return "206";
+            List<String> bots = pendingBots.remove(name);
+            if (bots != null) {
+                for (String bot : bots) {
+                    registeredPlayers.remove(bot);
+                }
+            }
+            table = playerTables.get(name);
+            if (table != null && table.isVacant(name)) {
+                // someone else with that name, the recovered seat keeps waiting
+                table = null;
+            } else {
+                playerTables.remove(name);
             }
-        } catch (Exception e) {
-            return "206";
+        } finally {
+            lock.unlock();
         }
+        if (table != null) {
+            table.removePlayer(name);
+        }
+    }
 
-        BuildingPile targetPile = game.getBuildingPile(buildingIndex);
+    // ===== BOT SUPPORT =====
+
+    private int botCounter = 0;
 
-        // we parse the source and make the move
+    // we add a computer player to the requester's queue
+    public String addBot(String requester) {
+        GameTable table;
+        lockRegistry();
         try {
-            if (from.toUpperCase().equals("S")) {
-                // play from stock
-                player.playFromStock(targetPile);
-            } else if (from.toUpperCase().startsWith("H.")) {
-                // play from hand
-                int handIndex = Integer.parseInt(from.substring(2));
-
-                // DEBUG
-                Card cardToPlay = player.getHand().get(handIndex);
-                ServerView.log("DEBUG: Trying to play card: " + formatCard(cardToPlay));
-                ServerView.log("DEBUG: Card isSkipBo: " + cardToPlay.isSkipBo());
-                if (!cardToPlay.isSkipBo()) {
-                    ServerView.log("DEBUG: Card number: " + cardToPlay.getNumber());
-                }
-                ServerView.log("DEBUG: Pile expects: " + targetPile.getNextRequiredNumber());
-                ServerView.log("DEBUG: canPlay result: " + targetPile.canPlay(cardToPlay));
-
-                player.playFromHand(handIndex, targetPile);
-            } else if (from.toUpperCase().startsWith("D.")) {
-                // play from discard
-                int discardIndex = Integer.parseInt(from.substring(2));
-                player.playFromDiscard(discardIndex, targetPile);
-            } else {
-                return "206";
+            GameTable current = playerTables.get(requester);
+            if (current != null && current.isInProgress()) {
+                return "205"; // game already running
             }
-        } catch (Exception e) {
-            return "206"; // INVALID_MOVE
-        }
 
-        // we broadcast the play with the new building pile top value
-        int newValue = targetPile.getCurrentValue();
-        broadcast("PLAY~" + name + "~" + from + "~" + to + "~" + newValue);
-        ServerView.logMove(name, from, to);
+            String botName = registerBot();
+            ServerView.log("Bot added: " + botName);
 
-        // we check for winner
-        if (player.getStockPile().isEmpty()) {
-            game.endRound(player);
-            broadcast("WINNER~" + name);
-            ServerView.logWinner(name);
-            return null;
+            MatchQueues.Waiting waiting = matchQueues.get(requester);
+            if (waiting == null) {
+                // no table size yet, the bot waits for the requester's GAME
+                pendingBots.computeIfAbsent(requester, k -> new ArrayList<>()).add(botName);
+                table = null;
+            } else {
+                matchQueues.addBot(botName, requester, waiting.playerCount, System.nanoTime());
+                // we check if we can start the game now
+                table = formTableIfReady(waiting.playerCount);
+            }
+        } finally {
+            lock.unlock();
         }
-
-        // we refill hand if empty
-        if (player.getHand().isEmpty()) {
-            player.refillHand(game.getDrawPile());
-            sendPlayerHand(name);
+        if (table != null) {
+            table.start();
         }
-
         return null;
     }
 
-    // we handle END turn (discard to discard pile)
-    public synchronized String handleEndTurn(String name) {
-        if (game == null || game.getState() != GameState.IN_PROGRESS) {
-            return "205";
-        }
-
-        Player player = playerObjects.get(name);
-        if (player == null)
-            return "205";
+    // we register a bot with a null handler (bots don't have network connections)
+    // caller must hold the controller lock
+    private String registerBot() {
+        // we skip names a human already took
+        String botName;
+        do {
+            botCounter++;
+            botName = "Bot" + botCounter;
+        } while (registeredPlayers.containsKey(botName));
+        registeredPlayers.put(botName, null);
+        return botName;
+    }
 
-        if (!game.isPlayerTurn(player)) {
-            return "205";
-        }
+    // ===== GAME REQUEST =====
 
-        if (player.getHand().isEmpty()) {
-            return "206";
+    // we handle a player requesting a game
+    public String requestGame(String name, int playerCount, ClientHandler handler) {
+        // we validate player count
+        if (playerCount < 2 || playerCount > 6) {
+            return "204"; // INVALID_COMMAND
         }
 
-        // we discard the first card to first non-full discard pile
-        Card card = player.getHand().removeAt(0);
-        int discardIndex = 0; // for now, always discard to pile 0
-        player.getDiscardPile(discardIndex).discard(card);
-
-        // broadcast the discard action so clients can update their view
-        broadcast("DISCARD~" + name + "~" + formatCard(card) + "~" + discardIndex);
+        GameTable table;
+        lockRegistry();
+        try {
+            // we check if this player is still playing somewhere
+            GameTable current = playerTables.get(name);
+            if (current != null) {
+                if (current.isInProgress()) {
+                    // a recovered game kept this player's seat
+                    if (!current.claimVacantSeat(name)) {
+                        return "205"; // COMMAND_NOT_ALLOWED
+                    }
+                    handler.setTable(current);
+                    current.rejoin(name, handler);
+                    return null;
+                }
+                // the old game is over, so we let them leave that table
+                playerTables.remove(name);
+                handler.setTable(null);
+                current.removePlayer(name);
+            }
 
-        // we go to next turn
-        game.nextTurn();
+            // we send QUEUE to this player, asking again moves them (and their bots) to the new size
+            long now = System.nanoTime();
+            List<String> bots = new ArrayList<>(matchQueues.removeBots(name));
+            MatchQueues.Waiting waiting = matchQueues.add(name, handler, playerCount, now);
+            handler.send("QUEUE");
+            List<String> pending = pendingBots.remove(name);
+            if (pending != null) {
+                bots.addAll(pending);
+            }
+            for (String bot : bots) {
+                matchQueues.addBot(bot, name, playerCount, now);
+            }
 
-        // we refill new player's hand
-        Player nextPlayer = game.getCurrentPlayer();
-        if (!game.getDrawPile().isEmpty()) {
-            nextPlayer.refillHand(game.getDrawPile());
+            // we check if we have enough players
+            table = formTableIfReady(playerCount);
+            long backfill = botBackfillMs;
+            if (table == null && backfill > 0) {
+                botScheduler.later(() -> backfill(waiting), backfill);
+            }
+        } finally {
+            lock.unlock();
         }
 
-        // we broadcast turn change
-        broadcast("TURN~" + nextPlayer.getName());
-        ServerView.logTurn(nextPlayer.getName());
+        // we deal outside the registry lock so other tables can keep forming
+        if (table != null) {
+            table.start();
+        }
+        return null;
+    }
 
-        // we send updated hand to the new current player
-        sendPlayerHand(nextPlayer.getName());
+    // the backfill timer calls this once a player waited botBackfillMs, if they are
+    // still in the same queue we seat everyone in it and give the empty seats to bots
+    private void backfill(MatchQueues.Waiting waiting) {
+        GameTable table;
+        lockRegistry();
+        try {
+            // they may have got a table, asked for another size or left meanwhile
+            if (matchQueues.get(waiting.name) != waiting) {
+                return;
+            }
+            // the queue isn't full (it would have formed a table), so it holds waiting
+            Map<String, ClientHandler> seats = matchQueues.takeAll(waiting.playerCount);
+            int bots = 0;
+            while (seats.size() < waiting.playerCount) {
+                seats.put(registerBot(), null);
+                bots++;
+            }
+            ServerView.log("Backfilled " + bots + " bot(s) for " + waiting.name);
+            table = openTable(seats);
+        } finally {
+            lock.unlock();
+        }
+        table.start();
+    }
 
-        // trigger bot turn if next player is a bot
-        triggerBotTurnIfNeeded();
+    // we seat the oldest players of a queue at a new table once it is full
+    // caller must hold the controller lock
+    private GameTable formTableIfReady(int playerCount) {
+        Map<String, ClientHandler> seats = matchQueues.takeTable(playerCount);
+        return seats != null ? openTable(seats) : null;
+    }
 
-        return null;
+    // caller must hold the controller lock
+    private GameTable openTable(Map<String, ClientHandler> seats) {
+        // nobody is watching a bot-only table, so its bots don't wait
+        long delay = seats.values().stream().anyMatch(handler -> handler != null) ? botDelayMs : 0;
+        GameTable table = new GameTable(nextTableId.getAndIncrement(), seats, this, tablePool, botScheduler, delay);
+        tables.put(table.getId(), table);
+        for (Map.Entry<String, ClientHandler> entry : seats.entrySet()) {
+            playerTables.put(entry.getKey(), table);
+            if (entry.getValue() != null) {
+                entry.getValue().setTable(table);
+            }
+        }
+        return table;
     }
 
-    // ===== HELPER METHODS =====
+    // we take the registry lock and record how long we waited for it
+    private void lockRegistry() {
+        long started = System.nanoTime();
+        lock.lock();
+        ServerMetrics.recordLockWait(System.nanoTime() - started);
+    }
 
-    // we broadcast a message to all game players (skip bots which have null
-    // handlers)
-    private void broadcast(String message) {
-        for (ClientHandler handler : gamePlayers.values()) {
-            if (handler != null) {
-                handler.send(message);
+    // the table calls this once no humans are left
+    void closeTable(GameTable table) {
+        lockRegistry();
+        try {
+            tables.remove(table.getId());
+            // bots only live as long as their table
+            for (String seated : table.getPlayerNames()) {
+                if (playerTables.remove(seated, table) && registeredPlayers.get(seated) == null) {
+                    registeredPlayers.remove(seated);
+                }
             }
+        } finally {
+            lock.unlock();
         }
+        ServerView.logGame("Table " + table.getId() + " closed");
     }
 
-    // we send a player their hand
-    private void sendPlayerHand(String name) {
-        ClientHandler handler = gamePlayers.get(name);
-        Player player = playerObjects.get(name);
-        if (handler != null && player != null) {
-            handler.send("HAND~" + formatHand(player));
+    // we stop the table pool and the bot timer when the server shuts down
+    public void shutdown() {
+        JournalStore store = journals;
+        if (store != null) {
+            store.shutdown();
+        }
+        GameArchive current = archive;
+        if (current != null) {
+            current.shutdown();
         }
+        botScheduler.shutdown();
+        idleWheel.shutdown();
+        tablePool.shutdown();
+        fanoutPool.shutdown();
     }
 
-    // we send a player their stock info
-    private void sendPlayerStock(String name) {
-        Player player = playerObjects.get(name);
-        if (player != null && !player.getStockPile().isEmpty()) {
-            Card top = player.getStockPile().peekTop();
-            broadcast("STOCK~" + name + "~" + formatCard(top));
-        }
+    // ===== TABLE LOOKUP =====
+
+    // we get the table a player is seated at, or null
+    public GameTable getTable(String name) {
+        return playerTables.get(name);
     }
 
-    // we format a hand as comma-separated cards
-    private String formatHand(Player player) {
-        StringBuilder sb = new StringBuilder();
-        boolean first = true;
-        for (Card card : player.getHand().getCards()) {
-            if (!first)
-                sb.append(",");
-            first = false;
-            sb.append(formatCard(card));
+    // we get how many lines wait to be written to each connected player
+    public Map<String, Integer> getOutboundDepths() {
+        Map<String, Integer> depths = new LinkedHashMap<>();
+        lockRegistry();
+        try {
+            for (Map.Entry<String, ClientHandler> entry : registeredPlayers.entrySet()) {
+                if (entry.getValue() != null) {
+                    depths.put(entry.getKey(), entry.getValue().getOutboundDepth());
+                }
+            }
+        } finally {
+            lock.unlock();
         }
-        return sb.toString();
-    }
-
-    // we format a card as a string with color label
-    private String formatCard(Card card) {
-        if (card == null)
-            return "X";
-        if (card.isSkipBo())
-            return "SB";
-        // show color label so client knows the color
-        String colorLabel = getColorLabel(card.getColor());
-        return card.getNumber() + "-" + colorLabel;
-    }
-
-    // we get a single letter for the color
-    private String getColorLabel(com.group29.skipbo.card.CardColor color) {
-        if (color == com.group29.skipbo.card.CardColor.RED)
-            return "R";
-        if (color == com.group29.skipbo.card.CardColor.GREEN)
-            return "G";
-        if (color == com.group29.skipbo.card.CardColor.BLUE)
-            return "B";
-        if (color == com.group29.skipbo.card.CardColor.YELLOW)
-            return "Y";
-        return "?";
+        return depths;
+    }
+
+    // we get a table by its number, or null
+    public GameTable getTableById(int id) {
+        return tables.get(id);
+    }
+
+    // we get all running tables
+    public Collection<GameTable> getTables() {
+        return tables.values();
     }
 }
@@ -0,0 +1,1039 @@
+package com.group29.skipbo.server;
+
+import com.group29.skipbo.card.BuildingPile;
+import com.group29.skipbo.card.Card;
+import com.group29.skipbo.game.Game;
+import com.group29.skipbo.game.GameState;
+import com.group29.skipbo.player.ComputerPlayer;
+import com.group29.skipbo.player.HumanPlayer;
+import com.group29.skipbo.player.Player;
+import com.group29.skipbo.replay.GameRecord;
+import com.group29.skipbo.replay.MoveRecord;
+import protocol.common.Feature;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+// we use this for one table (room) on the server
+// every table owns its own game, seats and mailbox, all commands for the
+// table run one after another on its mailbox so the game state needs no lock
+// and callers never wait for game logic
+public class GameTable {
+
+    private static final int DISCARD_PILES = 4;
+    // a game of two takes a few hundred moves
+    private static final int INITIAL_MOVES = 512;
+
+    private final int id;
+    private final GameController controller;
+    private final BotScheduler botScheduler;
+    private final TableMailbox mailbox;
+    // pause before each bot turn so humans can follow, 0 plays bots back to back
+    private volatile long botDelayMs;
+    // written on the mailbox, read by the controller without a lock
+    private volatile boolean finished;
+
+    // we track the actual game of this table
+    private final Game game;
+    private final Map<String, ClientHandler> gamePlayers;
+    private final Map<String, Player> playerObjects;
+    private final List<String> botNames;
+    private final List<String> playerNames;
+    // clients that got lines during the current mailbox task (mailbox only)
+    private final List<ClientHandler> pendingFlush;
+    // whoever watches this table, null until the first WATCH (mailbox only)
+    private Spectators spectators;
+    // the lines broadcast during the current mailbox task, for the spectators
+    private final List<EncodedLine> watchedLines;
+
+    // state version of the game, it goes up with every change (mailbox only)
+    // slots 0-3 are the building piles, then 4 discard piles per seat in seat order,
+    // each slot and each hand remembers the version it last changed in
+    private int stateVersion;
+    private int tableChangedAt;
+    private final int[] slotVersions;
+    private final int[] handVersions;
+    // the rendered TABLE and HAND answers, kept until a player's move changes them
+    private final TableViews views;
+    // every applied move goes here before anyone hears of it, null if we keep no journal
+    private MoveJournal journal;
+    // the same moves in memory for the replay archive, null if we archive nothing
+    private short[] moves;
+    private int moveCount;
+    private long startedAt;
+    private boolean[] dealtBots;
+    // human seats whose player is gone for now: seats of a recovered game and seats
+    // of players whose connection dropped, until they come back or a bot takes over
+    private final Map<String, Vacancy> vacantSeats;
+    // the recent game events, for players who RESUME (mailbox only)
+    private final EventLog events;
+
+    // a seat waiting for its player; a recovered seat (no token) is claimed with GAME,
+    // a dropped one only with RESUME and its session token
+    private static final class Vacancy {
+        final String token;
+        final int features;
+
+        Vacancy(String token, int features) {
+            this.token = token;
+            this.features = features;
+        }
+    }
+
+    // seats are given in join order, a null handler means the seat is a bot
+    public GameTable(int id, Map<String, ClientHandler> seats, GameController controller,
+            Executor tablePool, BotScheduler botScheduler, long botDelayMs) {
+        this.id = id;
+        this.controller = controller;
+        this.botScheduler = botScheduler;
+        this.botDelayMs = botDelayMs;
+        this.mailbox = new TableMailbox(tablePool);
+        this.finished = false;
+        this.game = new Game();
+        this.gamePlayers = new LinkedHashMap<>();
+        this.playerObjects = new HashMap<>();
+        this.botNames = new ArrayList<>();
+        this.playerNames = new ArrayList<>();
+        this.pendingFlush = new ArrayList<>();
+        this.watchedLines = new ArrayList<>();
+        this.vacantSeats = new ConcurrentHashMap<>();
+        this.events = new EventLog();
+
+        for (Map.Entry<String, ClientHandler> entry : seats.entrySet()) {
+            String name = entry.getKey();
+            ClientHandler handler = entry.getValue();
+
+            // we create the right player type based on whether it's a bot
+            Player player = handler == null ? ComputerPlayer.create(name) : HumanPlayer.create(name);
+            game.addPlayer(player);
+            seat(player, handler, handler == null);
+        }
+        // version 0 means a client has nothing yet, so it always gets the full table first
+        this.stateVersion = 1;
+        this.tableChangedAt = 1;
+        this.slotVersions = new int[Game.NUM_BUILDING_PILES + DISCARD_PILES * playerNames.size()];
+        this.handVersions = new int[playerNames.size()];
+        this.views = new TableViews(game, playerNames.size());
+    }
+
+    // a game rebuilt from its journal, already dealt and played up to the last record;
+    // its humans are not connected, their seats wait in vacantSeats
+    GameTable(MoveJournal.Recovered recovered, MoveJournal journal, GameController controller,
+            Executor tablePool, BotScheduler botScheduler, long botDelayMs) {
+        this.id = recovered.tableId;
+        this.controller = controller;
+        this.botScheduler = botScheduler;
+        this.botDelayMs = botDelayMs;
+        this.mailbox = new TableMailbox(tablePool);
+        this.finished = false;
+        this.game = recovered.game;
+        this.gamePlayers = new LinkedHashMap<>();
+        this.playerObjects = new HashMap<>();
+        this.botNames = new ArrayList<>();
+        this.playerNames = new ArrayList<>();
+        this.pendingFlush = new ArrayList<>();
+        this.watchedLines = new ArrayList<>();
+        this.vacantSeats = new ConcurrentHashMap<>();
+        this.events = new EventLog();
+        this.journal = journal;
+        this.startedAt = recovered.startedAt;
+        this.dealtBots = recovered.dealtBots;
+        if (controller.isArchiving()) {
+            this.moves = Arrays.copyOf(recovered.moves, Math.max(INITIAL_MOVES, recovered.moves.length * 2));
+            this.moveCount = recovered.moves.length;
+        }
+
+        for (Player player : game.getPlayers()) {
+            boolean bot = recovered.bots.contains(player.getName());
+            seat(player, null, bot);
+            if (!bot) {
+                vacantSeats.put(player.getName(), new Vacancy(null, 0));
+            }
+        }
+        this.stateVersion = 1;
+        this.tableChangedAt = 1;
+        this.slotVersions = new int[Game.NUM_BUILDING_PILES + DISCARD_PILES * playerNames.size()];
+        this.handVersions = new int[playerNames.size()];
+        this.views = new TableViews(game, playerNames.size());
+    }
+
+    private void seat(Player player, ClientHandler handler, boolean bot) {
+        String name = player.getName();
+        if (bot) {
+            botNames.add(name);
+        }
+        player.setChangeListener(changes);
+        playerObjects.put(name, player);
+        gamePlayers.put(name, handler);
+        playerNames.add(name);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    // we get the names of everyone seated at this table (bots included)
+    public List<String> getPlayerNames() {
+        return playerNames;
+    }
+
+    // we change the bot pacing of this table (0 for bot-only and benchmark games)
+    public void setBotDelay(long botDelayMs) {
+        this.botDelayMs = Math.max(0, botDelayMs);
+    }
+
+    public long getBotDelay() {
+        return botDelayMs;
+    }
+
+    // we check if the table is still playing (true from seating until someone wins)
+    public boolean isInProgress() {
+        return !finished;
+    }
+
+    // ===== COMMANDS (queued on the mailbox, replies are sent to the handler) =====
+
+    // we deal the cards and tell everyone at the table the game started
+    public void start() {
+        submit(this::deal);
+    }
+
+    // HAND - send the player their hand
+    // with a version (-1 for none) we answer NOTMODIFIED if the hand didn't change since
+    public void requestHand(ClientHandler handler, int version) {
+        submitCommand(ClientCommand.Type.HAND, handler, () -> {
+            String name = handler.getPlayerName();
+            Player player = playerObjects.get(name);
+            if (game.getState() != GameState.IN_PROGRESS || player == null) {
+                deliverError(handler, "205"); // game not started
+                return;
+            }
+            int seat = playerNames.indexOf(name);
+            if (version < 0) {
+                deliver(handler, views.handLine(seat, handler.isBinary()));
+            } else if (isCurrent(version, handVersions[seat])) {
+                deliver(handler, "NOTMODIFIED~HAND~" + stateVersion);
+            } else {
+                deliver(handler, "HAND~" + views.hand(seat) + "~" + stateVersion);
+            }
+        });
+    }
+
+    // TABLE - send the player the table layout
+    // with a version (-1 for none) we answer NOTMODIFIED if the table didn't change since,
+    // clients with TABLE_DELTA only get the slots that changed since their last TABLE
+    public void requestTable(ClientHandler handler, int version) {
+        submitCommand(ClientCommand.Type.TABLE, handler, () -> {
+            boolean delta = handler.supports(Feature.TABLE_DELTA);
+            int known = version >= 0 || !delta ? version : handler.getTableVersion();
+            if (game.getState() != GameState.IN_PROGRESS) {
+                deliverError(handler, "205");
+            } else if (known >= 0 && isCurrent(known, tableChangedAt)) {
+                handler.setTableVersion(stateVersion);
+                deliver(handler, "NOTMODIFIED~TABLE~" + stateVersion);
+            } else if (delta) {
+                deliver(handler, formatTableUpdate(handler, known));
+            } else if (version >= 0) {
+                deliver(handler, "TABLE~" + views.table() + "~" + stateVersion);
+            } else {
+                deliver(handler, views.tableLine(handler.isBinary()));
+            }
+        });
+    }
+
+    // PLAY~from~to - the player makes a move
+    public void play(ClientHandler handler, ClientCommand.Source source, int sourceIndex, int buildingIndex) {
+        submitCommand(ClientCommand.Type.PLAY, handler, () -> {
+            String result = applyPlay(handler.getPlayerName(), source, sourceIndex, buildingIndex);
+            if (result != null) {
+                deliverError(handler, result);
+            }
+        });
+    }
+
+    // END - the player ends their turn
+    public void endTurn(ClientHandler handler) {
+        submitCommand(ClientCommand.Type.END, handler, () -> {
+            String result = applyEndTurn(handler.getPlayerName());
+            if (result != null) {
+                deliverError(handler, result);
+            }
+        });
+    }
+
+    // we remove a player who left, the controller closes the table once no humans are left
+    public void removePlayer(String name) {
+        submit(() -> {
+            if (!botNames.contains(name)) {
+                gamePlayers.remove(name);
+                playerObjects.remove(name);
+            }
+            // players that can RESUME keep their seat instead (see vacate)
+
+            if (!hasHumans() && vacantSeats.isEmpty()) {
+                close();
+            }
+        });
+    }
+
+    private boolean hasHumans() {
+        for (ClientHandler handler : gamePlayers.values()) {
+            if (handler != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void close() {
+        finished = true;
+        finishJournal();
+        controller.closeTable(this);
+    }
+
+    // a bot plays the rest of the game for a player we had to drop
+    public void handOverToBot(String name) {
+        submit(() -> {
+            if (finished || !playerObjects.containsKey(name) || botNames.contains(name)) {
+                return;
+            }
+            takeOver(name);
+            triggerBotTurnIfNeeded();
+        });
+    }
+
+    private void takeOver(String name) {
+        botNames.add(name);
+        gamePlayers.put(name, null);
+        record(MoveRecord.bot(playerNames.indexOf(name)));
+        ServerView.logGame("Bot took over " + name + " at table " + id);
+    }
+
+    // ===== SPECTATORS =====
+
+    // WATCH - a spectator follows the game from now on, it gets the table as it is
+    // now and then every broadcast, but never anyone's HAND
+    void watch(ClientHandler handler) {
+        submitCommand(ClientCommand.Type.WATCH, handler, () -> {
+            if (finished || game.getState() != GameState.IN_PROGRESS) {
+                handler.stopWatching(this);
+                deliverError(handler, "205");
+                return;
+            }
+            List<String> snapshot = new ArrayList<>();
+            snapshot.add("WATCHING~" + id + "~" + String.join(",", playerNames));
+            snapshot.add(handler.supports(Feature.TABLE_DELTA) ? formatTableUpdate(handler, 0)
+                    : "TABLE~" + views.table());
+            for (Player player : game.getPlayers()) {
+                if (!player.getStockPile().isEmpty()) {
+                    snapshot.add("STOCK~" + player.getName() + "~"
+                            + TableViews.formatCard(player.getStockPile().peekTop()));
+                }
+            }
+            snapshot.add("TURN~" + game.getCurrentPlayer().getName());
+            if (spectators == null) {
+                spectators = controller.newSpectators();
+            }
+            // the spectators' mailbox sends it, so it comes before any event after it
+            spectators.add(handler, snapshot);
+        });
+    }
+
+    // the spectator watches another table, joined a game or left
+    void unwatch(ClientHandler handler) {
+        submit(() -> {
+            if (spectators != null) {
+                spectators.remove(handler);
+            }
+        });
+    }
+
+    // ===== VACANT SEATS =====
+
+    // true if name sat here and hasn't come back yet
+    boolean isVacant(String name) {
+        return vacantSeats.containsKey(name);
+    }
+
+    // the controller gives a recovered seat to the first connection of that name
+    // that asks for a game
+    boolean claimVacantSeat(String name) {
+        Vacancy vacancy = vacantSeats.get(name);
+        return vacancy != null && vacancy.token == null && vacantSeats.remove(name, vacancy);
+    }
+
+    // RESUME gets a dropped seat back with its session token, we return the features
+    // the dropped connection agreed on or -1 if there is no such seat
+    int claimDroppedSeat(String name, String token) {
+        Vacancy vacancy = vacantSeats.get(name);
+        if (vacancy == null || vacancy.token == null || !MessageDigest.isEqual(
+                vacancy.token.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8))) {
+            return -1;
+        }
+        return vacantSeats.remove(name, vacancy) ? vacancy.features : -1;
+    }
+
+    // the connection of a player that agreed on Feature.RESUME dropped, the seat
+    // waits waitMs for RESUME~name~token~seq before a bot takes it
+    void vacate(String name, String token, int features, long waitMs) {
+        Vacancy vacancy = new Vacancy(token, features);
+        vacantSeats.put(name, vacancy);
+        submit(() -> {
+            if (!playerObjects.containsKey(name) || botNames.contains(name)) {
+                // a bot has the seat already (a slow consumer's)
+                vacantSeats.remove(name, vacancy);
+                return;
+            }
+            gamePlayers.put(name, null);
+            ServerView.logGame(name + " dropped from table " + id + ", the seat waits " + waitMs + " ms");
+        });
+        botScheduler.later(() -> submit(() -> {
+            if (vacantSeats.remove(name, vacancy)) {
+                release(name);
+                triggerBotTurnIfNeeded();
+            }
+        }), waitMs);
+    }
+
+    // RESUME - the player is back on a new connection, they get the events they
+    // missed since lastSeq, or the game again if the log no longer has all of them
+    void resumeSeat(String name, ClientHandler handler, int lastSeq) {
+        submitCommand(ClientCommand.Type.RESUME, handler, () -> {
+            if (!playerObjects.containsKey(name)) {
+                deliverError(handler, "205");
+                return;
+            }
+            gamePlayers.put(name, handler);
+            List<EncodedLine> missed = events.since(lastSeq, playerNames.indexOf(name));
+            deliver(handler, "RESUMED~" + id + "~" + events.last());
+            if (missed != null) {
+                for (EncodedLine line : missed) {
+                    deliver(handler, line.encodedFor(handler));
+                }
+            } else {
+                sendSnapshot(name, handler);
+            }
+            ServerView.logGame(name + " resumed at table " + id + (missed != null
+                    ? " (" + missed.size() + " events missed)" : " (sent the whole game)"));
+        });
+    }
+
+    // a seat's wait is over: the table closes once nobody is left to come back,
+    // otherwise a bot plays the seat
+    private void release(String name) {
+        controller.releaseSeat(name, this);
+        if (!hasHumans() && vacantSeats.isEmpty()) {
+            ServerView.logGame("Nobody came back to table " + id);
+            close();
+        } else if (!finished) {
+            takeOver(name);
+        }
+    }
+
+    // ===== RECOVERED GAMES =====
+
+    // a recovered game goes on where the journal ended, bots first if it's their turn
+    void resume() {
+        submit(this::triggerBotTurnIfNeeded);
+    }
+
+    // a player is back at their recovered seat, they get the game as if it had just started
+    void rejoin(String name, ClientHandler handler) {
+        submit(() -> {
+            if (finished || !playerObjects.containsKey(name)) {
+                deliverError(handler, "205");
+                return;
+            }
+            gamePlayers.put(name, handler);
+            ServerView.logGame(name + " is back at table " + id);
+            sendSnapshot(name, handler);
+        });
+    }
+
+    // we send a player the game as if it had just started (or who won it)
+    private void sendSnapshot(String name, ClientHandler handler) {
+        if (finished) {
+            if (game.getWinner() != null) {
+                deliver(handler, "WINNER~" + game.getWinner().getName());
+            }
+            return;
+        }
+        deliver(handler, "START~" + String.join(",", playerNames));
+        sendPlayerHand(name);
+        for (String seated : playerNames) {
+            Player player = playerObjects.get(seated);
+            if (player != null && !player.getStockPile().isEmpty()) {
+                deliver(handler, "STOCK~" + seated + "~" + TableViews.formatCard(player.getStockPile().peekTop()));
+            }
+        }
+        deliver(handler, "TURN~" + game.getCurrentPlayer().getName());
+    }
+
+    // the wait for recovered players is over, bots take the seats nobody claimed,
+    // a game nobody came back to is closed
+    void releaseVacantSeats() {
+        submit(() -> {
+            if (finished) {
+                return;
+            }
+            for (String name : playerNames) {
+                Vacancy vacancy = vacantSeats.get(name);
+                if (vacancy != null && vacancy.token == null && vacantSeats.remove(name, vacancy)) {
+                    release(name);
+                }
+            }
+            triggerBotTurnIfNeeded();
+        });
+    }
+
+    // ===== GAME START =====
+
+    private void deal() {
+        game.startGame();
+        startedAt = System.currentTimeMillis();
+        dealtBots = new boolean[playerNames.size()];
+        for (int seat = 0; seat < dealtBots.length; seat++) {
+            dealtBots[seat] = botNames.contains(playerNames.get(seat));
+        }
+        journal = controller.createJournal(id, game.getSeed(), startedAt, playerNames, botNames);
+        moves = controller.isArchiving() ? new short[INITIAL_MOVES] : null;
+        ServerMetrics.recordGameStarted();
+        ServerView.logGameStarted(id, playerNames.size());
+
+        // we send START to all players
+        String playerList = String.join(",", playerNames);
+        broadcast("START~" + playerList);
+
+        // we send initial state to each player
+        for (String name : playerNames) {
+            sendPlayerHand(name);
+            sendPlayerStock(name);
+        }
+
+        // we send TURN to indicate whose turn
+        String currentPlayer = game.getCurrentPlayer().getName();
+        broadcast("TURN~" + currentPlayer);
+        ServerView.logTurn(currentPlayer);
+
+        // if current player is a bot, trigger auto-play
+        triggerBotTurnIfNeeded();
+    }
+
+    // we check if current player is a bot and play their turn
+    private void triggerBotTurnIfNeeded() {
+        if (finished || game.getState() != GameState.IN_PROGRESS)
+            return;
+
+        String currentName = game.getCurrentPlayer().getName();
+        if (botNames.contains(currentName)) {
+            // the pause runs on the shared timer, the table keeps serving commands meanwhile
+            botScheduler.schedule(this::submit, () -> timeBotTurn(currentName), botDelayMs);
+        }
+    }
+
+    private void timeBotTurn(String botName) {
+        long started = System.nanoTime();
+        try {
+            applyBotTurn(botName);
+        } finally {
+            ServerMetrics.recordBotTurn(System.nanoTime() - started);
+        }
+    }
+
+    // we play a bot's turn automatically, runs on the mailbox
+    private void applyBotTurn(String botName) {
+        if (finished || game.getState() != GameState.IN_PROGRESS)
+            return;
+        if (!game.getCurrentPlayer().getName().equals(botName))
+            return;
+
+        // a seat a bot took over is still a HumanPlayer, the bot only needs the Player moves
+        Player bot = playerObjects.get(botName);
+        if (bot == null)
+            return;
+
+        // Bot plays cards until it can't
+        // We need to track plays manually to broadcast them
+        boolean keepPlaying = true;
+        while (keepPlaying) {
+            keepPlaying = false;
+            boolean stockPlayed = false;
+
+            // Try to play from stock first
+            for (int i = 0; i < game.getBuildingPiles().length; i++) {
+                BuildingPile pile = game.getBuildingPile(i);
+                if (!bot.getStockPile().isEmpty() && pile.canPlay(bot.getStockPile().peekTop())) {
+                    bot.playFromStock(pile);
+                    recordPlay(botName, ClientCommand.Source.STOCK, 0, i);
+
+                    // Broadcast the play
+                    int newValue = pile.getCurrentValue();
+                    broadcast("PLAY~" + botName + "~S~B." + i + "~" + newValue);
+                    ServerView.logMove(botName, "S", "B." + i);
+
+                    keepPlaying = true;
+                    stockPlayed = true;
+                    break;
+                }
+            }
+
+            // If didn't play from stock, try hand
+            if (!keepPlaying) {
+                for (int h = 0; h < bot.getHand().size(); h++) {
+                    Card card = bot.getHand().get(h);
+                    for (int i = 0; i < game.getBuildingPiles().length; i++) {
+                        BuildingPile pile = game.getBuildingPile(i);
+                        if (pile.canPlay(card)) {
+                            bot.playFromHand(h, pile);
+                            recordPlay(botName, ClientCommand.Source.HAND, h, i);
+
+                            // Broadcast the play
+                            int newValue = pile.getCurrentValue();
+                            broadcast("PLAY~" + botName + "~H." + h + "~B." + i + "~" + newValue);
+                            ServerView.logMove(botName, "H." + h, "B." + i);
+
+                            keepPlaying = true;
+                            break;
+                        }
+                    }
+                    if (keepPlaying) break;
+                }
+            }
+
+            // If didn't play from hand, try discard piles
+            if (!keepPlaying) {
+                for (int d = 0; d < bot.getDiscardPiles().size(); d++) {
+                    if (bot.getDiscardPile(d).isEmpty()) continue;
+                    Card card = bot.getDiscardPile(d).getTopCard();
+                    for (int i = 0; i < game.getBuildingPiles().length; i++) {
+                        BuildingPile pile = game.getBuildingPile(i);
+                        if (pile.canPlay(card)) {
+                            bot.playFromDiscard(d, pile);
+                            recordPlay(botName, ClientCommand.Source.DISCARD, d, i);
+
+                            // Broadcast the play
+                            int newValue = pile.getCurrentValue();
+                            broadcast("PLAY~" + botName + "~D." + d + "~B." + i + "~" + newValue);
+                            ServerView.logMove(botName, "D." + d, "B." + i);
+
+                            keepPlaying = true;
+                            break;
+                        }
+                    }
+                    if (keepPlaying) break;
+                }
+            }
+
+            // Check for winner after each play
+            if (keepPlaying && bot.getStockPile().isEmpty()) {
+                game.endRound(bot);
+                finished = true;
+                archiveGame(botName);
+                broadcast("WINNER~" + botName);
+                ServerMetrics.recordGameFinished();
+                ServerView.logWinner(botName);
+                return;
+            }
+            if (stockPlayed) {
+                sendPlayerStock(botName);
+            }
+
+            // Refill hand if empty
+            if (keepPlaying && bot.getHand().isEmpty() && !game.getDrawPile().isEmpty()) {
+                bot.refillHand(game.getDrawPile());
+            }
+        }
+
+        // Bot must discard to end turn
+        if (!bot.getHand().isEmpty()) {
+            int handIndex = (int) (Math.random() * bot.getHand().size());
+            int discardIndex = (int) (Math.random() * 4);
+
+            Card card = bot.getHand().get(handIndex);
+            bot.discardFromHand(handIndex, discardIndex);
+            record(MoveRecord.discard(playerNames.indexOf(botName), handIndex, discardIndex));
+
+            // Broadcast the discard
+            broadcast("DISCARD~" + botName + "~" + TableViews.formatCard(card) + "~" + discardIndex);
+        }
+
+        // Move to next player
+        game.nextTurn();
+
+        Player nextPlayer = game.getCurrentPlayer();
+        record(MoveRecord.turn(playerNames.indexOf(nextPlayer.getName())));
+        if (!game.getDrawPile().isEmpty()) {
+            nextPlayer.refillHand(game.getDrawPile());
+        }
+
+        String nextPlayerName = nextPlayer.getName();
+        broadcast("TURN~" + nextPlayerName);
+        ServerView.logTurn(nextPlayerName);
+
+        sendPlayerHand(nextPlayerName);
+
+        triggerBotTurnIfNeeded();
+    }
+
+    // ===== GAME QUERIES =====
+
+    // we get the table for a TABLE_DELTA client, in full the first time (or after a
+    // gap) and otherwise only the slots that changed since the version it has
+    private String formatTableUpdate(ClientHandler handler, int base) {
+        handler.setTableVersion(stateVersion);
+        if (base <= 0 || base > stateVersion) {
+            return "TABLE~" + views.table() + "~" + stateVersion;
+        }
+
+        StringBuilder delta = new StringBuilder("TABLEDELTA~");
+        delta.append(base).append("~").append(stateVersion).append("~");
+        boolean first = true;
+        for (int slot = 0; slot < slotVersions.length; slot++) {
+            if (slotVersions[slot] <= base) {
+                continue;
+            }
+            if (!first)
+                delta.append(",");
+            first = false;
+
+            // B.pile.card or D.seat.pile.card
+            if (slot < Game.NUM_BUILDING_PILES) {
+                delta.append("B.").append(slot).append(".");
+                delta.append(TableViews.formatCard(game.getBuildingPile(slot).getTopCard()));
+            } else {
+                int seat = (slot - Game.NUM_BUILDING_PILES) / DISCARD_PILES;
+                int pile = (slot - Game.NUM_BUILDING_PILES) % DISCARD_PILES;
+                Player player = game.getPlayers().get(seat);
+                delta.append("D.").append(seat).append(".").append(pile).append(".");
+                delta.append(TableViews.formatCard(player.getDiscardPile(pile).getTopCard()));
+            }
+        }
+        return delta.toString();
+    }
+
+    // true if a client at this version already has what last changed at changedAt
+    // (0 means the client has nothing, a version from the future is a client bug)
+    private boolean isCurrent(int version, int changedAt) {
+        return version > 0 && version >= changedAt && version <= stateVersion;
+    }
+
+    // the players tell us about every change a move makes (on the mailbox),
+    // we bump the versions and drop the views that show it
+    private final Player.ChangeListener changes = new Player.ChangeListener() {
+        @Override
+        public void handChanged(Player player) {
+            int seat = playerNames.indexOf(player.getName());
+            handVersions[seat] = ++stateVersion;
+            views.handChanged(seat);
+        }
+
+        @Override
+        public void discardChanged(Player player, int pile) {
+            int seat = playerNames.indexOf(player.getName());
+            slotVersions[Game.NUM_BUILDING_PILES + seat * DISCARD_PILES + pile] = ++stateVersion;
+            tableChanged();
+        }
+
+        @Override
+        public void buildingChanged(BuildingPile pile) {
+            BuildingPile[] piles = game.getBuildingPiles();
+            for (int i = 0; i < piles.length; i++) {
+                if (piles[i] == pile) {
+                    slotVersions[i] = ++stateVersion;
+                }
+            }
+            tableChanged();
+        }
+    };
+
+    private void tableChanged() {
+        tableChangedAt = stateVersion;
+        views.tableChanged();
+    }
+
+    // ===== GAME ACTIONS =====
+
+    // we handle a PLAY command, returns error code or null if success
+    // the positions were already parsed by ClientCommand
+    private String applyPlay(String name, ClientCommand.Source source, int sourceIndex, int buildingIndex) {
+        if (game.getState() != GameState.IN_PROGRESS) {
+            return "205"; // COMMAND_NOT_ALLOWED
+        }
+
+        Player player = playerObjects.get(name);
+        if (player == null)
+            return "205";
+
+        // we check if it's their turn
+        if (!game.isPlayerTurn(player)) {
+            return "205"; // NOT_YOUR_TURN
+        }
+
+        // the destination must be one of the building piles
+        if (buildingIndex >= Game.NUM_BUILDING_PILES) {
+            return "206"; // INVALID_MOVE
+        }
+        BuildingPile targetPile = game.getBuildingPile(buildingIndex);
+
+        // we make the move, the player rejects moves the rules don't allow
+        try {
+            switch (source) {
+                case STOCK:
+                    player.playFromStock(targetPile);
+                    break;
+                case HAND:
+                    player.playFromHand(sourceIndex, targetPile);
+                    break;
+                case DISCARD:
+                    player.playFromDiscard(sourceIndex, targetPile);
+                    break;
+            }
+        } catch (RuntimeException e) {
+            return "206"; // INVALID_MOVE
+        }
+        recordPlay(name, source, sourceIndex, buildingIndex);
+
+        String from = ClientCommand.formatSource(source, sourceIndex);
+        String to = ClientCommand.formatBuilding(buildingIndex);
+
+        // we broadcast the play with the new building pile top value
+        int newValue = targetPile.getCurrentValue();
+        broadcast("PLAY~" + name + "~" + from + "~" + to + "~" + newValue);
+        ServerView.logMove(name, from, to);
+
+        // we check for winner
+        if (player.getStockPile().isEmpty()) {
+            game.endRound(player);
+            finished = true;
+            archiveGame(name);
+            broadcast("WINNER~" + name);
+            ServerMetrics.recordGameFinished();
+            ServerView.logWinner(name);
+            return null;
+        }
+
+        // everyone sees the new top of the stock
+        if (source == ClientCommand.Source.STOCK) {
+            sendPlayerStock(name);
+        }
+
+        // we refill hand if empty
+        if (player.getHand().isEmpty() && !game.getDrawPile().isEmpty()) {
+            player.refillHand(game.getDrawPile());
+            sendPlayerHand(name);
+        }
+
+        return null;
+    }
+
+    // we handle END turn (discard to discard pile)
+    private String applyEndTurn(String name) {
+        if (game.getState() != GameState.IN_PROGRESS) {
+            return "205";
+        }
+
+        Player player = playerObjects.get(name);
+        if (player == null)
+            return "205";
+
+        if (!game.isPlayerTurn(player)) {
+            return "205";
+        }
+
+        if (player.getHand().isEmpty()) {
+            return "206";
+        }
+
+        // we discard the first card to first non-full discard pile
+        Card card = player.getHand().get(0);
+        int discardIndex = 0; // for now, always discard to pile 0
+        player.discardFromHand(0, discardIndex);
+        record(MoveRecord.discard(playerNames.indexOf(name), 0, discardIndex));
+
+        // broadcast the discard action so clients can update their view
+        broadcast("DISCARD~" + name + "~" + TableViews.formatCard(card) + "~" + discardIndex);
+
+        // we go to next turn
+        game.nextTurn();
+
+        // we refill new player's hand
+        Player nextPlayer = game.getCurrentPlayer();
+        record(MoveRecord.turn(playerNames.indexOf(nextPlayer.getName())));
+        if (!game.getDrawPile().isEmpty()) {
+            nextPlayer.refillHand(game.getDrawPile());
+        }
+
+        // we broadcast turn change
+        broadcast("TURN~" + nextPlayer.getName());
+        ServerView.logTurn(nextPlayer.getName());
+
+        // we send updated hand to the new current player
+        sendPlayerHand(nextPlayer.getName());
+
+        // trigger bot turn if next player is a bot
+        triggerBotTurnIfNeeded();
+
+        return null;
+    }
+
+    // ===== HELPER METHODS =====
+
+    // we record a move the moment it is applied, before anyone hears of it
+    private void record(short move) {
+        if (journal != null) {
+            journal.append(move);
+        }
+        if (moves != null) {
+            if (moveCount == moves.length) {
+                moves = Arrays.copyOf(moves, moveCount * 2);
+            }
+            moves[moveCount++] = move;
+        }
+    }
+
+    // MoveRecord numbers the sources like ClientCommand.Source
+    private void recordPlay(String name, ClientCommand.Source source, int sourceIndex, int buildingIndex) {
+        record(MoveRecord.play(playerNames.indexOf(name), source.ordinal(), sourceIndex, buildingIndex));
+    }
+
+    // someone won, the game goes to the archive and its journal is no longer needed
+    private void archiveGame(String winner) {
+        if (moves != null) {
+            controller.archiveGame(new GameRecord(id, game.getSeed(), startedAt, System.currentTimeMillis(),
+                    playerNames, dealtBots, Arrays.copyOf(moves, moveCount), playerNames.indexOf(winner)));
+            moves = null;
+        }
+        finishJournal();
+    }
+
+    // the game ended one way or another, nothing left to recover
+    private void finishJournal() {
+        if (journal != null) {
+            controller.finishJournal(journal);
+            journal = null;
+        }
+    }
+
+    // we broadcast a message to all players at this table (skip bots which have
+    // null handlers)
+    // the line is encoded once per encoding and every receiver gets a read-only
+    // view of the same bytes
+    // the spectators get the same bytes once the current task is done (see submit)
+    private void broadcast(String message) {
+        long started = System.nanoTime();
+        EncodedLine line = events.append(message, -1);
+        for (ClientHandler handler : gamePlayers.values()) {
+            if (handler == null) {
+                continue;
+            }
+            handler.queue(line.encodedFor(handler));
+            markPending(handler);
+        }
+        if (spectators != null) {
+            watchedLines.add(line);
+        }
+        ServerMetrics.recordBroadcast(System.nanoTime() - started);
+    }
+
+    // we queue ERROR~code for one client
+    private void deliverError(ClientHandler handler, String code) {
+        ServerMetrics.recordError(code);
+        deliver(handler, "ERROR~" + code);
+    }
+
+    // we queue a line for one client, it is written when the current task ends
+    private void deliver(ClientHandler handler, String message) {
+        handler.queue(message);
+        markPending(handler);
+    }
+
+    // the same for a line that is already encoded for this client
+    private void deliver(ClientHandler handler, ByteBuffer line) {
+        handler.queue(line);
+        markPending(handler);
+    }
+
+    private void markPending(ClientHandler handler) {
+        if (!pendingFlush.contains(handler)) {
+            pendingFlush.add(handler);
+        }
+    }
+
+    // we run a task on the mailbox and then flush every client it wrote to,
+    // so all lines of one game event reach a client in one write
+    private void submit(Runnable task) {
+        mailbox.execute(() -> {
+            try {
+                task.run();
+            } finally {
+                for (ClientHandler handler : pendingFlush) {
+                    handler.flush();
+                }
+                pendingFlush.clear();
+                handOverToSpectators();
+            }
+        });
+    }
+
+    // the players have the task's lines, the spectators' own mailbox sends them the
+    // same ones; once the game is over the spectators are let go
+    private void handOverToSpectators() {
+        if (spectators == null) {
+            return;
+        }
+        if (!watchedLines.isEmpty()) {
+            spectators.publish(List.copyOf(watchedLines));
+            watchedLines.clear();
+        }
+        if (finished) {
+            spectators.close(this);
+            spectators = null;
+        }
+    }
+
+    // the same for a command a client sent, we time it from when the client's line
+    // was read until the table has answered
+    private void submitCommand(ClientCommand.Type type, ClientHandler handler, Runnable task) {
+        long received = handler.getLastActivity();
+        submit(() -> {
+            try {
+                task.run();
+            } finally {
+                ServerMetrics.recordLatency(type, System.nanoTime() - received);
+            }
+        });
+    }
+
+    // we send a player their hand, a seat waiting for its player gets it on RESUME
+    private void sendPlayerHand(String name) {
+        ClientHandler handler = gamePlayers.get(name);
+        Player player = playerObjects.get(name);
+        if (player == null || botNames.contains(name)) {
+            return;
+        }
+        int seat = playerNames.indexOf(name);
+        EncodedLine line = events.append(views.handMessage(seat), seat);
+        if (handler != null) {
+            deliver(handler, handler.supports(Feature.RESUME) ? line.encodedFor(handler)
+                    : views.handLine(seat, handler.isBinary()));
+        }
+    }
+
+    // we send a player their stock info
+    private void sendPlayerStock(String name) {
+        Player player = playerObjects.get(name);
+        if (player != null && !player.getStockPile().isEmpty()) {
+            Card top = player.getStockPile().peekTop();
+            broadcast("STOCK~" + name + "~" + TableViews.formatCard(top));
+        }
+    }
+}
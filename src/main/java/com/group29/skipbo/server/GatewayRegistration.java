@@ -0,0 +1,81 @@
+package com.group29.skipbo.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+// we use this to offer this server to a gateway (see com.group29.skipbo.gateway.Gateway)
+// we send REGISTER~port~secret to the gateway's backend port and keep the connection
+// open, the open connection is the registration: when it drops the gateway stops
+// sending new games here, and we connect again until the server stops
+final class GatewayRegistration implements Runnable {
+
+    private static final long RETRY_MS = 2000;
+
+    private final String gatewayHost;
+    private final int gatewayPort;
+    private final int serverPort;
+    // empty when the gateway takes loopback backends without one
+    private final String secret;
+    private volatile boolean running;
+    private volatile Socket socket;
+
+    GatewayRegistration(String gatewayHost, int gatewayPort, int serverPort, String secret) {
+        this.gatewayHost = gatewayHost;
+        this.gatewayPort = gatewayPort;
+        this.serverPort = serverPort;
+        this.secret = secret == null ? "" : secret;
+        this.running = true;
+    }
+
+    void start() {
+        Thread.ofVirtual().name("gateway-registration").start(this);
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try (Socket connection = new Socket(gatewayHost, gatewayPort)) {
+                socket = connection;
+                OutputStream out = connection.getOutputStream();
+                out.write(("REGISTER~" + serverPort + "~" + secret + "\n").getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                ServerView.log("Registered with gateway " + gatewayHost + ":" + gatewayPort);
+
+                // the gateway never sends anything we need, we only wait for it to go away
+                InputStream in = connection.getInputStream();
+                byte[] ignored = new byte[64];
+                while (in.read(ignored) >= 0) {
+                    // keep reading
+                }
+                if (running) {
+                    ServerView.logError("Lost the gateway, registering again");
+                }
+            } catch (IOException e) {
+                if (running) {
+                    ServerView.logError("Could not reach gateway " + gatewayHost + ":" + gatewayPort + ": "
+                            + e.getMessage());
+                }
+            }
+            try {
+                Thread.sleep(RETRY_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    void stop() {
+        running = false;
+        Socket current = socket;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.group29.skipbo.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+// we use this to find clients that went quiet, one hashed timing wheel for all of them
+// every client has one entry in one bucket, a command from the client only stamps
+// the handler (no wheel work), and when the entry's bucket comes up we look at the
+// stamp: put the entry back for later, send PING, or drop the client
+// so 50k clients cost one timer thread and one small object each
+class IdleWheel {
+
+    static final long TICK_MS = 250;
+    // a power of two, one turn of the wheel is WHEEL_SIZE * TICK_MS (128 s)
+    private static final int WHEEL_SIZE = 512;
+
+    private static final class Entry {
+        final ClientHandler handler;
+        // whole turns of the wheel left before the entry is due
+        long rounds;
+
+        Entry(ClientHandler handler) {
+            this.handler = handler;
+        }
+    }
+
+    private final List<Entry>[] buckets;
+    // new clients come from any thread, the tick thread moves them into the wheel
+    private final ConcurrentLinkedQueue<Entry> added;
+    private final LongSupplier clock;
+    // null when a test ticks the wheel itself
+    private final ScheduledExecutorService timer;
+
+    // 0 turns PING (or dropping) off
+    private volatile long pingIntervalMs;
+    private volatile long idleTimeoutMs;
+
+    // the bucket of the current tick, only the tick thread touches the buckets
+    private int cursor;
+
+    IdleWheel(long pingIntervalMs, long idleTimeoutMs) {
+        this(pingIntervalMs, idleTimeoutMs, System::nanoTime, Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("idle-wheel").daemon(true).factory()));
+        timer.scheduleAtFixedRate(this::tick, TICK_MS, TICK_MS, TimeUnit.MILLISECONDS);
+    }
+
+    // tests drive tick() themselves with their own clock, there is no timer thread
+    IdleWheel(long pingIntervalMs, long idleTimeoutMs, LongSupplier clock) {
+        this(pingIntervalMs, idleTimeoutMs, clock, null);
+    }
+
+    private IdleWheel(long pingIntervalMs, long idleTimeoutMs, LongSupplier clock, ScheduledExecutorService timer) {
+        this.buckets = newBuckets(WHEEL_SIZE);
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            buckets[i] = new ArrayList<>();
+        }
+        this.added = new ConcurrentLinkedQueue<>();
+        this.clock = clock;
+        this.timer = timer;
+        configure(pingIntervalMs, idleTimeoutMs);
+    }
+
+    // we PING a client that sent nothing for pingIntervalMs and drop it after idleTimeoutMs
+    void configure(long pingIntervalMs, long idleTimeoutMs) {
+        this.pingIntervalMs = Math.max(0, pingIntervalMs);
+        this.idleTimeoutMs = Math.max(0, idleTimeoutMs);
+    }
+
+    long getPingInterval() {
+        return pingIntervalMs;
+    }
+
+    long getIdleTimeout() {
+        return idleTimeoutMs;
+    }
+
+    // we start watching a client, it leaves the wheel by itself once it disconnects
+    void watch(ClientHandler handler) {
+        handler.touch(clock.getAsLong());
+        added.add(new Entry(handler));
+    }
+
+    // java has no generic arrays, an array of List<?> only ever holds our lists
+    @SuppressWarnings("unchecked")
+    private static List<Entry>[] newBuckets(int length) {
+        return (List<Entry>[]) new List<?>[length];
+    }
+
+    // we move on one bucket and look at every entry that is due
+    void tick() {
+        try {
+            Entry entry;
+            while ((entry = added.poll()) != null) {
+                schedule(entry, firstCheckMs());
+            }
+
+            cursor = (cursor + 1) & (WHEEL_SIZE - 1);
+            List<Entry> bucket = buckets[cursor];
+            if (bucket.isEmpty()) {
+                return;
+            }
+            // due entries may go back into this same bucket, so we take them out first
+            List<Entry> due = new ArrayList<>();
+            for (int i = bucket.size() - 1; i >= 0; i--) {
+                Entry candidate = bucket.get(i);
+                if (candidate.rounds > 0) {
+                    candidate.rounds--;
+                } else {
+                    // we swap with the last entry, the order in a bucket doesn't matter
+                    bucket.set(i, bucket.get(bucket.size() - 1));
+                    bucket.remove(bucket.size() - 1);
+                    due.add(candidate);
+                }
+            }
+            long now = clock.getAsLong();
+            for (Entry candidate : due) {
+                check(candidate, now);
+            }
+        } catch (RuntimeException e) {
+            // one bad client must not stop the wheel for everyone
+            ServerView.logError("Idle check failed: " + e);
+        }
+    }
+
+    private void check(Entry entry, long now) {
+        ClientHandler handler = entry.handler;
+        if (!handler.isConnected()) {
+            return;
+        }
+        long idleMs = TimeUnit.NANOSECONDS.toMillis(now - handler.getLastActivity());
+        long ping = pingIntervalMs;
+        long timeout = idleTimeoutMs;
+
+        if (timeout > 0 && idleMs >= timeout) {
+            ServerView.logError("Idle timeout for " + describe(handler) + " after " + idleMs + " ms");
+            ServerMetrics.recordIdleDisconnect();
+            handler.disconnect();
+            return;
+        }
+        if (ping > 0 && idleMs >= ping) {
+            handler.sendPing();
+            ServerMetrics.recordPing();
+            // the client answers PONG, if it doesn't we drop it at the timeout
+            schedule(entry, timeout > 0 ? timeout - idleMs : ping);
+        } else if (ping > 0 || timeout > 0) {
+            schedule(entry, (ping > 0 ? ping : timeout) - idleMs);
+        } else {
+            schedule(entry, firstCheckMs());
+        }
+    }
+
+    // with both off we still look now and then, they may be switched on later
+    private long firstCheckMs() {
+        long ping = pingIntervalMs;
+        long timeout = idleTimeoutMs;
+        if (ping > 0) {
+            return ping;
+        }
+        return timeout > 0 ? timeout : WHEEL_SIZE * TICK_MS;
+    }
+
+    private void schedule(Entry entry, long delayMs) {
+        long ticks = Math.max(1, (delayMs + TICK_MS - 1) / TICK_MS);
+        entry.rounds = (ticks - 1) / WHEEL_SIZE;
+        buckets[(int) ((cursor + ticks) & (WHEEL_SIZE - 1))].add(entry);
+    }
+
+    private static String describe(ClientHandler handler) {
+        String name = handler.getPlayerName();
+        return name != null ? name : "unnamed client";
+    }
+
+    void shutdown() {
+        if (timer != null) {
+            timer.shutdownNow();
+        }
+    }
+}
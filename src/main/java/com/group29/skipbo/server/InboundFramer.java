@@ -0,0 +1,160 @@
+package com.group29.skipbo.server;
+
+import protocol.BinaryProtocol;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// we use this to cut what a client sends into commands (both transports use it)
+// text commands end with a newline, once the client agreed on Feature.BINARY
+// every command is a length-prefixed frame (see protocol.BinaryProtocol)
+class InboundFramer {
+
+    // a command longer than this is not a Skip-Bo command, we drop the client
+    static final int MAX_LINE_LENGTH = BinaryProtocol.MAX_FRAME_LENGTH;
+
+    private final ClientHandler handler;
+
+    // only set while a command is split over two reads, so idle clients hold no buffer
+    private byte[] partial;
+    private int partialLength;
+
+    InboundFramer(ClientHandler handler) {
+        this.handler = handler;
+    }
+
+    // we hand every complete command in data to the handler and keep the rest
+    // data is only borrowed, nothing we pass on may keep a reference to it
+    void onBytes(byte[] data, int offset, int length) {
+        int start = offset;
+        int end = offset + length;
+        if (partial != null) {
+            start = handler.isBinary() ? completeFrame(data, start, end) : completeLine(data, start, end);
+            if (start < 0) {
+                return;
+            }
+        }
+
+        while (start < end && handler.isConnected()) {
+            int next = handler.isBinary() ? nextFrame(data, start, end) : nextLine(data, start, end);
+            if (next < 0) {
+                break;
+            }
+            start = next;
+        }
+
+        if (start < end && handler.isConnected()) {
+            if (!handler.isBinary() && end - start > MAX_LINE_LENGTH) {
+                tooLong();
+                return;
+            }
+            append(data, start, end - start);
+        }
+    }
+
+    // we handle one line, returns where the next command starts or -1 if the line is incomplete
+    private int nextLine(byte[] data, int start, int end) {
+        int newline = indexOfNewline(data, start, end);
+        if (newline < 0) {
+            return -1;
+        }
+        handler.handleLine(new String(data, start, newline - start, StandardCharsets.UTF_8));
+        return newline + 1;
+    }
+
+    // we handle one frame, returns where the next command starts or -1 if the frame is incomplete
+    private int nextFrame(byte[] data, int start, int end) {
+        if (end - start < BinaryProtocol.HEADER_LENGTH) {
+            return -1;
+        }
+        int length = BinaryProtocol.readLength(data[start], data[start + 1]);
+        if (length > BinaryProtocol.MAX_FRAME_LENGTH) {
+            tooLong();
+            return -1;
+        }
+        int bodyStart = start + BinaryProtocol.HEADER_LENGTH;
+        if (end - bodyStart < length) {
+            return -1;
+        }
+        handler.handleFrame(ByteBuffer.wrap(data, bodyStart, length));
+        return bodyStart + length;
+    }
+
+    // we finish the line we started in an earlier read, -1 if it still isn't complete
+    private int completeLine(byte[] data, int start, int end) {
+        int newline = indexOfNewline(data, start, end);
+        int stop = newline < 0 ? end : newline;
+        if (partialLength + stop - start > MAX_LINE_LENGTH) {
+            tooLong();
+            return -1;
+        }
+        append(data, start, stop - start);
+        if (newline < 0) {
+            return -1;
+        }
+        String line = new String(partial, 0, partialLength, StandardCharsets.UTF_8);
+        clearPartial();
+        handler.handleLine(line);
+        return newline + 1;
+    }
+
+    // we finish the frame we started in an earlier read, -1 if it still isn't complete
+    private int completeFrame(byte[] data, int start, int end) {
+        if (partialLength < BinaryProtocol.HEADER_LENGTH) {
+            int take = Math.min(BinaryProtocol.HEADER_LENGTH - partialLength, end - start);
+            append(data, start, take);
+            start += take;
+            if (partialLength < BinaryProtocol.HEADER_LENGTH) {
+                return -1;
+            }
+        }
+        int length = BinaryProtocol.readLength(partial[0], partial[1]);
+        if (length > BinaryProtocol.MAX_FRAME_LENGTH) {
+            tooLong();
+            return -1;
+        }
+        int needed = BinaryProtocol.HEADER_LENGTH + length;
+        int take = Math.min(needed - partialLength, end - start);
+        append(data, start, take);
+        start += take;
+        if (partialLength < needed) {
+            return -1;
+        }
+        ByteBuffer body = ByteBuffer.wrap(partial, BinaryProtocol.HEADER_LENGTH, length);
+        handler.handleFrame(body);
+        clearPartial();
+        return start;
+    }
+
+    private void append(byte[] data, int offset, int length) {
+        if (partial == null) {
+            partial = new byte[Math.max(256, length)];
+        } else if (partial.length < partialLength + length) {
+            byte[] bigger = new byte[Math.max(partial.length * 2, partialLength + length)];
+            System.arraycopy(partial, 0, bigger, 0, partialLength);
+            partial = bigger;
+        }
+        System.arraycopy(data, offset, partial, partialLength, length);
+        partialLength += length;
+    }
+
+    private void clearPartial() {
+        partial = null;
+        partialLength = 0;
+    }
+
+    private void tooLong() {
+        clearPartial();
+        ServerView.logError("Command too long, dropping connection");
+        handler.disconnect();
+    }
+
+    private static int indexOfNewline(byte[] data, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (data[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
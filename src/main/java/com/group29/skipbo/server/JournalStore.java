@@ -0,0 +1,120 @@
+package com.group29.skipbo.server;
+
+import com.group29.skipbo.game.GameState;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// we use this for the directory that holds the move journals of the running games
+// one thread forces every journal that changed every syncMs, so a burst of moves on
+// many tables costs one flush per table instead of one per move; a file is deleted
+// when its game ends, whatever is left at startup belongs to games we can recover
+final class JournalStore {
+
+    private static final String SUFFIX = ".journal";
+
+    private final Path directory;
+    private final Set<MoveJournal> open;
+    private final ScheduledExecutorService syncThread;
+
+    JournalStore(Path directory, long syncMs) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.open = ConcurrentHashMap.newKeySet();
+        this.syncThread = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("journal-sync").daemon(true).factory());
+        long interval = Math.max(1, syncMs);
+        syncThread.scheduleWithFixedDelay(this::syncAll, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    // the journal of a table that is about to deal, null if the file can't be made
+    MoveJournal create(int tableId, long seed, long startedAt, List<String> names, List<String> bots) {
+        try {
+            MoveJournal journal = MoveJournal.create(fileOf(tableId), tableId, seed, startedAt, names, bots);
+            open.add(journal);
+            return journal;
+        } catch (IOException e) {
+            ServerView.logError("No journal for table " + tableId + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // we rebuild every game left in the directory, a file we can't read is renamed
+    // to .bad so it doesn't come back on every start
+    List<MoveJournal.Recovered> recover() {
+        List<MoveJournal.Recovered> games = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : files) {
+                try {
+                    MoveJournal.Recovered game = MoveJournal.read(file);
+                    if (game.game.getState() == GameState.IN_PROGRESS) {
+                        games.add(game);
+                    } else {
+                        // someone had won, we stopped before deleting it
+                        Files.delete(file);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    ServerView.logError("Can't recover " + file.getFileName() + ": " + e.getMessage());
+                    setAside(file);
+                }
+            }
+        } catch (IOException e) {
+            ServerView.logError("Can't read journals in " + directory + ": " + e.getMessage());
+        }
+        return games;
+    }
+
+    private void setAside(Path file) {
+        try {
+            Files.move(file, file.resolveSibling(file.getFileName() + ".bad"), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            ServerView.logError("Can't rename " + file.getFileName() + ": " + e.getMessage());
+        }
+    }
+
+    // a recovered game keeps writing to its old file
+    MoveJournal reopen(MoveJournal.Recovered recovered) {
+        try {
+            MoveJournal journal = MoveJournal.reopen(recovered);
+            open.add(journal);
+            return journal;
+        } catch (IOException e) {
+            ServerView.logError("Can't reopen " + recovered.file.getFileName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // the game is over, nothing to recover any more
+    void finish(MoveJournal journal) {
+        open.remove(journal);
+        journal.delete();
+    }
+
+    private void syncAll() {
+        for (MoveJournal journal : open) {
+            journal.sync();
+        }
+    }
+
+    // we force and close everything, the files stay for the next start
+    void shutdown() {
+        syncThread.shutdown();
+        for (MoveJournal journal : open) {
+            journal.close();
+        }
+        open.clear();
+    }
+
+    private Path fileOf(int tableId) {
+        return directory.resolve("table-" + tableId + SUFFIX);
+    }
+}
@@ -0,0 +1,82 @@
+package com.group29.skipbo.server;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// we count latencies in microseconds into log-linear buckets (32 per power of two,
+// so about 3% off at most, like an HDR histogram with 1.5 digits), any thread can
+// record without locking and a recording never allocates
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKETS = 32;
+    private static final int SUB_BITS = 5;
+    // below 64 µs every value has its own bucket, above that 32 per power of two up to 2^40 µs
+    private static final int BUCKETS = 2 * SUB_BUCKETS + (40 - SUB_BITS - 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        counts.incrementAndGet(Math.min(BUCKETS - 1, index(micros)));
+        total.increment();
+        sum.add(micros);
+        max.accumulate(micros);
+    }
+
+    public long count() {
+        return total.sum();
+    }
+
+    // in microseconds
+    public long max() {
+        return max.get();
+    }
+
+    // in microseconds
+    public long mean() {
+        long count = total.sum();
+        return count == 0 ? 0 : sum.sum() / count;
+    }
+
+    // in microseconds, the upper end of the bucket the percentile falls in
+    public long percentile(double fraction) {
+        long target = (long) Math.ceil(fraction * total.sum());
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= target && seen > 0) {
+                return Math.min(upperBound(i), max());
+            }
+        }
+        return max();
+    }
+
+    // count/p50/p90/p99/max with the times in milliseconds
+    public String summary() {
+        return String.format(Locale.ROOT, "%d/%.2f/%.2f/%.2f/%.2f", count(), percentile(0.50) / 1e3,
+                percentile(0.90) / 1e3, percentile(0.99) / 1e3, max() / 1e3);
+    }
+
+    static int index(long micros) {
+        if (micros < 2 * SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros); // >= 6
+        int sub = (int) (micros >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return 2 * SUB_BUCKETS + (exponent - SUB_BITS - 1) * SUB_BUCKETS + sub;
+    }
+
+    static long upperBound(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = (index - 2 * SUB_BUCKETS) / SUB_BUCKETS + SUB_BITS + 1;
+        int sub = (index - 2 * SUB_BUCKETS) % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub + 1) << (exponent - SUB_BITS)) - 1;
+    }
+}
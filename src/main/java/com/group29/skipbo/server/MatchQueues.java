@@ -0,0 +1,142 @@
+package com.group29.skipbo.server;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// we use this to keep the players waiting for a game, one FIFO queue per table size
+// a queue is a LinkedHashMap so joining, leaving (by name) and taking the oldest
+// are all O(1), and a player asking for 3 never waits behind one asking for 5
+// not thread safe, GameController only uses it under its lock
+final class MatchQueues {
+
+    static final int MIN_PLAYERS = 2;
+    static final int MAX_PLAYERS = 6;
+
+    // one waiting player (bots have a null handler and the player who added them as owner)
+    static final class Waiting {
+        final String name;
+        final ClientHandler handler;
+        final String owner;
+        final int playerCount;
+        final long since;
+
+        Waiting(String name, ClientHandler handler, String owner, int playerCount, long since) {
+            this.name = name;
+            this.handler = handler;
+            this.owner = owner;
+            this.playerCount = playerCount;
+            this.since = since;
+        }
+
+        boolean isBot() {
+            return handler == null;
+        }
+    }
+
+    // indexed by table size, the sizes below MIN_PLAYERS stay empty
+    private final List<Map<String, Waiting>> queues;
+    // which queue a name is in, so leaving doesn't look through all of them
+    private final Map<String, Waiting> byName;
+    // the bots each player added that are still waiting
+    private final Map<String, List<String>> botsByOwner;
+
+    MatchQueues() {
+        this.queues = new ArrayList<>(MAX_PLAYERS + 1);
+        for (int size = 0; size <= MAX_PLAYERS; size++) {
+            queues.add(new LinkedHashMap<>());
+        }
+        this.byName = new HashMap<>();
+        this.botsByOwner = new HashMap<>();
+    }
+
+    // we put a player at the back of the queue for playerCount, leaving any queue they were in
+    Waiting add(String name, ClientHandler handler, int playerCount, long now) {
+        return add(new Waiting(name, handler, null, playerCount, now));
+    }
+
+    // we queue a bot for owner, removeBots(owner) takes it out again
+    Waiting addBot(String name, String owner, int playerCount, long now) {
+        Waiting waiting = add(new Waiting(name, null, owner, playerCount, now));
+        botsByOwner.computeIfAbsent(owner, k -> new ArrayList<>()).add(name);
+        return waiting;
+    }
+
+    private Waiting add(Waiting waiting) {
+        remove(waiting.name);
+        queues.get(waiting.playerCount).put(waiting.name, waiting);
+        byName.put(waiting.name, waiting);
+        return waiting;
+    }
+
+    // we take a player out of their queue, returns what they waited for or null
+    Waiting remove(String name) {
+        Waiting waiting = byName.remove(name);
+        if (waiting != null) {
+            queues.get(waiting.playerCount).remove(name);
+            forgetBot(waiting);
+        }
+        return waiting;
+    }
+
+    // we take out the bots owner added that are still waiting, returns their names
+    List<String> removeBots(String owner) {
+        List<String> bots = botsByOwner.remove(owner);
+        if (bots == null) {
+            return List.of();
+        }
+        for (String bot : bots) {
+            Waiting waiting = byName.remove(bot);
+            queues.get(waiting.playerCount).remove(bot);
+        }
+        return bots;
+    }
+
+    private void forgetBot(Waiting waiting) {
+        if (waiting.owner == null) {
+            return;
+        }
+        List<String> bots = botsByOwner.get(waiting.owner);
+        bots.remove(waiting.name);
+        if (bots.isEmpty()) {
+            botsByOwner.remove(waiting.owner);
+        }
+    }
+
+    Waiting get(String name) {
+        return byName.get(name);
+    }
+
+    int size(int playerCount) {
+        return queues.get(playerCount).size();
+    }
+
+    // we take the oldest playerCount players once that queue is full, or null
+    Map<String, ClientHandler> takeTable(int playerCount) {
+        if (queues.get(playerCount).size() < playerCount) {
+            return null;
+        }
+        return take(playerCount, playerCount);
+    }
+
+    // we take everyone waiting for playerCount (at most a table), the caller adds the bots
+    Map<String, ClientHandler> takeAll(int playerCount) {
+        return take(playerCount, Math.min(playerCount, queues.get(playerCount).size()));
+    }
+
+    private Map<String, ClientHandler> take(int playerCount, int count) {
+        Map<String, ClientHandler> seats = new LinkedHashMap<>();
+        Iterator<Waiting> oldest = queues.get(playerCount).values().iterator();
+        while (seats.size() < count) {
+            Waiting waiting = oldest.next();
+            oldest.remove();
+            byName.remove(waiting.name);
+            forgetBot(waiting);
+            seats.put(waiting.name, waiting.handler);
+        }
+        return seats;
+    }
+}
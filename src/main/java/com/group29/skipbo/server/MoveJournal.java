@@ -0,0 +1,254 @@
+package com.group29.skipbo.server;
+
+import com.group29.skipbo.game.Game;
+import com.group29.skipbo.replay.MoveRecord;
+import com.group29.skipbo.replay.Replayer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// we use this as the write-ahead journal of one table's game
+// the file starts with the seed and the seats, then every move the table applies is
+// one MoveRecord (2 bytes) stored straight into a memory-mapped region, so a move
+// costs a few nanoseconds and no system call; the page cache keeps the records when
+// the process dies and JournalStore's sync thread forces them to disk every few ms
+// for all tables at once (group commit)
+// the game is dealt again from the seed and a Replayer applies the records in order
+// to rebuild it, see read()
+// only the table's mailbox appends, sync() may run on the sync thread meanwhile
+final class MoveJournal {
+
+    static final int MAGIC = 0x534B424A; // "SKBJ"
+    static final int VERSION = 2;
+    // the file grows by this much at a time, a whole game fits in the first one
+    static final int REGION_BYTES = 64 * 1024;
+
+    private final Path file;
+    private final FileChannel channel;
+    private MappedByteBuffer region;
+    private long regionStart;
+    private volatile boolean dirty;
+    private boolean closed;
+
+    private MoveJournal(Path file, FileChannel channel, long writeAt) throws IOException {
+        this.file = file;
+        this.channel = channel;
+        map(writeAt);
+    }
+
+    // a new journal for a game that is about to be dealt
+    static MoveJournal create(Path file, int tableId, long seed, long startedAt, List<String> names,
+            List<String> bots) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(headerSize(names));
+        header.putInt(MAGIC);
+        header.put((byte) VERSION);
+        header.put((byte) names.size());
+        header.putInt(tableId);
+        header.putLong(seed);
+        header.putLong(startedAt);
+        for (String name : names) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            header.put((byte) (bots.contains(name) ? 1 : 0));
+            header.putShort((short) bytes.length);
+            header.put(bytes);
+        }
+        header.flip();
+
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            channel.write(header, 0);
+            channel.force(true);
+            return new MoveJournal(file, channel, header.limit());
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // we keep appending to a journal read() recovered, anything after its last good
+    // record is cut off first
+    static MoveJournal reopen(Recovered recovered) throws IOException {
+        FileChannel channel = FileChannel.open(recovered.file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            channel.truncate(recovered.end);
+            return new MoveJournal(recovered.file, channel, recovered.end);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static int headerSize(List<String> names) {
+        int size = 4 + 1 + 1 + 4 + 8 + 8;
+        for (String name : names) {
+            size += 1 + 2 + name.getBytes(StandardCharsets.UTF_8).length;
+        }
+        return size;
+    }
+
+    // ===== RECORDS (table mailbox only) =====
+
+    void append(short record) {
+        if (closed) {
+            return;
+        }
+        if (region.remaining() < Short.BYTES) {
+            grow();
+            if (closed) {
+                return; // the old region is full, the move only lives in the game
+            }
+        }
+        region.putShort(record);
+        dirty = true;
+    }
+
+    // the region is full, we force it and map the next one
+    private synchronized void grow() {
+        try {
+            region.force();
+            map(regionStart + region.capacity());
+        } catch (IOException | UncheckedIOException e) {
+            // the game goes on, it just can't be recovered any more
+            ServerView.logError("Journal " + file.getFileName() + " stopped: " + e);
+            closed = true;
+            try {
+                channel.close();
+            } catch (IOException closeFailed) {
+                // ignore
+            }
+        }
+    }
+
+    private void map(long writeAt) throws IOException {
+        regionStart = writeAt;
+        region = channel.map(FileChannel.MapMode.READ_WRITE, writeAt, REGION_BYTES);
+    }
+
+    // ===== SYNC AND CLOSE =====
+
+    // we force what was appended since the last call, the sync thread calls this
+    synchronized void sync() {
+        if (closed || !dirty) {
+            return;
+        }
+        dirty = false;
+        region.force();
+    }
+
+    // the game is over (or nobody is left), the journal is no longer needed
+    synchronized void delete() {
+        close();
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            ServerView.logError("Could not delete journal " + file.getFileName() + ": " + e.getMessage());
+        }
+    }
+
+    // we keep the file for the next start
+    synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            region.force();
+            channel.close();
+        } catch (IOException e) {
+            ServerView.logError("Could not close journal " + file.getFileName() + ": " + e.getMessage());
+        }
+    }
+
+    // ===== RECOVERY =====
+
+    // a game rebuilt from its journal
+    static final class Recovered {
+        final Path file;
+        final int tableId;
+        final long seed;
+        final long startedAt;
+        final List<String> names;
+        // the seats bots had at the deal, and the ones they have now
+        final boolean[] dealtBots;
+        final Set<String> bots;
+        final Game game;
+        final short[] moves;
+        // where the next record goes
+        final long end;
+
+        Recovered(Path file, int tableId, long seed, long startedAt, List<String> names, boolean[] dealtBots,
+                Set<String> bots, Game game, short[] moves, long end) {
+            this.file = file;
+            this.tableId = tableId;
+            this.seed = seed;
+            this.startedAt = startedAt;
+            this.names = names;
+            this.dealtBots = dealtBots;
+            this.bots = bots;
+            this.game = game;
+            this.moves = moves;
+            this.end = end;
+        }
+    }
+
+    // we deal the game again from the seed and apply every record, a record that
+    // doesn't fit ends the journal there
+    static Recovered read(Path file) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (in.remaining() < 26 || in.getInt() != MAGIC || in.get() != VERSION) {
+            throw new IOException("not a journal");
+        }
+        int playerCount = in.get();
+        int tableId = in.getInt();
+        long seed = in.getLong();
+        long startedAt = in.getLong();
+        List<String> names = new ArrayList<>();
+        boolean[] dealtBots = new boolean[playerCount];
+        for (int seat = 0; seat < playerCount; seat++) {
+            dealtBots[seat] = in.get() == 1;
+            byte[] bytes = new byte[in.getShort()];
+            in.get(bytes);
+            names.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+
+        Replayer replayer = new Replayer(seed, names, dealtBots);
+        short[] moves = new short[in.remaining() / Short.BYTES];
+        int count = 0;
+        while (in.remaining() >= Short.BYTES && !replayer.isOver()) {
+            short record = in.getShort(in.position());
+            if (record == 0) {
+                break;
+            }
+            try {
+                replayer.apply(record);
+            } catch (IllegalStateException e) {
+                ServerView.logError("Journal " + file.getFileName() + " ends at a bad record: " + e.getMessage());
+                break;
+            }
+            in.position(in.position() + Short.BYTES);
+            moves[count++] = record;
+        }
+
+        Set<String> bots = new HashSet<>();
+        for (int seat = 0; seat < playerCount; seat++) {
+            if (replayer.isBot(seat)) {
+                bots.add(names.get(seat));
+            }
+        }
+        return new Recovered(file, tableId, seed, startedAt, names, dealtBots, bots, replayer.getGame(),
+                Arrays.copyOf(moves, count), in.position());
+    }
+}
@@ -0,0 +1,173 @@
+package com.group29.skipbo.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// we use this for one client of the NIO transport
+// it passes incoming bytes to an InboundFramer and queues outgoing lines
+// until the selector thread can write them
+class NioConnection implements ClientConnection {
+
+    private final NioServer.IoLoop loop;
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private ClientHandler handler;
+    private InboundFramer framer;
+
+    private final Queue<ByteBuffer> outbound;
+    private final AtomicInteger outboundCount;
+    private final int capacity;
+    private final AtomicBoolean flushScheduled;
+    private volatile long pendingSince;
+    private volatile boolean closed;
+
+    NioConnection(NioServer.IoLoop loop, SocketChannel channel, SelectionKey key, int capacity) {
+        this.loop = loop;
+        this.channel = channel;
+        this.key = key;
+        this.capacity = capacity;
+        this.outbound = new ConcurrentLinkedQueue<>();
+        this.outboundCount = new AtomicInteger();
+        this.flushScheduled = new AtomicBoolean(false);
+    }
+
+    void setHandler(ClientHandler handler) {
+        this.handler = handler;
+        this.framer = new InboundFramer(handler);
+    }
+
+    ClientHandler getHandler() {
+        return handler;
+    }
+
+    SocketChannel getChannel() {
+        return channel;
+    }
+
+    // ===== READ SIDE (selector thread only) =====
+
+    // we hand what we just read to the framer, the buffer is shared by the whole loop
+    void onBytes(ByteBuffer buffer) {
+        framer.onBytes(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+    }
+
+    // ===== WRITE SIDE =====
+
+    // we queue the line for the selector thread (safe from any thread)
+    @Override
+    public boolean offer(ByteBuffer frame) {
+        if (closed) {
+            return false;
+        }
+        if (outboundCount.incrementAndGet() > capacity) {
+            outboundCount.decrementAndGet();
+            return false;
+        }
+        outbound.add(frame.duplicate());
+        if (pendingSince == 0) {
+            pendingSince = System.nanoTime();
+        }
+        return true;
+    }
+
+    // we let the selector thread write everything queued so far
+    @Override
+    public void flush() {
+        if (!closed && flushScheduled.compareAndSet(false, true)) {
+            loop.execute(this::writeQueued);
+        }
+    }
+
+    @Override
+    public int pendingLines() {
+        return outboundCount.get();
+    }
+
+    @Override
+    public long pendingSince() {
+        return pendingSince;
+    }
+
+    // runs on the selector thread, a line that is half written stays so the client
+    // never gets a cut line
+    @Override
+    public void replacePending(ByteBuffer frame) {
+        loop.execute(() -> {
+            if (closed) {
+                return;
+            }
+            Iterator<ByteBuffer> queued = outbound.iterator();
+            if (queued.hasNext() && queued.next().position() == 0) {
+                queued = outbound.iterator();
+            }
+            int dropped = 0;
+            while (queued.hasNext()) {
+                queued.next();
+                queued.remove();
+                dropped++;
+            }
+            outboundCount.addAndGet(-dropped);
+            outbound.add(frame.duplicate());
+            outboundCount.incrementAndGet();
+            pendingSince = System.nanoTime();
+            writeQueued();
+        });
+    }
+
+    // we write as much as the socket takes, the rest waits for OP_WRITE
+    void writeQueued() {
+        flushScheduled.set(false);
+        if (closed || !key.isValid()) {
+            return;
+        }
+        ByteBuffer[] batch = loop.gatherBuffers();
+        try {
+            while (true) {
+                int count = 0;
+                for (ByteBuffer buffer : outbound) {
+                    if (count == batch.length) {
+                        break;
+                    }
+                    batch[count++] = buffer;
+                }
+                if (count == 0) {
+                    pendingSince = 0;
+                    key.interestOps(SelectionKey.OP_READ);
+                    return;
+                }
+
+                // one gathering write for everything that is queued
+                if (channel.write(batch, 0, count) > 0) {
+                    pendingSince = System.nanoTime();
+                }
+
+                for (int i = 0; i < count; i++) {
+                    if (batch[i].hasRemaining()) {
+                        // the socket is full, we wait until the selector says it's writable
+                        key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                        return;
+                    }
+                    outbound.poll();
+                    outboundCount.decrementAndGet();
+                }
+            }
+        } catch (IOException e) {
+            handler.disconnect();
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        outbound.clear();
+        key.cancel();
+        NioServer.closeQuietly(channel);
+    }
+}
@@ -0,0 +1,233 @@
+package com.group29.skipbo.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// we use this as the non-blocking transport
+// one acceptor thread hands new channels round-robin to a few selector (I/O)
+// threads, so an idle client costs a key and a small object instead of a thread
+public class NioServer {
+
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+    private static final int ACCEPT_BACKLOG = 1024;
+    private static final int MAX_GATHER = 64;
+
+    private final int port;
+    private final GameController gameController;
+    private final IoLoop[] loops;
+    private volatile boolean running;
+    private ServerSocketChannel serverChannel;
+    // runs once the port is bound
+    private volatile Runnable onListening = () -> { };
+
+    public NioServer(int port, GameController gameController, int ioThreads) {
+        if (ioThreads < 1) {
+            throw new IllegalArgumentException("Need at least one I/O thread");
+        }
+        this.port = port;
+        this.gameController = gameController;
+        this.loops = new IoLoop[ioThreads];
+    }
+
+    void onListening(Runnable callback) {
+        this.onListening = callback;
+    }
+
+    // we open the selectors and accept connections until stop() is called
+    public void start() {
+        running = true;
+        ServerView.log("Starting NIO server on port " + port + " with " + loops.length + " I/O threads");
+
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            serverChannel = server;
+            server.bind(new InetSocketAddress(port), ACCEPT_BACKLOG);
+
+            for (int i = 0; i < loops.length; i++) {
+                loops[i] = new IoLoop(Selector.open());
+                Thread thread = new Thread(loops[i], "nio-io-" + i);
+                thread.setDaemon(true);
+                thread.start();
+            }
+            ServerView.log("Server started! Waiting for clients...");
+            onListening.run();
+
+            int next = 0;
+            while (running) {
+                try {
+                    // the acceptor blocks here, only the I/O threads use selectors
+                    SocketChannel channel = server.accept();
+                    channel.configureBlocking(false);
+                    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+                    loops[next].register(channel);
+                    next = (next + 1) % loops.length;
+                } catch (IOException e) {
+                    if (running) {
+                        ServerView.logError("Error accepting connection: " + e.getMessage());
+                    }
+                }
+            }
+
+        } catch (IOException e) {
+            ServerView.logError("Could not start server: " + e.getMessage());
+        } finally {
+            stop();
+        }
+    }
+
+    // we stop accepting and close every selector (which drops its connections)
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        ServerView.log("Server stopping...");
+        try {
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+        } catch (IOException e) {
+            // ignore
+        }
+        for (IoLoop loop : loops) {
+            if (loop != null) {
+                loop.shutdown();
+            }
+        }
+    }
+
+    // one selector thread, it owns the keys of its connections
+    final class IoLoop implements Runnable {
+
+        private final Selector selector;
+        private final Queue<Runnable> tasks;
+        // shared by all connections of this loop, partial lines are copied out
+        private final ByteBuffer readBuffer;
+        private final ByteBuffer[] gatherBuffers;
+
+        IoLoop(Selector selector) {
+            this.selector = selector;
+            this.tasks = new ConcurrentLinkedQueue<>();
+            this.readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            this.gatherBuffers = new ByteBuffer[MAX_GATHER];
+        }
+
+        // scratch array for gathering writes, only used on this loop's thread
+        ByteBuffer[] gatherBuffers() {
+            return gatherBuffers;
+        }
+
+        // we run a task on this loop's thread (safe to call from any thread)
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        void register(SocketChannel channel) {
+            execute(() -> {
+                try {
+                    SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                    NioConnection connection = new NioConnection(this, channel, key,
+                            ClientHandler.OUTBOUND_CAPACITY);
+                    ClientHandler handler = new ClientHandler(connection, gameController);
+                    connection.setHandler(handler);
+                    key.attach(connection);
+                    gameController.watchIdle(handler);
+                    ServerView.log("New connection from " + channel.socket().getInetAddress());
+                } catch (IOException e) {
+                    ServerView.logError("Could not register connection: " + e.getMessage());
+                    closeQuietly(channel);
+                }
+            });
+        }
+
+        void shutdown() {
+            execute(() -> {
+                for (SelectionKey key : selector.keys()) {
+                    if (key.attachment() instanceof NioConnection) {
+                        ((NioConnection) key.attachment()).getHandler().disconnect();
+                    }
+                }
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            });
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (selector.isOpen()) {
+                    selector.select();
+                    runTasks();
+                    if (!selector.isOpen()) {
+                        break;
+                    }
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        NioConnection connection = (NioConnection) key.attachment();
+                        if (connection == null || !key.isValid()) {
+                            continue;
+                        }
+                        if (key.isWritable()) {
+                            connection.writeQueued();
+                        }
+                        if (key.isValid() && key.isReadable()) {
+                            read(connection);
+                        }
+                    }
+                }
+            } catch (IOException | ClosedSelectorException e) {
+                if (running) {
+                    ServerView.logError("I/O loop stopped: " + e.getMessage());
+                }
+            }
+        }
+
+        private void runTasks() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+        }
+
+        private void read(NioConnection connection) {
+            readBuffer.clear();
+            int read;
+            try {
+                read = connection.getChannel().read(readBuffer);
+            } catch (IOException e) {
+                read = -1;
+            }
+            if (read < 0) {
+                connection.getHandler().disconnect();
+                return;
+            }
+            readBuffer.flip();
+            connection.onBytes(readBuffer);
+        }
+    }
+
+    static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+}
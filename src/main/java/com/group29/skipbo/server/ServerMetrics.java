@@ -0,0 +1,216 @@
+package com.group29.skipbo.server;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// we use this to count server events and time the hot paths, any thread can record
+// without locking; snapshot() is what the METRICS admin command and the periodic
+// dump print
+public class ServerMetrics {
+
+    private static final LongAdder slowConsumerResyncs = new LongAdder();
+    private static final LongAdder slowConsumerDisconnects = new LongAdder();
+    private static final LongAdder slowConsumerBotTakeovers = new LongAdder();
+    private static final LongAdder pingsSent = new LongAdder();
+    private static final LongAdder idleDisconnects = new LongAdder();
+
+    private static final LongAdder connectionsOpened = new LongAdder();
+    private static final LongAdder connectionsClosed = new LongAdder();
+    private static final LongAdder gamesStarted = new LongAdder();
+    private static final LongAdder gamesFinished = new LongAdder();
+
+    // per ClientCommand.Type, indexed by ordinal
+    private static final ClientCommand.Type[] TYPES = ClientCommand.Type.values();
+    private static final LongAdder[] commandCounts = new LongAdder[TYPES.length];
+    private static final LatencyHistogram[] commandLatencies = new LatencyHistogram[TYPES.length];
+    // per error code we sent, the codes are fixed so this stays small
+    private static final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+    // how long GameController's registry lock kept a caller waiting
+    private static final LatencyHistogram lockWait = new LatencyHistogram();
+    // how long one broadcast took to queue a line for everyone at a table
+    private static final LatencyHistogram broadcastFanout = new LatencyHistogram();
+    // how long one game event took to queue for everyone watching a table
+    private static final LatencyHistogram spectatorFanout = new LatencyHistogram();
+    // how long a bot took for its whole turn (the pause before it not included)
+    private static final LatencyHistogram botThink = new LatencyHistogram();
+
+    private static ScheduledExecutorService dumper;
+
+    static {
+        for (int i = 0; i < TYPES.length; i++) {
+            commandCounts[i] = new LongAdder();
+            commandLatencies[i] = new LatencyHistogram();
+        }
+    }
+
+    // ===== RECORDING =====
+
+    // we count a client that fell behind, by what we did about it
+    public static void recordSlowConsumer(SlowConsumerPolicy policy) {
+        switch (policy) {
+            case RESYNC:
+                slowConsumerResyncs.increment();
+                break;
+            case DISCONNECT:
+                slowConsumerDisconnects.increment();
+                break;
+            case BOT:
+                slowConsumerBotTakeovers.increment();
+                break;
+        }
+    }
+
+    // we count a PING sent to a quiet client
+    public static void recordPing() {
+        pingsSent.increment();
+    }
+
+    // we count a client we dropped because it stayed quiet
+    public static void recordIdleDisconnect() {
+        idleDisconnects.increment();
+    }
+
+    public static void recordConnectionOpened() {
+        connectionsOpened.increment();
+    }
+
+    public static void recordConnectionClosed() {
+        connectionsClosed.increment();
+    }
+
+    public static void recordGameStarted() {
+        gamesStarted.increment();
+    }
+
+    public static void recordGameFinished() {
+        gamesFinished.increment();
+    }
+
+    // we count one command we read
+    static void recordCommand(ClientCommand.Type type) {
+        commandCounts[type.ordinal()].increment();
+    }
+
+    // the time from reading a command until the server answered it
+    static void recordLatency(ClientCommand.Type type, long nanos) {
+        commandLatencies[type.ordinal()].record(nanos);
+    }
+
+    // we count an ERROR~code we sent
+    public static void recordError(String code) {
+        errors.computeIfAbsent(code, c -> new LongAdder()).increment();
+    }
+
+    public static void recordLockWait(long nanos) {
+        lockWait.record(nanos);
+    }
+
+    public static void recordBroadcast(long nanos) {
+        broadcastFanout.record(nanos);
+    }
+
+    public static void recordSpectatorFanout(long nanos) {
+        spectatorFanout.record(nanos);
+    }
+
+    public static void recordBotTurn(long nanos) {
+        botThink.record(nanos);
+    }
+
+    // ===== READING =====
+
+    public static long getIdleDisconnects() {
+        return idleDisconnects.sum();
+    }
+
+    public static long getSlowConsumerEvents() {
+        return slowConsumerResyncs.sum() + slowConsumerDisconnects.sum() + slowConsumerBotTakeovers.sum();
+    }
+
+    public static long getActiveConnections() {
+        return connectionsOpened.sum() - connectionsClosed.sum();
+    }
+
+    static long getCommandCount(ClientCommand.Type type) {
+        return commandCounts[type.ordinal()].sum();
+    }
+
+    public static long getErrorCount(String code) {
+        LongAdder count = errors.get(code);
+        return count != null ? count.sum() : 0;
+    }
+
+    // every metric as name=value, histograms as count/p50/p90/p99/max in ms,
+    // commands and errors nobody sent yet are left out
+    public static Map<String, String> snapshot() {
+        Map<String, String> values = new LinkedHashMap<>();
+        values.put("connections.active", Long.toString(getActiveConnections()));
+        values.put("connections.total", Long.toString(connectionsOpened.sum()));
+        values.put("games.started", Long.toString(gamesStarted.sum()));
+        values.put("games.finished", Long.toString(gamesFinished.sum()));
+        for (int i = 0; i < TYPES.length; i++) {
+            if (commandCounts[i].sum() > 0) {
+                values.put("commands." + TYPES[i], Long.toString(commandCounts[i].sum()));
+            }
+        }
+        for (Map.Entry<String, LongAdder> error : new TreeMap<>(errors).entrySet()) {
+            values.put("errors." + error.getKey(), Long.toString(error.getValue().sum()));
+        }
+        values.put("slowConsumers.resync", Long.toString(slowConsumerResyncs.sum()));
+        values.put("slowConsumers.disconnect", Long.toString(slowConsumerDisconnects.sum()));
+        values.put("slowConsumers.bot", Long.toString(slowConsumerBotTakeovers.sum()));
+        values.put("pings", Long.toString(pingsSent.sum()));
+        values.put("idleDisconnects", Long.toString(idleDisconnects.sum()));
+        values.put("log.dropped", Long.toString(ServerView.getDroppedLines()));
+        for (int i = 0; i < TYPES.length; i++) {
+            if (commandLatencies[i].count() > 0) {
+                values.put("latency." + TYPES[i], commandLatencies[i].summary());
+            }
+        }
+        values.put("lockWait", lockWait.summary());
+        values.put("broadcast", broadcastFanout.summary());
+        values.put("spectators", spectatorFanout.summary());
+        values.put("botTurn", botThink.summary());
+        return values;
+    }
+
+    // we format all metrics one per line
+    public static String report() {
+        StringBuilder out = new StringBuilder();
+        for (Map.Entry<String, String> entry : snapshot().entrySet()) {
+            if (out.length() > 0) {
+                out.append('\n');
+            }
+            out.append(entry.getKey()).append('=').append(entry.getValue());
+        }
+        return out.toString();
+    }
+
+    // ===== PERIODIC DUMP =====
+
+    // we log the report every intervalMs until stopDumping() (0 turns it off)
+    public static synchronized void startDumping(long intervalMs) {
+        stopDumping();
+        if (intervalMs <= 0) {
+            return;
+        }
+        dumper = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("metrics-dump").daemon(true).factory());
+        dumper.scheduleAtFixedRate(() -> ServerView.log("Metrics\n" + report()), intervalMs, intervalMs,
+                TimeUnit.MILLISECONDS);
+    }
+
+    public static synchronized void stopDumping() {
+        if (dumper != null) {
+            dumper.shutdownNow();
+            dumper = null;
+        }
+    }
+}
@@ -1,50 +1,93 @@
 package com.group29.skipbo.server;
 
-// we use this for logging server events to console (View in MVC)
+import java.nio.file.Path;
+
+// we use this for logging server events (View in MVC)
+// every call only queues the line on an AsyncLogger, the console or the log file
+// is written by the logger's own thread; moves and turns are DEBUG, so they cost
+// nothing unless --log-level=debug
 public class ServerView {
 
+    public static final int DEFAULT_BUFFER_LINES = 8192;
+    public static final long DEFAULT_MAX_FILE_BYTES = 10L * 1024 * 1024;
+    public static final int DEFAULT_KEEP_FILES = 5;
+
+    private static volatile AsyncLogger logger = new AsyncLogger(DEFAULT_BUFFER_LINES, AsyncLogger.Level.INFO,
+            null, 0, 1);
+
+    static {
+        // we write what is still queued when the server exits
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> logger.close(1000), "log-shutdown"));
+    }
+
+    // we switch to another level and output, file null is the console
+    public static synchronized void configure(String level, Path file) {
+        AsyncLogger old = logger;
+        logger = new AsyncLogger(DEFAULT_BUFFER_LINES, parseLevel(level), file, DEFAULT_MAX_FILE_BYTES,
+                DEFAULT_KEEP_FILES);
+        old.close(1000);
+    }
+
+    // debug, info, warn or error (any case), INFO for anything else
+    static AsyncLogger.Level parseLevel(String level) {
+        if (level != null) {
+            for (AsyncLogger.Level candidate : AsyncLogger.Level.values()) {
+                if (candidate.name().equalsIgnoreCase(level)) {
+                    return candidate;
+                }
+            }
+        }
+        return AsyncLogger.Level.INFO;
+    }
+
+    // lines we dropped because the buffer was full
+    public static long getDroppedLines() {
+        return logger.getDropped();
+    }
+
     // we log general server messages
     public static void log(String message) {
-        System.out.println("[SERVER] " + message);
+        logger.log(AsyncLogger.Level.INFO, "SERVER", message);
     }
 
     // we log game-related messages
     public static void logGame(String message) {
-        System.out.println("[GAME] " + message);
+        logger.log(AsyncLogger.Level.INFO, "GAME", message);
     }
 
     // we log errors
     public static void logError(String message) {
-        System.out.println("[ERROR] " + message);
+        logger.log(AsyncLogger.Level.ERROR, "ERROR", message);
     }
 
     // we log when a player connects
     public static void logPlayerJoined(String name) {
-        System.out.println("[SERVER] Player joined: " + name);
+        logger.log(AsyncLogger.Level.INFO, "SERVER", () -> "Player joined: " + name);
     }
 
     // we log when a player disconnects
     public static void logPlayerLeft(String name) {
-        System.out.println("[SERVER] Player left: " + name);
+        logger.log(AsyncLogger.Level.INFO, "SERVER", () -> "Player left: " + name);
     }
 
     // we log when game starts
-    public static void logGameStarted(int playerCount) {
-        System.out.println("[GAME] Game started with " + playerCount + " players");
+    public static void logGameStarted(int tableId, int playerCount) {
+        logger.log(AsyncLogger.Level.INFO, "GAME",
+                () -> "Table " + tableId + ": game started with " + playerCount + " players");
     }
 
     // we log whose turn it is
     public static void logTurn(String playerName) {
-        System.out.println("[GAME] Turn: " + playerName);
+        logger.log(AsyncLogger.Level.DEBUG, "GAME", () -> "Turn: " + playerName);
     }
 
     // we log a move
     public static void logMove(String playerName, String from, String to) {
-        System.out.println("[GAME] " + playerName + " played " + from + " -> " + to);
+        logger.log(AsyncLogger.Level.DEBUG, "GAME", () -> playerName + " played " + from + " -> " + to);
     }
 
     // we log the winner
     public static void logWinner(String playerName) {
-        System.out.println("[GAME] *** WINNER: " + playerName + " ***");
+        logger.log(AsyncLogger.Level.INFO, "GAME", () -> "*** WINNER: " + playerName + " ***");
     }
 }
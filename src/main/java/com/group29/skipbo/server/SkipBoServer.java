@@ -3,32 +3,128 @@ package com.group29.skipbo.server;
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
 
 // we use this as the main server entry point
-// it listens for connections and spawns a thread for each client
+// it listens for connections and either spawns a thread for each client
+// (blocking or virtual transport) or hands them to the NIO selector threads
 public class SkipBoServer {
 
+    private static final int ACCEPT_BACKLOG = 1024;
+
+    // we pick how client sockets are served at startup
+    public enum Transport {
+        BLOCKING, // one platform thread per client
+        VIRTUAL, // one virtual thread per client, same blocking code
+        NIO // a few selector threads for all clients
+    }
+
     private final int port;
+    private final Transport transport;
+    private final int ioThreads;
+    private final ThreadFactory clientThreads;
     private final GameController gameController;
-    private final List<ClientHandler> clients;
+    // the connected blocking clients, a handler leaves once its thread ends
+    private final Set<ClientHandler> clients;
+    private NioServer nioServer;
     private boolean running;
+    private long metricsDumpMs;
+    // set when the server offers its games to a gateway
+    private GatewayRegistration gatewayRegistration;
 
     public SkipBoServer(int port) {
+        this(port, Transport.BLOCKING, 1);
+    }
+
+    public SkipBoServer(int port, Transport transport, int ioThreads) {
+        this(port, transport, ioThreads, GameController.DEFAULT_BOT_DELAY_MS);
+    }
+
+    public SkipBoServer(int port, Transport transport, int ioThreads, long botDelayMs) {
         this.port = port;
-        this.gameController = new GameController();
-        this.clients = new ArrayList<>();
+        this.transport = transport;
+        this.ioThreads = ioThreads;
+        if (transport == Transport.VIRTUAL) {
+            this.clientThreads = Thread.ofVirtual().name("client-", 0).factory();
+        } else {
+            this.clientThreads = Thread.ofPlatform().name("client-", 0).factory();
+        }
+        this.gameController = new GameController(botDelayMs);
+        this.clients = ConcurrentHashMap.newKeySet();
         this.running = false;
     }
 
+    // we set how the server treats clients that can't keep up, call before start()
+    public void configureBackpressure(SlowConsumerPolicy policy, int highWater, long writeDeadlineMs) {
+        gameController.configureBackpressure(policy, highWater, writeDeadlineMs);
+    }
+
+    // we PING clients that went quiet and drop them after the idle timeout (0 turns either off)
+    public void configureHeartbeat(long pingIntervalMs, long idleTimeoutMs) {
+        gameController.configureHeartbeat(pingIntervalMs, idleTimeoutMs);
+    }
+
+    // we answer METRICS~token and log the metrics every dumpIntervalMs (0 turns the dump off)
+    public void configureMetrics(String adminToken, long dumpIntervalMs) {
+        gameController.configureAdmin(adminToken);
+        this.metricsDumpMs = Math.max(0, dumpIntervalMs);
+    }
+
+    // we limit the queries and the state-changing commands per connection and second (0 turns a limit off)
+    public void configureRateLimits(double queryRate, double changeRate) {
+        gameController.configureRateLimits(queryRate, changeRate);
+    }
+
+    // we register on a gateway's backend port once we listen, it then sends us some of
+    // its games; secret is the gateway's --backend-secret (null if it has none)
+    public void configureGateway(String gatewayHost, int gatewayPort, String secret) {
+        this.gatewayRegistration = new GatewayRegistration(gatewayHost, gatewayPort, port, secret);
+    }
+
+    // every game journals its moves in directory (forced to disk every syncMs) and
+    // start() recovers the games a crashed server left there
+    public void configureJournal(Path directory, long syncMs) {
+        gameController.configureJournal(directory, syncMs);
+    }
+
+    // every finished game is appended to a replay file in directory (see replay.Replayer)
+    public void configureArchive(Path directory) {
+        gameController.configureArchive(directory);
+    }
+
+    // a dropped player that agreed on RESUME keeps their seat for waitMs (0 turns it off)
+    public void configureResumption(long waitMs) {
+        gameController.configureResumption(waitMs);
+    }
+
+    // we fill a waiting player's table with bots after botBackfillMs (0 turns it off)
+    public void configureMatchmaking(long botBackfillMs) {
+        gameController.configureMatchmaking(botBackfillMs);
+    }
+
     // we start the server and listen for connections
     public void start() {
+        ServerMetrics.startDumping(metricsDumpMs);
+        int recovered = gameController.recoverGames();
+        if (recovered > 0) {
+            ServerView.log("Recovered " + recovered + " game(s) from the journal");
+        }
+        if (transport == Transport.NIO) {
+            nioServer = new NioServer(port, gameController, ioThreads);
+            nioServer.onListening(this::listening);
+            nioServer.start();
+            return;
+        }
+
         running = true;
-        ServerView.log("Starting server on port " + port);
+        ServerView.log("Starting server on port " + port + " (" + transport.name().toLowerCase() + " threads)");
 
-        try (ServerSocket serverSocket = new ServerSocket(port)) {
+        try (ServerSocket serverSocket = new ServerSocket(port, ACCEPT_BACKLOG)) {
             ServerView.log("Server started! Waiting for clients...");
+            listening();
 
             while (running) {
                 try {
@@ -39,9 +135,16 @@ public class SkipBoServer {
                     // we create a handler for this client
                     ClientHandler handler = new ClientHandler(clientSocket, gameController);
                     clients.add(handler);
+                    gameController.watchIdle(handler);
 
-                    // we start the handler thread
-                    Thread thread = new Thread(handler);
+                    // we start the handler thread, run() disconnects before it returns
+                    Thread thread = clientThreads.newThread(() -> {
+                        try {
+                            handler.run();
+                        } finally {
+                            clients.remove(handler);
+                        }
+                    });
                     thread.start();
 
                 } catch (IOException e) {
@@ -56,35 +159,204 @@ public class SkipBoServer {
         }
     }
 
+    // the port is bound, from now on a gateway may send us players
+    private void listening() {
+        if (gatewayRegistration != null) {
+            gatewayRegistration.start();
+        }
+    }
+
     // we stop the server
     public void stop() {
-        running = false;
-        ServerView.log("Server stopping...");
+        if (gatewayRegistration != null) {
+            gatewayRegistration.stop();
+        }
+        if (nioServer != null) {
+            nioServer.stop();
+        } else {
+            running = false;
+            ServerView.log("Server stopping...");
 
-        // we close all client connections
-        for (ClientHandler client : clients) {
-            client.disconnect();
+            // we close all client connections
+            for (ClientHandler client : clients) {
+                client.disconnect();
+            }
         }
-        clients.clear();
+        gameController.shutdown();
+        ServerMetrics.stopDumping();
     }
 
     // main method to run the server
+    // usage: [port] [--transport=blocking|virtual|nio] [--io-threads=n] [--bot-delay=ms]
+    //        [--slow-policy=disconnect|resync|bot] [--outbound-hwm=lines] [--write-deadline=ms]
+    //        [--ping-interval=ms] [--idle-timeout=ms] [--bot-backfill=ms]
+    //        [--admin-token=secret] [--metrics-interval=ms] [--log-level=debug|info|warn|error] [--log-file=path]
+    //        [--query-rate=n] [--command-rate=n] [--gateway=host:port] [--gateway-secret=secret]
+    //        [--journal=dir] [--journal-sync=ms] [--archive=dir] [--resume-wait=ms]
     public static void main(String[] args) {
         int port = 7777; // default port
+        Transport transport = Transport.BLOCKING;
+        int ioThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        long botDelayMs = GameController.DEFAULT_BOT_DELAY_MS;
+        SlowConsumerPolicy slowPolicy = SlowConsumerPolicy.DISCONNECT;
+        int outboundHighWater = GameController.DEFAULT_OUTBOUND_HIGH_WATER;
+        long writeDeadlineMs = GameController.DEFAULT_WRITE_DEADLINE_MS;
+        long pingIntervalMs = GameController.DEFAULT_PING_INTERVAL_MS;
+        long idleTimeoutMs = GameController.DEFAULT_IDLE_TIMEOUT_MS;
+        long botBackfillMs = GameController.DEFAULT_BOT_BACKFILL_MS;
+        String adminToken = null;
+        long metricsDumpMs = 0;
+        String logLevel = "info";
+        Path logFile = null;
+        double queryRate = GameController.DEFAULT_QUERY_RATE;
+        double changeRate = GameController.DEFAULT_CHANGE_RATE;
+        String gateway = null;
+        String gatewaySecret = null;
+        Path journalDir = null;
+        long journalSyncMs = GameController.DEFAULT_JOURNAL_SYNC_MS;
+        Path archiveDir = null;
+        long resumeWaitMs = GameController.DEFAULT_RESUME_WAIT_MS;
 
-        if (args.length >= 1) {
-            try {
-                port = Integer.parseInt(args[0]);
-            } catch (NumberFormatException e) {
-                System.out.println("Invalid port, using default 7777");
+        for (String arg : args) {
+            if (arg.startsWith("--transport=")) {
+                String value = arg.substring("--transport=".length());
+                if (value.equalsIgnoreCase("nio")) {
+                    transport = Transport.NIO;
+                } else if (value.equalsIgnoreCase("virtual")) {
+                    transport = Transport.VIRTUAL;
+                } else if (!value.equalsIgnoreCase("blocking")) {
+                    System.out.println("Unknown transport " + value + ", using blocking");
+                }
+            } else if (arg.startsWith("--io-threads=")) {
+                try {
+                    ioThreads = Math.max(1, Integer.parseInt(arg.substring("--io-threads=".length())));
+                } catch (NumberFormatException e) {
+                    System.out.println("Invalid I/O thread count, using " + ioThreads);
+                }
+            } else if (arg.startsWith("--bot-delay=")) {
+                try {
+                    botDelayMs = Math.max(0, Long.parseLong(arg.substring("--bot-delay=".length())));
+                } catch (NumberFormatException e) {
+                    System.out.println("Invalid bot delay, using " + botDelayMs + " ms");
+                }
+            } else if (arg.startsWith("--slow-policy=")) {
+                String value = arg.substring("--slow-policy=".length());
+                try {
+                    slowPolicy = SlowConsumerPolicy.valueOf(value.toUpperCase());
+                } catch (IllegalArgumentException e) {
+                    System.out.println("Unknown slow consumer policy " + value + ", using disconnect");
+                }
+            } else if (arg.startsWith("--outbound-hwm=")) {
+                try {
+                    outboundHighWater = Integer.parseInt(arg.substring("--outbound-hwm=".length()));
+                } catch (NumberFormatException e) {
+                    System.out.println("Invalid high-water mark, using " + outboundHighWater + " lines");
+                }
+            } else if (arg.startsWith("--write-deadline=")) {
+                try {
+                    writeDeadlineMs = Long.parseLong(arg.substring("--write-deadline=".length()));
+                } catch (NumberFormatException e) {
+                    System.out.println("Invalid write deadline, using " + writeDeadlineMs + " ms");
+                }
+            } else if (arg.startsWith("--ping-interval=")) {
+                try {
+                    pingIntervalMs = Long.parseLong(arg.substring("--ping-interval=".length()));
+                } catch (NumberFormatException e) {
+                    System.out.println("Invalid ping interval, using " + pingIntervalMs + " ms");
+                }
+            } else if (arg.startsWith("--idle-timeout=")) {
+                try {
+                    idleTimeoutMs = Long.parseLong(arg.substring("--idle-timeout=".length()));
+                } catch (NumberFormatException e) {
+                    System.out.println("Invalid idle timeout, using " + idleTimeoutMs + " ms");
+                }
+            } else if (arg.startsWith("--bot-backfill=")) {
+                try {
+                    botBackfillMs = Long.parseLong(arg.substring("--bot-backfill=".length()));
+                } catch (NumberFormatException e) {
+                    System.out.println("Invalid bot backfill wait, using " + botBackfillMs + " ms");
+                }
+            } else if (arg.startsWith("--admin-token=")) {
+                adminToken = arg.substring("--admin-token=".length());
+            } else if (arg.startsWith("--metrics-interval=")) {
+                try {
+                    metricsDumpMs = Long.parseLong(arg.substring("--metrics-interval=".length()));
+                } catch (NumberFormatException e) {
+                    System.out.println("Invalid metrics interval, not dumping metrics");
+                }
+            } else if (arg.startsWith("--log-level=")) {
+                logLevel = arg.substring("--log-level=".length());
+            } else if (arg.startsWith("--log-file=")) {
+                logFile = Path.of(arg.substring("--log-file=".length()));
+            } else if (arg.startsWith("--query-rate=")) {
+                try {
+                    queryRate = Double.parseDouble(arg.substring("--query-rate=".length()));
+                } catch (NumberFormatException e) {
+                    System.out.println("Invalid query rate, using " + queryRate + " per second");
+                }
+            } else if (arg.startsWith("--command-rate=")) {
+                try {
+                    changeRate = Double.parseDouble(arg.substring("--command-rate=".length()));
+                } catch (NumberFormatException e) {
+                    System.out.println("Invalid command rate, using " + changeRate + " per second");
+                }
+            } else if (arg.startsWith("--gateway=")) {
+                gateway = arg.substring("--gateway=".length());
+            } else if (arg.startsWith("--gateway-secret=")) {
+                gatewaySecret = arg.substring("--gateway-secret=".length());
+            } else if (arg.startsWith("--journal=")) {
+                journalDir = Path.of(arg.substring("--journal=".length()));
+            } else if (arg.startsWith("--archive=")) {
+                archiveDir = Path.of(arg.substring("--archive=".length()));
+            } else if (arg.startsWith("--journal-sync=")) {
+                try {
+                    journalSyncMs = Long.parseLong(arg.substring("--journal-sync=".length()));
+                } catch (NumberFormatException e) {
+                    System.out.println("Invalid journal sync interval, using " + journalSyncMs + " ms");
+                }
+            } else if (arg.startsWith("--resume-wait=")) {
+                try {
+                    resumeWaitMs = Long.parseLong(arg.substring("--resume-wait=".length()));
+                } catch (NumberFormatException e) {
+                    System.out.println("Invalid resume wait, using " + resumeWaitMs + " ms");
+                }
+            } else {
+                try {
+                    port = Integer.parseInt(arg);
+                } catch (NumberFormatException e) {
+                    System.out.println("Invalid port, using default 7777");
+                }
             }
         }
 
+        ServerView.configure(logLevel, logFile);
+
         System.out.println("=================================");
         System.out.println("    Skip-Bo Game Server");
         System.out.println("=================================");
 
-        SkipBoServer server = new SkipBoServer(port);
+        SkipBoServer server = new SkipBoServer(port, transport, ioThreads, botDelayMs);
+        server.configureBackpressure(slowPolicy, outboundHighWater, writeDeadlineMs);
+        server.configureHeartbeat(pingIntervalMs, idleTimeoutMs);
+        server.configureMatchmaking(botBackfillMs);
+        server.configureRateLimits(queryRate, changeRate);
+        server.configureResumption(resumeWaitMs);
+        if (gateway != null) {
+            int colon = gateway.lastIndexOf(':');
+            try {
+                server.configureGateway(colon > 0 ? gateway.substring(0, colon) : "localhost",
+                        Integer.parseInt(gateway.substring(colon + 1)), gatewaySecret);
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid gateway " + gateway + ", not registering");
+            }
+        }
+        if (journalDir != null) {
+            server.configureJournal(journalDir, journalSyncMs);
+        }
+        if (archiveDir != null) {
+            server.configureArchive(archiveDir);
+        }
+        server.configureMetrics(adminToken, metricsDumpMs);
         server.start();
     }
 }
@@ -0,0 +1,8 @@
+package com.group29.skipbo.server;
+
+// we use this to decide what happens to a client that can't keep up with its messages
+public enum SlowConsumerPolicy {
+    RESYNC, // drop what is queued, send RESYNC, the client asks for TABLE and HAND again
+    DISCONNECT, // close the connection
+    BOT // a bot takes over the seat, then we close the connection
+}
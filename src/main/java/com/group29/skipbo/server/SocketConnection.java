@@ -0,0 +1,117 @@
+package com.group29.skipbo.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+
+// we use this for the blocking transports
+// a writer thread per socket (a virtual one, see ClientHandler) drains the queue,
+// so a client with a full TCP window only ever blocks its own writer, never the
+// table that broadcasts
+class SocketConnection implements ClientConnection {
+
+    private final Socket socket;
+    private final OutputStream out;
+    private final BlockingQueue<ByteBuffer> queue;
+    private final Semaphore flushRequests;
+    // grows to the largest batch we have written, only the writer thread uses it
+    private byte[] batch;
+    private volatile long pendingSince;
+    private volatile boolean closed;
+
+    SocketConnection(Socket socket, int capacity, ThreadFactory writerThreads) throws IOException {
+        this.socket = socket;
+        this.out = socket.getOutputStream();
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.flushRequests = new Semaphore(0);
+        this.batch = new byte[1024];
+        writerThreads.newThread(this::writeLoop).start();
+    }
+
+    @Override
+    public boolean offer(ByteBuffer frame) {
+        if (closed || !queue.offer(frame)) {
+            return false;
+        }
+        if (pendingSince == 0) {
+            pendingSince = System.nanoTime();
+        }
+        return true;
+    }
+
+    @Override
+    public void flush() {
+        flushRequests.release();
+    }
+
+    @Override
+    public int pendingLines() {
+        return queue.size();
+    }
+
+    @Override
+    public long pendingSince() {
+        return pendingSince;
+    }
+
+    // the writer only takes whole lines from the queue, so clearing it never cuts a line
+    @Override
+    public void replacePending(ByteBuffer frame) {
+        queue.clear();
+        pendingSince = 0;
+        offer(frame);
+    }
+
+    // we wait for a flush, then write everything queued with one write call
+    private void writeLoop() {
+        try {
+            while (!closed) {
+                flushRequests.acquire();
+                flushRequests.drainPermits();
+
+                int length = 0;
+                ByteBuffer frame;
+                while ((frame = queue.poll()) != null) {
+                    ByteBuffer view = frame.duplicate();
+                    int size = view.remaining();
+                    if (length + size > batch.length) {
+                        batch = Arrays.copyOf(batch, Math.max(batch.length * 2, length + size));
+                    }
+                    view.get(batch, length, size);
+                    length += size;
+                }
+                if (length > 0) {
+                    // pendingSince keeps its old value while this write blocks
+                    out.write(batch, 0, length);
+                    out.flush();
+                }
+                pendingSince = queue.isEmpty() ? 0 : System.nanoTime();
+            }
+        } catch (IOException e) {
+            // closing the socket makes the reader fail, which disconnects the client
+            close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        queue.clear();
+        flushRequests.release(); // wake the writer so it can stop
+        try {
+            if (!socket.isClosed()) {
+                socket.close();
+            }
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+}
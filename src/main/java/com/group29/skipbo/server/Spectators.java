@@ -0,0 +1,65 @@
+package com.group29.skipbo.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+// we use this for the connections watching one table (WATCH)
+// the table hands over the lines of each game event once its players have them,
+// and a mailbox on the fan-out pool (not the table's) queues them for every
+// watcher, so a table with a thousand watchers never keeps its players waiting
+// everything runs on that mailbox, in the order the table handed it over
+final class Spectators {
+
+    private final TableMailbox mailbox;
+    // only the mailbox touches it
+    private final List<ClientHandler> watchers;
+
+    Spectators(Executor fanoutPool) {
+        this.mailbox = new TableMailbox(fanoutPool);
+        this.watchers = new ArrayList<>();
+    }
+
+    // a new watcher gets the snapshot first, then every event handed over after it
+    void add(ClientHandler handler, List<String> snapshot) {
+        mailbox.execute(() -> {
+            // it may have left while the snapshot was on its way
+            if (!handler.isConnected()) {
+                return;
+            }
+            watchers.add(handler);
+            for (String line : snapshot) {
+                handler.queue(line);
+            }
+            handler.flush();
+        });
+    }
+
+    void remove(ClientHandler handler) {
+        mailbox.execute(() -> watchers.remove(handler));
+    }
+
+    // the lines of one game event, every watcher gets them in one write
+    void publish(List<EncodedLine> lines) {
+        mailbox.execute(() -> {
+            long started = System.nanoTime();
+            for (ClientHandler watcher : watchers) {
+                for (EncodedLine line : lines) {
+                    watcher.queue(line.encodedFor(watcher));
+                }
+                watcher.flush();
+            }
+            ServerMetrics.recordSpectatorFanout(System.nanoTime() - started);
+        });
+    }
+
+    // the game is over, after the last event the watchers stop watching the table
+    void close(GameTable table) {
+        mailbox.execute(() -> {
+            for (ClientHandler watcher : watchers) {
+                watcher.stopWatching(table);
+            }
+            watchers.clear();
+        });
+    }
+}
@@ -0,0 +1,54 @@
+package com.group29.skipbo.server;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// we use this as the mailbox of one table
+// tasks run one at a time in the order they were sent, but on whatever pool
+// thread is free, so a table never needs a lock and tables spread over all cores
+class TableMailbox implements Executor {
+
+    // after this many tasks we give the pool thread back so busy tables can't starve others
+    private static final int BATCH_SIZE = 64;
+
+    private final Executor pool;
+    private final Queue<Runnable> tasks;
+    private final AtomicBoolean scheduled;
+
+    TableMailbox(Executor pool) {
+        this.pool = pool;
+        this.tasks = new ConcurrentLinkedQueue<>();
+        this.scheduled = new AtomicBoolean(false);
+    }
+
+    // we queue a task, safe to call from any thread and never blocks
+    @Override
+    public void execute(Runnable task) {
+        tasks.add(task);
+        if (scheduled.compareAndSet(false, true)) {
+            pool.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            Runnable task = tasks.poll();
+            if (task == null) {
+                break;
+            }
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                ServerView.logError("Table task failed: " + e);
+            }
+        }
+
+        scheduled.set(false);
+        // a task may have arrived after our last poll, so we check once more
+        if (!tasks.isEmpty() && scheduled.compareAndSet(false, true)) {
+            pool.execute(this::drain);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.group29.skipbo.server;
+
+import com.group29.skipbo.card.Card;
+import com.group29.skipbo.card.DiscardPile;
+import com.group29.skipbo.game.Game;
+import com.group29.skipbo.player.Player;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+// we use this to keep the rendered TABLE and HAND answers of one game
+// a view is built on first use and kept until GameTable tells us that part changed
+// (it hears about every change from Player.ChangeListener), so answering a poll
+// is a reference copy; only the table's mailbox touches it
+final class TableViews {
+
+    private final Game game;
+
+    // building~players, and the encoded TABLE line for text and binary clients
+    private String table;
+    private ByteBuffer tableText;
+    private ByteBuffer tableBinary;
+
+    // per seat: the cards, the whole HAND line, and that line encoded for text and binary clients
+    private final String[] hands;
+    private final String[] handMessages;
+    private final ByteBuffer[] handTexts;
+    private final ByteBuffer[] handBinaries;
+
+    TableViews(Game game, int seats) {
+        this.game = game;
+        this.hands = new String[seats];
+        this.handMessages = new String[seats];
+        this.handTexts = new ByteBuffer[seats];
+        this.handBinaries = new ByteBuffer[seats];
+    }
+
+    // ===== INVALIDATION =====
+
+    void tableChanged() {
+        table = null;
+        tableText = null;
+        tableBinary = null;
+    }
+
+    void handChanged(int seat) {
+        hands[seat] = null;
+        handMessages[seat] = null;
+        handTexts[seat] = null;
+        handBinaries[seat] = null;
+    }
+
+    // ===== VIEWS =====
+
+    // building~players, the fields of a TABLE line
+    String table() {
+        if (table == null) {
+            table = formatTable();
+        }
+        return table;
+    }
+
+    // the cards of one seat, the field of a HAND line
+    String hand(int seat) {
+        if (hands[seat] == null) {
+            hands[seat] = formatHand(game.getPlayers().get(seat));
+        }
+        return hands[seat];
+    }
+
+    // HAND~cards for one seat, the line the table logs and sends
+    String handMessage(int seat) {
+        if (handMessages[seat] == null) {
+            handMessages[seat] = "HAND~" + hand(seat);
+        }
+        return handMessages[seat];
+    }
+
+    // TABLE~building~players encoded for a client
+    ByteBuffer tableLine(boolean binary) {
+        if (binary) {
+            if (tableBinary == null) {
+                tableBinary = ClientConnection.encodeBinary("TABLE~" + table());
+            }
+            return tableBinary;
+        }
+        if (tableText == null) {
+            tableText = ClientConnection.encode("TABLE~" + table());
+        }
+        return tableText;
+    }
+
+    // HAND~cards encoded for the client at this seat
+    ByteBuffer handLine(int seat, boolean binary) {
+        if (binary) {
+            if (handBinaries[seat] == null) {
+                handBinaries[seat] = ClientConnection.encodeBinary(handMessage(seat));
+            }
+            return handBinaries[seat];
+        }
+        if (handTexts[seat] == null) {
+            handTexts[seat] = ClientConnection.encode(handMessage(seat));
+        }
+        return handTexts[seat];
+    }
+
+    // ===== FORMATTING =====
+
+    private String formatTable() {
+        // we format building piles
+        StringBuilder line = new StringBuilder(64);
+        for (int i = 0; i < Game.NUM_BUILDING_PILES; i++) {
+            if (i > 0)
+                line.append(".");
+            line.append(formatCard(game.getBuildingPile(i).getTopCard()));
+        }
+        line.append("~");
+
+        // we format each player's discards
+        List<Player> players = game.getPlayers();
+        for (int p = 0; p < players.size(); p++) {
+            if (p > 0)
+                line.append(",");
+            line.append(players.get(p).getName());
+            for (DiscardPile dp : players.get(p).getDiscardPiles()) {
+                line.append(".");
+                line.append(formatCard(dp.getTopCard()));
+            }
+        }
+        return line.toString();
+    }
+
+    // we format a hand as comma-separated cards
+    private static String formatHand(Player player) {
+        StringBuilder sb = new StringBuilder();
+        boolean first = true;
+        for (Card card : player.getHand().getCards()) {
+            if (!first)
+                sb.append(",");
+            first = false;
+            sb.append(formatCard(card));
+        }
+        return sb.toString();
+    }
+
+    // we format a card as a string with color label (X for no card),
+    // every card keeps its token so this is only a lookup
+    static String formatCard(Card card) {
+        return card == null ? "X" : card.getToken();
+    }
+}
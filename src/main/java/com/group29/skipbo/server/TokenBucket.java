@@ -0,0 +1,36 @@
+package com.group29.skipbo.server;
+
+// we use this to limit how fast one connection may send a kind of command
+// the bucket holds time instead of tokens: it fills up with the nanoseconds that
+// pass (up to burst tokens' worth) and every command takes one token's worth,
+// so a check is a subtraction and a compare, no timer and no allocation
+// only the connection's reading thread uses it
+final class TokenBucket {
+
+    private final long nanosPerToken;
+    private final long capacity;
+    private long credit;
+    private long lastRefill;
+
+    // perSecond tokens come back every second, at most burst of them are saved up
+    TokenBucket(double perSecond, int burst, long now) {
+        this.nanosPerToken = Math.max(1, (long) (1_000_000_000L / perSecond));
+        this.capacity = nanosPerToken * Math.max(1, burst);
+        this.credit = capacity;
+        this.lastRefill = now;
+    }
+
+    // we take one token if there is one, now is System.nanoTime()
+    boolean tryTake(long now) {
+        long elapsed = now - lastRefill;
+        if (elapsed > 0) {
+            credit = Math.min(capacity, credit + elapsed);
+            lastRefill = now;
+        }
+        if (credit < nanosPerToken) {
+            return false;
+        }
+        credit -= nanosPerToken;
+        return true;
+    }
+}
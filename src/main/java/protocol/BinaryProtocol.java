@@ -0,0 +1,743 @@
+package protocol;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compact binary form of the text protocol
+ * Used on a connection once HELLO and WELCOME both listed Feature.BINARY.
+ * A frame is a 2 byte big-endian length followed by that many bytes: one opcode
+ * and the fields of the command. Cards and positions are one byte each, names are
+ * a length byte followed by UTF-8. A line with one number after its command's fields
+ * (the sequence number of a game event) sets SEQUENCED in the opcode and carries the
+ * number as 4 bytes right after it. A line that doesn't fit its command's fields is
+ * sent as RAW text so nothing is ever lost.
+ */
+public final class BinaryProtocol {
+
+    public static final int HEADER_LENGTH = 2;
+    public static final int MAX_FRAME_LENGTH = 8 * 1024;
+
+    public static final byte RAW = 0;
+    // set in the opcode byte when a 4 byte sequence number follows it (see Feature.RESUME),
+    // it is the line's last field after the command's own
+    public static final int SEQUENCED = 0x80;
+
+    // client commands
+    public static final byte HELLO = 1;
+    public static final byte GAME = 2;
+    public static final byte HAND = 3;
+    public static final byte TABLE = 4;
+    public static final byte PLAY = 5;
+    public static final byte END = 6;
+    public static final byte ADDBOT = 7;
+    // heartbeat, both sides send these
+    public static final byte PING = 8;
+    public static final byte PONG = 9;
+
+    // server commands
+    public static final byte WELCOME = 32;
+    public static final byte QUEUE = 33;
+    public static final byte START = 34;
+    public static final byte HAND_CARDS = 35;
+    public static final byte STOCK = 36;
+    public static final byte TURN = 37;
+    public static final byte PLAYED = 38;
+    public static final byte DISCARD = 39;
+    public static final byte TABLE_STATE = 40;
+    public static final byte WINNER = 41;
+    public static final byte ROUND = 42;
+    public static final byte ERROR = 43;
+    public static final byte BOT_ADDED = 44;
+    public static final byte RESYNC = 45;
+    public static final byte TABLE_DELTA = 46;
+    public static final byte NOT_MODIFIED = 47;
+
+    // position kinds (high nibble of a position byte)
+    public static final int POSITION_STOCK = 1;
+    public static final int POSITION_HAND = 2;
+    public static final int POSITION_DISCARD = 3;
+    public static final int POSITION_BUILDING = 4;
+
+    // low nibble of a card or position byte
+    public static final int VALUE_SKIPBO = 13;
+    public static final int VALUE_NONE = 14;
+    public static final int VALUE_ABSENT = 15;
+
+    private static final int NO_SCORE = 0xFFFF;
+    private static final String COLORS = "?RGBY";
+    private static final String POSITION_KINDS = "?SHDB";
+    private static final char SEPARATOR = Command.SEPERATOR.charAt(0);
+
+    private enum Field {
+        TEXT, // length byte + UTF-8
+        NUMBER, // 0..255
+        CODE, // three digit error code
+        CARD, // one card byte
+        CARDS, // comma list of cards
+        POSITION, // one position byte
+        NAMES, // comma list of names
+        PILES, // dot list of cards
+        PLAYER_PILES, // comma list of name.card.card...
+        SCORES, // comma list of name or name.score
+        VERSION, // 0..2^31-1 as 4 bytes
+        SLOTS // comma list of B.pile.card or D.seat.pile.card
+    }
+
+    private static final class Schema {
+        final byte opcode;
+        final String word;
+        final Field[] fields;
+
+        Schema(byte opcode, String word, Field... fields) {
+            this.opcode = opcode;
+            this.word = word;
+            this.fields = fields;
+        }
+    }
+
+    private static final Schema[] BY_OPCODE = new Schema[64];
+    private static final Map<String, Schema> CLIENT = new HashMap<>();
+    private static final Map<String, Schema> SERVER = new HashMap<>();
+
+    static {
+        client(new Schema(HELLO, "HELLO", Field.TEXT, Field.TEXT));
+        client(new Schema(GAME, "GAME", Field.NUMBER));
+        client(new Schema(HAND, "HAND", Field.VERSION));
+        client(new Schema(TABLE, "TABLE", Field.VERSION));
+        client(new Schema(PLAY, "PLAY", Field.POSITION, Field.POSITION));
+        client(new Schema(END, "END"));
+        client(new Schema(ADDBOT, "ADDBOT"));
+        client(new Schema(PING, "PING"));
+        client(new Schema(PONG, "PONG"));
+
+        server(new Schema(WELCOME, "WELCOME", Field.TEXT, Field.TEXT));
+        server(new Schema(QUEUE, "QUEUE"));
+        server(new Schema(START, "START", Field.NAMES));
+        server(new Schema(HAND_CARDS, "HAND", Field.CARDS, Field.VERSION));
+        server(new Schema(STOCK, "STOCK", Field.TEXT, Field.CARD));
+        server(new Schema(TURN, "TURN", Field.TEXT));
+        server(new Schema(PLAYED, "PLAY", Field.TEXT, Field.POSITION, Field.POSITION, Field.NUMBER));
+        server(new Schema(DISCARD, "DISCARD", Field.TEXT, Field.CARD, Field.NUMBER));
+        server(new Schema(TABLE_STATE, "TABLE", Field.PILES, Field.PLAYER_PILES, Field.VERSION));
+        server(new Schema(WINNER, "WINNER", Field.SCORES));
+        server(new Schema(ROUND, "ROUND", Field.SCORES));
+        server(new Schema(ERROR, "ERROR", Field.CODE));
+        server(new Schema(BOT_ADDED, "BOT_ADDED"));
+        server(new Schema(RESYNC, "RESYNC"));
+        server(new Schema(TABLE_DELTA, "TABLEDELTA", Field.VERSION, Field.VERSION, Field.SLOTS));
+        server(new Schema(NOT_MODIFIED, "NOTMODIFIED", Field.TEXT, Field.VERSION));
+    }
+
+    private static void client(Schema schema) {
+        CLIENT.put(schema.word, schema);
+        BY_OPCODE[schema.opcode] = schema;
+    }
+
+    private static void server(Schema schema) {
+        SERVER.put(schema.word, schema);
+        BY_OPCODE[schema.opcode] = schema;
+    }
+
+    private BinaryProtocol() {
+    }
+
+    // ===== ENCODING =====
+
+    /**
+     * Method for turning one text protocol line into a binary frame
+     * HAND, TABLE and PLAY exist in both directions, a line that doesn't fit the
+     * client command (by field count or field values) is tried as the server one.
+     * The line is read in place, field by field, without splitting it up first
+     * @param line a protocol line without the newline
+     * @return the frame including its length header
+     */
+    public static byte[] encode(String line) {
+        int[] ends = fieldEnds(line);
+        String word = line.substring(0, ends[0]);
+        Schema client = CLIENT.get(word);
+        Schema server = SERVER.get(word);
+        if (client == null && server == null) {
+            word = word.toUpperCase();
+            client = CLIENT.get(word);
+            server = SERVER.get(word);
+        }
+
+        FrameWriter out = new FrameWriter(HEADER_LENGTH + 5 + line.length());
+        // a sequence number is only read into the line if no command fits it without one
+        if (encode(out, client, line, ends, false) || encode(out, server, line, ends, false)
+                || encode(out, client, line, ends, true) || encode(out, server, line, ends, true)) {
+            return out.finish();
+        }
+        out.size = HEADER_LENGTH;
+        out.write(RAW);
+        out.write(line.getBytes(StandardCharsets.UTF_8));
+        return out.finish();
+    }
+
+    // false if there is no schema or the line doesn't fit it,
+    // a sequenced line has one number more than the schema has fields
+    private static boolean encode(FrameWriter out, Schema schema, String line, int[] ends, boolean sequenced) {
+        int fields = ends.length - 1;
+        if (schema == null || fields > schema.fields.length + (sequenced ? 1 : 0)
+                || sequenced && fields != schema.fields.length + 1) {
+            return false;
+        }
+        out.size = HEADER_LENGTH;
+        if (sequenced) {
+            int sequence = parseNumber(line, ends[fields - 1] + 1, ends[fields], Integer.MAX_VALUE);
+            if (sequence < 1) {
+                return false;
+            }
+            out.write(schema.opcode | SEQUENCED);
+            out.writeInt(sequence);
+            fields--;
+        } else {
+            out.write(schema.opcode);
+        }
+        for (int i = 1; i <= fields; i++) {
+            if (!writeField(out, schema.fields[i - 1], line, ends[i - 1] + 1, ends[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // where each field of the line ends (the command word is field 0)
+    private static int[] fieldEnds(String line) {
+        int[] ends = new int[count(line, SEPARATOR, 0, line.length()) + 1];
+        int field = 0;
+        for (int i = line.indexOf(SEPARATOR); i >= 0; i = line.indexOf(SEPARATOR, i + 1)) {
+            ends[field++] = i;
+        }
+        ends[field] = line.length();
+        return ends;
+    }
+
+    private static boolean writeField(FrameWriter out, Field field, String line, int start, int end) {
+        switch (field) {
+            case TEXT:
+                return writeText(out, line, start, end);
+            case NUMBER: {
+                int number = parseNumber(line, start, end, 255);
+                if (number < 0) {
+                    return false;
+                }
+                out.write(number);
+                return true;
+            }
+            case CODE: {
+                int code = end - start == 3 ? parseDigits(line, start, end, 255) : -1;
+                if (code < 0) {
+                    return false;
+                }
+                out.write(code);
+                return true;
+            }
+            case CARD:
+                return writePacked(out, packCard(line, start, end));
+            case POSITION:
+                return writePacked(out, packPosition(line, start, end));
+            case CARDS:
+            case PILES: {
+                char separator = field == Field.CARDS ? ',' : '.';
+                int items = writeCount(out, line, separator, start, end);
+                if (items < 0) {
+                    return false;
+                }
+                for (int item = 0, from = start; item < items; item++) {
+                    int to = indexOf(line, separator, from, end);
+                    if (!writePacked(out, packCard(line, from, to))) {
+                        return false;
+                    }
+                    from = to + 1;
+                }
+                return true;
+            }
+            case NAMES: {
+                int items = writeCount(out, line, ',', start, end);
+                if (items < 0) {
+                    return false;
+                }
+                for (int item = 0, from = start; item < items; item++) {
+                    int to = indexOf(line, ',', from, end);
+                    if (!writeText(out, line, from, to)) {
+                        return false;
+                    }
+                    from = to + 1;
+                }
+                return true;
+            }
+            case PLAYER_PILES: {
+                int items = writeCount(out, line, ',', start, end);
+                if (items < 0) {
+                    return false;
+                }
+                for (int item = 0, from = start; item < items; item++) {
+                    int to = indexOf(line, ',', from, end);
+                    // name.card.card...
+                    int dot = indexOf(line, '.', from, to);
+                    int piles = count(line, '.', from, to);
+                    if (!writeText(out, line, from, dot) || piles > 255) {
+                        return false;
+                    }
+                    out.write(piles);
+                    while (dot < to) {
+                        int next = indexOf(line, '.', dot + 1, to);
+                        if (!writePacked(out, packCard(line, dot + 1, next))) {
+                            return false;
+                        }
+                        dot = next;
+                    }
+                    from = to + 1;
+                }
+                return true;
+            }
+            case SCORES: {
+                int items = writeCount(out, line, ',', start, end);
+                if (items < 0) {
+                    return false;
+                }
+                for (int item = 0, from = start; item < items; item++) {
+                    int to = indexOf(line, ',', from, end);
+                    int dot = line.lastIndexOf('.', to - 1);
+                    if (dot < from) {
+                        dot = -1;
+                    }
+                    int score = dot < 0 ? -1 : parseNumber(line, dot + 1, to, NO_SCORE - 1);
+                    if (!writeText(out, line, from, score < 0 ? to : dot)) {
+                        return false;
+                    }
+                    if (score < 0) {
+                        score = NO_SCORE;
+                    }
+                    out.write(score >>> 8);
+                    out.write(score);
+                    from = to + 1;
+                }
+                return true;
+            }
+            case VERSION: {
+                int version = parseNumber(line, start, end, Integer.MAX_VALUE);
+                if (version < 0) {
+                    return false;
+                }
+                out.writeInt(version);
+                return true;
+            }
+            case SLOTS: {
+                // a slot is one byte: building piles 0-3, then 4 discard piles per seat
+                int items = writeCount(out, line, ',', start, end);
+                if (items < 0) {
+                    return false;
+                }
+                for (int item = 0, from = start; item < items; item++) {
+                    int to = indexOf(line, ',', from, end);
+                    int dots = count(line, '.', from, to);
+                    int first = indexOf(line, '.', from, to);
+                    int second = indexOf(line, '.', first + 1, to);
+                    int last = line.lastIndexOf('.', to - 1);
+                    int slot = -1;
+                    if (dots == 2 && first == from + 1 && line.charAt(from) == 'B') {
+                        slot = parseNumber(line, first + 1, second, 3);
+                    } else if (dots == 3 && first == from + 1 && line.charAt(from) == 'D') {
+                        int seat = parseNumber(line, first + 1, second, 5);
+                        int pile = parseNumber(line, second + 1, last, 3);
+                        slot = seat < 0 || pile < 0 ? -1 : 4 + seat * 4 + pile;
+                    }
+                    int card = dots < 2 ? -1 : packCard(line, last + 1, to);
+                    if (slot < 0 || card < 0) {
+                        return false;
+                    }
+                    out.write(slot);
+                    out.write(card);
+                    from = to + 1;
+                }
+                return true;
+            }
+            default:
+                return false;
+        }
+    }
+
+    // the number of items of a list field, an empty field is an empty list (like an empty hand)
+    private static int writeCount(FrameWriter out, String line, char separator, int start, int end) {
+        int items = start == end ? 0 : count(line, separator, start, end) + 1;
+        if (items > 255) {
+            return -1;
+        }
+        out.write(items);
+        return items;
+    }
+
+    private static boolean writeText(FrameWriter out, String line, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (line.charAt(i) >= 0x80) {
+                byte[] bytes = line.substring(start, end).getBytes(StandardCharsets.UTF_8);
+                if (bytes.length > 255) {
+                    return false;
+                }
+                out.write(bytes.length);
+                out.write(bytes);
+                return true;
+            }
+        }
+        // plain ASCII, one byte per char
+        if (end - start > 255) {
+            return false;
+        }
+        out.write(end - start);
+        for (int i = start; i < end; i++) {
+            out.write(line.charAt(i));
+        }
+        return true;
+    }
+
+    private static boolean writePacked(FrameWriter out, int packed) {
+        if (packed < 0) {
+            return false;
+        }
+        out.write(packed);
+        return true;
+    }
+
+    // the index of c between from and end, or end
+    private static int indexOf(String line, char c, int from, int end) {
+        int index = line.indexOf(c, from);
+        return index < 0 || index > end ? end : index;
+    }
+
+    private static int count(String line, char c, int from, int end) {
+        int count = 0;
+        for (int i = line.indexOf(c, from); i >= 0 && i < end; i = line.indexOf(c, i + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Method for packing a card token (X, SB, 7 or 7-R) into one byte
+     * The low nibble is the number (13 for Skip-Bo, 0 for no card), the high nibble the color
+     * @return the byte value or -1 if the token is no card
+     */
+    public static int packCard(String token) {
+        return packCard(token, 0, token.length());
+    }
+
+    private static int packCard(String line, int start, int end) {
+        if (end - start == 1 && line.charAt(start) == 'X') {
+            return 0;
+        }
+        if (end - start == 2 && line.startsWith("SB", start)) {
+            return VALUE_SKIPBO;
+        }
+        int dash = indexOf(line, '-', start, end);
+        int number = parseNumber(line, start, dash, 12);
+        if (number < 1) {
+            return -1;
+        }
+        if (dash == end) {
+            return number;
+        }
+        int color = end == dash + 2 ? COLORS.indexOf(line.charAt(dash + 1)) : -1;
+        return color > 0 ? number | color << 4 : -1;
+    }
+
+    /**
+     * Method for packing a position token (S, D, H.3, D.1, B.0, H.SB) into one byte
+     * The high nibble is the kind, the low nibble the value (15 when there is none)
+     * @return the byte value or -1 if the token is no position
+     */
+    public static int packPosition(String token) {
+        return packPosition(token, 0, token.length());
+    }
+
+    private static int packPosition(String line, int start, int end) {
+        if (start == end) {
+            return -1;
+        }
+        int kind = POSITION_KINDS.indexOf(Character.toUpperCase(line.charAt(start)));
+        if (kind < 1) {
+            return -1;
+        }
+        if (end - start == 1) {
+            return kind << 4 | VALUE_ABSENT;
+        }
+        if (line.charAt(start + 1) != '.') {
+            return -1;
+        }
+        int value = start + 2;
+        int packed;
+        if (end - value == 2 && line.startsWith("SB", value)) {
+            packed = VALUE_SKIPBO;
+        } else if (end - value == 1 && line.charAt(value) == 'X') {
+            packed = VALUE_NONE;
+        } else {
+            packed = parseNumber(line, value, end, 12);
+        }
+        return packed < 0 ? -1 : kind << 4 | packed;
+    }
+
+    // a number without sign or leading zeros (so decoding gives the same text back)
+    private static int parseNumber(String text, int start, int end, int max) {
+        if (end - start > 1 && text.charAt(start) == '0') {
+            return -1;
+        }
+        return parseDigits(text, start, end, max);
+    }
+
+    private static int parseDigits(String text, int start, int end, int max) {
+        if (start >= end || end - start > 10) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value <= max ? (int) value : -1;
+    }
+
+    // the bytes of one frame, the length header is filled in at the end
+    private static final class FrameWriter {
+        byte[] bytes;
+        int size;
+
+        FrameWriter(int capacity) {
+            this.bytes = new byte[capacity];
+            this.size = HEADER_LENGTH;
+        }
+
+        void write(int b) {
+            if (size == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            bytes[size++] = (byte) b;
+        }
+
+        void write(byte[] b) {
+            if (size + b.length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + b.length));
+            }
+            System.arraycopy(b, 0, bytes, size, b.length);
+            size += b.length;
+        }
+
+        void writeInt(int value) {
+            write(value >>> 24);
+            write(value >>> 16);
+            write(value >>> 8);
+            write(value);
+        }
+
+        byte[] finish() {
+            int length = size - HEADER_LENGTH;
+            bytes[0] = (byte) (length >>> 8);
+            bytes[1] = (byte) length;
+            return size == bytes.length ? bytes : Arrays.copyOf(bytes, size);
+        }
+    }
+
+    // ===== DECODING =====
+
+    /**
+     * Method for reading the length header of a frame
+     * @return the length of the frame body
+     */
+    public static int readLength(byte high, byte low) {
+        return (high & 0xFF) << 8 | (low & 0xFF);
+    }
+
+    /**
+     * Method for turning a frame body back into its text line
+     * @param body the bytes after the length header, position at the opcode
+     * @throws ProtocolException if the body is not a valid frame
+     */
+    public static String decode(ByteBuffer body) throws ProtocolException {
+        if (!body.hasRemaining()) {
+            throw new ProtocolException("Empty frame");
+        }
+        int opcode = body.get() & 0xFF;
+        if (opcode == RAW) {
+            byte[] text = new byte[body.remaining()];
+            body.get(text);
+            return new String(text, StandardCharsets.UTF_8);
+        }
+        boolean sequenced = (opcode & SEQUENCED) != 0;
+        opcode &= ~SEQUENCED;
+        Schema schema = opcode < BY_OPCODE.length ? BY_OPCODE[opcode] : null;
+        if (schema == null) {
+            throw new ProtocolException("Unknown opcode " + opcode);
+        }
+
+        StringBuilder line = new StringBuilder(schema.word);
+        int sequence;
+        try {
+            sequence = sequenced ? body.getInt() : 0;
+            int i = 0;
+            for (; i < schema.fields.length && body.hasRemaining(); i++) {
+                line.append(Command.SEPERATOR);
+                readField(body, schema.fields[i], line);
+            }
+            if (sequenced && (i < schema.fields.length || sequence < 1)) {
+                throw new ProtocolException("Malformed " + schema.word + " frame");
+            }
+        } catch (RuntimeException e) {
+            throw new ProtocolException("Malformed " + schema.word + " frame");
+        }
+        if (body.hasRemaining()) {
+            throw new ProtocolException("Trailing bytes in " + schema.word + " frame");
+        }
+        if (sequenced) {
+            line.append(Command.SEPERATOR).append(sequence);
+        }
+        return line.toString();
+    }
+
+    private static void readField(ByteBuffer body, Field field, StringBuilder line) throws ProtocolException {
+        switch (field) {
+            case TEXT:
+                readText(body, line);
+                break;
+            case NUMBER:
+                line.append(body.get() & 0xFF);
+                break;
+            case CODE: {
+                int code = body.get() & 0xFF;
+                line.append(code < 100 ? (code < 10 ? "00" : "0") : "").append(code);
+                break;
+            }
+            case CARD:
+                appendCard(line, body.get() & 0xFF);
+                break;
+            case POSITION:
+                appendPosition(line, body.get() & 0xFF);
+                break;
+            case CARDS:
+            case PILES: {
+                int count = body.get() & 0xFF;
+                for (int i = 0; i < count; i++) {
+                    if (i > 0) {
+                        line.append(field == Field.CARDS ? Command.LIST_SEPERATOR : Command.VALUE_SEPERATOR);
+                    }
+                    appendCard(line, body.get() & 0xFF);
+                }
+                break;
+            }
+            case NAMES: {
+                int count = body.get() & 0xFF;
+                for (int i = 0; i < count; i++) {
+                    if (i > 0) {
+                        line.append(Command.LIST_SEPERATOR);
+                    }
+                    readText(body, line);
+                }
+                break;
+            }
+            case PLAYER_PILES: {
+                int count = body.get() & 0xFF;
+                for (int i = 0; i < count; i++) {
+                    if (i > 0) {
+                        line.append(Command.LIST_SEPERATOR);
+                    }
+                    readText(body, line);
+                    int piles = body.get() & 0xFF;
+                    for (int p = 0; p < piles; p++) {
+                        line.append(Command.VALUE_SEPERATOR);
+                        appendCard(line, body.get() & 0xFF);
+                    }
+                }
+                break;
+            }
+            case SCORES: {
+                int count = body.get() & 0xFF;
+                for (int i = 0; i < count; i++) {
+                    if (i > 0) {
+                        line.append(Command.LIST_SEPERATOR);
+                    }
+                    readText(body, line);
+                    int score = (body.get() & 0xFF) << 8 | (body.get() & 0xFF);
+                    if (score != NO_SCORE) {
+                        line.append(Command.VALUE_SEPERATOR).append(score);
+                    }
+                }
+                break;
+            }
+            case VERSION: {
+                int version = body.getInt();
+                if (version < 0) {
+                    throw new ProtocolException("Invalid version " + version);
+                }
+                line.append(version);
+                break;
+            }
+            case SLOTS: {
+                int count = body.get() & 0xFF;
+                for (int i = 0; i < count; i++) {
+                    if (i > 0) {
+                        line.append(Command.LIST_SEPERATOR);
+                    }
+                    int slot = body.get() & 0xFF;
+                    if (slot < 4) {
+                        line.append("B.").append(slot);
+                    } else {
+                        line.append("D.").append((slot - 4) / 4).append('.').append((slot - 4) % 4);
+                    }
+                    line.append(Command.VALUE_SEPERATOR);
+                    appendCard(line, body.get() & 0xFF);
+                }
+                break;
+            }
+        }
+    }
+
+    private static void readText(ByteBuffer body, StringBuilder line) {
+        int length = body.get() & 0xFF;
+        byte[] text = new byte[length];
+        body.get(text);
+        line.append(new String(text, StandardCharsets.UTF_8));
+    }
+
+    private static void appendCard(StringBuilder line, int packed) throws ProtocolException {
+        int number = packed & 0x0F;
+        int color = packed >>> 4;
+        if (packed == 0) {
+            line.append('X');
+        } else if (packed == VALUE_SKIPBO) {
+            line.append("SB");
+        } else if (number >= 1 && number <= 12 && color < COLORS.length()) {
+            line.append(number);
+            if (color > 0) {
+                line.append('-').append(COLORS.charAt(color));
+            }
+        } else {
+            throw new ProtocolException("Invalid card byte " + packed);
+        }
+    }
+
+    private static void appendPosition(StringBuilder line, int packed) throws ProtocolException {
+        int kind = packed >>> 4;
+        int value = packed & 0x0F;
+        if (kind < 1 || kind >= POSITION_KINDS.length()) {
+            throw new ProtocolException("Invalid position byte " + packed);
+        }
+        line.append(POSITION_KINDS.charAt(kind));
+        if (value == VALUE_ABSENT) {
+            return;
+        }
+        line.append(Command.VALUE_SEPERATOR);
+        if (value == VALUE_SKIPBO) {
+            line.append("SB");
+        } else if (value == VALUE_NONE) {
+            line.append('X');
+        } else {
+            line.append(value);
+        }
+    }
+}
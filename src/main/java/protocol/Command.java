@@ -7,4 +7,12 @@ public interface Command {
     static final String VALUE_SEPERATOR = ".";
 
     String transformToProtocolString();
+
+    /**
+     * The same command as one length-prefixed binary frame, for connections that
+     * agreed on Feature.BINARY
+     */
+    default byte[] transformToBinary() {
+        return BinaryProtocol.encode(transformToProtocolString());
+    }
 }
@@ -9,9 +9,22 @@ import protocol.Command;
 public class Hand implements Command {
 
     public static final String COMMAND = "HAND";
+    // the state version of the cards in your hand we already have, -1 to always get it in full
+    public int version;
+
+    public Hand() {
+        this(-1);
+    }
+
+    public Hand(int version) {
+        this.version = version;
+    }
 
     @Override
     public String transformToProtocolString() {
-        return COMMAND;
+        if (version < 0) {
+            return COMMAND;
+        }
+        return COMMAND + Command.SEPERATOR + this.version;
     }
 }
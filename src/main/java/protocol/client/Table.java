@@ -9,9 +9,22 @@ import protocol.Command;
 public class Table implements Command {
 
     public static final String COMMAND = "TABLE";
+    // the state version of the table we already have, -1 to always get it in full
+    public int version;
+
+    public Table() {
+        this(-1);
+    }
+
+    public Table(int version) {
+        this.version = version;
+    }
 
     @Override
     public String transformToProtocolString() {
-        return COMMAND;
+        if (version < 0) {
+            return COMMAND;
+        }
+        return COMMAND + Command.SEPERATOR + this.version;
     }
 }
@@ -7,7 +7,8 @@ public enum ErrorCode {
     PLAYER_DISCONNECTED("103"),
     INVALID_COMMAND("204"),
     COMMAND_NOT_ALLOWED("205"),
-    INVALID_MOVE("206");
+    INVALID_MOVE("206"),
+    RATE_LIMITED("207");
 
     private String code;
 
@@ -3,7 +3,10 @@ package protocol.common;
 public enum Feature {
     CHAT('C'),
     LOBBY('L'),
-    MASTER('M');
+    MASTER('M'),
+    BINARY('B'),
+    TABLE_DELTA('T'),
+    RESUME('R');
 
     private char letter;
     Feature(char letter){
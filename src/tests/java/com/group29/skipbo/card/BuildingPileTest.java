@@ -2,6 +2,9 @@ package com.group29.skipbo.card;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class BuildingPileTest {
@@ -80,4 +83,20 @@ class BuildingPileTest {
         assertTrue(pile.isEmpty());
         assertEquals(1, pile.getNextRequiredNumber());
     }
-}
\ No newline at end of file
+
+    @Test
+    void completedSequence_isHandedOverOnce() {
+        List<List<Card>> completed = new ArrayList<>();
+        BuildingPile pile = new BuildingPile(completed::add);
+        for (int number = 1; number <= 11; number++) {
+            pile.play(Card.numbered(CardColor.RED, number));
+        }
+        assertTrue(completed.isEmpty());
+        pile.play(Card.skipBo());
+
+        assertTrue(pile.isEmpty());
+        assertEquals(1, completed.size());
+        assertEquals(12, completed.get(0).size());
+        assertTrue(completed.get(0).contains(Card.skipBo()));
+    }
+}
@@ -0,0 +1,49 @@
+package com.group29.skipbo.card;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CardTest {
+
+    @Test
+    void sameColorAndNumber_isSameInstance() {
+        assertSame(Card.numbered(CardColor.RED, 7), Card.numbered(CardColor.RED, 7));
+        assertSame(Card.skipBo(), Card.skipBo());
+        assertNotSame(Card.numbered(CardColor.RED, 7), Card.numbered(CardColor.BLUE, 7));
+    }
+
+    @Test
+    void tokens_matchTheProtocol() {
+        assertEquals("7-R", Card.numbered(CardColor.RED, 7).getToken());
+        assertEquals("12-Y", Card.numbered(CardColor.YELLOW, 12).getToken());
+        assertEquals("1-B", Card.numbered(CardColor.BLUE, 1).toString());
+        assertEquals("SB", Card.skipBo().getToken());
+    }
+
+    @Test
+    void ordinals_areCompactAndRoundTrip() {
+        for (int ordinal = 0; ordinal < Card.COUNT; ordinal++) {
+            assertEquals(ordinal, Card.fromOrdinal(ordinal).getOrdinal());
+        }
+        assertTrue(Card.skipBo().isSkipBo());
+        assertEquals(Card.COUNT - 1, Card.skipBo().getOrdinal());
+        assertThrows(IllegalArgumentException.class, () -> Card.fromOrdinal(Card.COUNT));
+        assertThrows(IllegalArgumentException.class, () -> Card.numbered(CardColor.SKIPBO, 3));
+    }
+
+    @Test
+    void deck_onlyHoldsSharedCards() {
+        Deck deck = Deck.createStandardDeck(new Random(1));
+        Set<Card> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+        while (!deck.isEmpty()) {
+            distinct.add(deck.draw());
+        }
+        assertEquals(Card.COUNT, distinct.size());
+    }
+}
@@ -0,0 +1,233 @@
+package com.group29.skipbo.gateway;
+
+import com.group29.skipbo.server.SkipBoServer;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GatewayTest {
+
+    private static final int BACKENDS = 2;
+    private static final int ROUNDS = 6;
+    private static final String SECRET = "backend-secret";
+
+    @Test
+    void playerLeavingTheQueue_givesItsSeatBack() throws Exception {
+        withGateway((gateway, port, backendPort) -> {
+            // with the seat counted at the gateway every other round would put the two
+            // players at tables that wait for the one who left, on different backends
+            for (int round = 0; round < ROUNDS; round++) {
+                try (Client leaver = new Client(port, "Leaver" + round)) {
+                    leaver.send("GAME~2");
+                    assertEquals("QUEUE", leaver.read());
+                    awaitWaiting(gateway, 2, 1);
+                }
+                awaitWaiting(gateway, 2, 0);
+                try (Client first = new Client(port, "First" + round);
+                     Client second = new Client(port, "Second" + round)) {
+                    first.send("GAME~2");
+                    assertEquals("QUEUE", first.read());
+                    second.send("GAME~2");
+                    assertEquals("QUEUE", second.read());
+                    first.awaitStart();
+                    second.awaitStart();
+                }
+            }
+        });
+    }
+
+    @Test
+    void botsTakeTheirSeatsAtTheGateway() throws Exception {
+        withGateway((gateway, port, backendPort) -> {
+            for (int round = 0; round < ROUNDS; round++) {
+                try (Client player = new Client(port, "Solo" + round)) {
+                    player.send("ADDBOT");
+                    assertEquals("BOT_ADDED", player.read());
+                    player.send("GAME~2");
+                    assertEquals("QUEUE", player.read());
+                    player.awaitStart();
+                }
+            }
+            // a player and its bots must fit at one table
+            try (Client player = new Client(port, "Greedy")) {
+                for (int bot = 0; bot < 5; bot++) {
+                    player.send("ADDBOT");
+                    assertEquals("BOT_ADDED", player.read());
+                }
+                player.send("ADDBOT");
+                assertEquals("ERROR~205", player.read());
+            }
+        });
+    }
+
+    @Test
+    void droppedPlayerResumesOnItsBackend() throws Exception {
+        withGateway((gateway, port, backendPort) -> {
+            String token;
+            try (Client player = new Client(port, "Ann", "R")) {
+                token = player.token;
+                assertNotNull(token);
+                player.send("ADDBOT");
+                assertEquals("BOT_ADDED", player.read());
+                player.send("GAME~2");
+                assertEquals("QUEUE", player.read());
+                player.awaitStart();
+            }
+
+            // the right token gets the seat back on the same backend, even before the
+            // gateway noticed the old connection drop
+            try (Client back = new Client(port)) {
+                back.send("RESUME~Ann~" + token + "~0");
+                assertEquals("WELCOME~Ann~R~" + token, back.read());
+                assertTrue(back.read().startsWith("RESUMED~"));
+                back.send("HAND");
+                String hand;
+                do {
+                    hand = back.read();
+                    assertNotNull(hand);
+                } while (!hand.startsWith("HAND~"));
+            }
+
+            // a wrong token gets nothing once the name is free
+            long deadline = System.currentTimeMillis() + 5000;
+            while (gateway.sessionNamed("Ann") != null && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            try (Client thief = new Client(port)) {
+                thief.send("RESUME~Ann~" + token + "x~0");
+                assertEquals("ERROR~205", thief.read());
+            }
+        });
+    }
+
+    @Test
+    void onlyBackendsWithTheSecretRegister() throws Exception {
+        withGateway((gateway, port, backendPort) -> {
+            // the clients' port doesn't take registrations
+            try (Client client = new Client(port, "Intruder")) {
+                client.send("REGISTER~" + freePort());
+                assertEquals("ERROR~204", client.read());
+            }
+            // nor does the backend port without the secret
+            for (String line : new String[]{"REGISTER~" + freePort(), "REGISTER~" + freePort() + "~wrong"}) {
+                try (Socket socket = new Socket("127.0.0.1", backendPort)) {
+                    socket.setSoTimeout(5000);
+                    socket.getOutputStream().write((line + "\n").getBytes(StandardCharsets.UTF_8));
+                    assertEquals(-1, socket.getInputStream().read());
+                }
+            }
+            assertEquals(BACKENDS, gateway.backendCount());
+        });
+    }
+
+    private interface Body {
+        void run(Gateway gateway, int port, int backendPort) throws Exception;
+    }
+
+    // a gateway with BACKENDS servers registered on it, all on free ports
+    private static void withGateway(Body body) throws Exception {
+        int gatewayPort = freePort();
+        int backendPort = freePort();
+        Gateway gateway = new Gateway(gatewayPort);
+        gateway.configureRegistration("127.0.0.1", backendPort, SECRET);
+        List<SkipBoServer> servers = new ArrayList<>();
+        Thread.ofVirtual().start(gateway::start);
+        try {
+            for (int i = 0; i < BACKENDS; i++) {
+                SkipBoServer server = new SkipBoServer(freePort(), SkipBoServer.Transport.VIRTUAL, 1, 0);
+                server.configureGateway("127.0.0.1", backendPort, SECRET);
+                servers.add(server);
+                Thread.ofVirtual().start(server::start);
+            }
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (gateway.backendCount() < BACKENDS && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            assertEquals(BACKENDS, gateway.backendCount());
+            body.run(gateway, gatewayPort, backendPort);
+        } finally {
+            for (SkipBoServer server : servers) {
+                server.stop();
+            }
+            gateway.stop();
+        }
+    }
+
+    // the gateway queues and notices a closed client on the client's own thread
+    private static void awaitWaiting(Gateway gateway, int size, int seats) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (gateway.waiting(size) != seats && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(seats, gateway.waiting(size));
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    // a text client, HELLO already said unless it has no name
+    private static final class Client implements AutoCloseable {
+        private final Socket socket;
+        private final BufferedReader in;
+        private final PrintWriter out;
+        // the session token, with Feature.RESUME
+        private String token;
+
+        Client(int port) throws IOException {
+            socket = new Socket("127.0.0.1", port);
+            socket.setSoTimeout(10_000);
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+        }
+
+        Client(int port, String name) throws IOException {
+            this(port);
+            send("HELLO~" + name);
+            assertEquals("WELCOME~" + name, read());
+        }
+
+        Client(int port, String name, String features) throws IOException {
+            this(port);
+            send("HELLO~" + name + "~" + features);
+            String welcome = read();
+            assertTrue(welcome.startsWith("WELCOME~" + name + "~" + features + "~"), welcome);
+            token = welcome.substring(("WELCOME~" + name + "~" + features + "~").length());
+        }
+
+        void send(String line) {
+            out.println(line);
+        }
+
+        String read() throws IOException {
+            return in.readLine();
+        }
+
+        // the table was seated on a backend, anything before START must not be an error
+        void awaitStart() throws IOException {
+            String line;
+            do {
+                line = read();
+                assertNotNull(line, "connection closed before START");
+                assertFalse(line.startsWith("ERROR"), line);
+            } while (!line.startsWith("START"));
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.group29.skipbo.gateway;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HashRingTest {
+
+    private static final int TABLES = 10_000;
+
+    @Test
+    void tablesSpreadOverEveryBackend() {
+        HashRing<String> ring = new HashRing<>();
+        assertNull(ring.get(1));
+        for (String node : new String[]{"a", "b", "c", "d"}) {
+            ring.add(node, node);
+        }
+
+        Map<String, Integer> counts = new HashMap<>();
+        for (long table = 1; table <= TABLES; table++) {
+            counts.merge(ring.get(table), 1, Integer::sum);
+        }
+        assertEquals(4, counts.size());
+        // with 128 points each no backend should get much more or less than a quarter
+        for (int count : counts.values()) {
+            assertTrue(count > TABLES / 8 && count < TABLES / 2, "uneven spread: " + counts);
+        }
+    }
+
+    @Test
+    void removingBackendOnlyMovesItsTables() {
+        HashRing<String> ring = new HashRing<>();
+        for (String node : new String[]{"a", "b", "c"}) {
+            ring.add(node, node);
+        }
+        String[] before = new String[TABLES + 1];
+        for (int table = 1; table <= TABLES; table++) {
+            before[table] = ring.get(table);
+        }
+
+        ring.remove("b");
+        assertEquals(2, ring.nodes().size());
+        for (int table = 1; table <= TABLES; table++) {
+            String now = ring.get(table);
+            assertNotEquals("b", now);
+            if (!before[table].equals("b")) {
+                assertEquals(before[table], now, "table " + table + " moved");
+            }
+        }
+
+        // and it comes back to the same tables
+        ring.add("b", "b");
+        for (int table = 1; table <= TABLES; table++) {
+            assertEquals(before[table], ring.get(table));
+        }
+    }
+}
@@ -5,6 +5,9 @@ import com.group29.skipbo.card.Card;
 import com.group29.skipbo.card.CardColor;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class PlayerTurnActionsTest {
@@ -96,4 +99,37 @@ class PlayerTurnActionsTest {
         assertThrows(IllegalStateException.class, () -> player.playFromStock(building));
         assertEquals(1, player.getStockPile().size());
     }
-}
\ No newline at end of file
+
+    @Test
+    void changeListener_hearsEveryChangeOfAMove() {
+        Player player = new Player("P1", new StockPile());
+        BuildingPile building = new BuildingPile();
+        List<String> changes = new ArrayList<>();
+        player.setChangeListener(new Player.ChangeListener() {
+            @Override
+            public void handChanged(Player p) {
+                changes.add("hand");
+            }
+
+            @Override
+            public void discardChanged(Player p, int discardPileIndex) {
+                changes.add("discard." + discardPileIndex);
+            }
+
+            @Override
+            public void buildingChanged(BuildingPile pile) {
+                changes.add(pile == building ? "building" : "other");
+            }
+        });
+
+        player.getHand().add(Card.numbered(CardColor.RED, 1));
+        player.getHand().add(Card.numbered(CardColor.RED, 2));
+        player.getHand().add(Card.numbered(CardColor.RED, 9));
+        player.playFromHand(0, building);
+        player.discardFromHand(0, 3);
+        player.playFromDiscard(3, building);
+        assertThrows(IllegalStateException.class, () -> player.playFromHand(0, building));
+
+        assertEquals(List.of("hand", "building", "hand", "discard.3", "discard.3", "building"), changes);
+    }
+}
@@ -0,0 +1,151 @@
+package com.group29.skipbo.replay;
+
+import com.group29.skipbo.card.BuildingPile;
+import com.group29.skipbo.game.Game;
+import com.group29.skipbo.game.GameState;
+import com.group29.skipbo.player.Player;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReplayerTest {
+
+    private static final List<String> NAMES = List.of("ann", "Bot1");
+    private static final boolean[] BOTS = {false, true};
+
+    @Test
+    void recordsKeepTheirFields() {
+        short play = MoveRecord.play(5, MoveRecord.DISCARD_PILE, 3, 2);
+        assertEquals(MoveRecord.PLAY, MoveRecord.type(play));
+        assertEquals(5, MoveRecord.seat(play));
+        assertEquals(MoveRecord.DISCARD_PILE, MoveRecord.source(play));
+        assertEquals(3, MoveRecord.index(play));
+        assertEquals(2, MoveRecord.pile(play));
+        assertEquals("PLAY 5 D.3 B.2", MoveRecord.format(play));
+        assertEquals("DISCARD 1 H.4 D.3", MoveRecord.format(MoveRecord.discard(1, 4, 3)));
+        assertNotEquals(0, MoveRecord.turn(0));
+    }
+
+    @Test
+    void archivedGamesReplayToTheirWinner() throws IOException {
+        Path file = Files.createTempFile("games-", ReplayFile.SUFFIX);
+        List<GameRecord> played = new ArrayList<>();
+        for (long seed = 1; seed <= 3; seed++) {
+            played.add(play(seed));
+        }
+        ReplayFile.append(file, played.subList(0, 2));
+        ReplayFile.append(file, played.subList(2, 3));
+
+        List<GameRecord> read = ReplayFile.read(file);
+        assertEquals(3, read.size());
+        for (int i = 0; i < read.size(); i++) {
+            GameRecord record = read.get(i);
+            assertEquals(played.get(i).getSeed(), record.getSeed());
+            assertEquals(NAMES, record.getNames());
+            assertTrue(record.isBot(1));
+            assertEquals(played.get(i).getMoveCount(), record.getMoveCount());
+            Replayer replayer = Replayer.replay(record);
+            assertTrue(replayer.isOver());
+            assertEquals(record.getWinner(), replayer.getWinner());
+        }
+
+        // a game cut off while it was appended is left out
+        long size = Files.size(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(size - 5);
+        }
+        assertEquals(2, ReplayFile.read(file).size());
+
+        // repairing cuts it off, so a game appended afterwards can be read again
+        assertEquals(size - 5 - played.get(0).size() - played.get(1).size(), ReplayFile.repair(file));
+        ReplayFile.append(file, played.subList(2, 3));
+        assertEquals(3, ReplayFile.read(file).size());
+        assertEquals(0, ReplayFile.repair(file));
+        Files.delete(file);
+    }
+
+    @Test
+    void repairScansABigFileAWindowAtATime() throws IOException {
+        Path file = Files.createTempFile("games-", ReplayFile.SUFFIX);
+        GameRecord game = play(4);
+        // games straddle the window boundaries
+        int count = 2 * ReplayFile.REPAIR_WINDOW / game.size() + 3;
+        ReplayFile.append(file, Collections.nCopies(count, game));
+        long size = Files.size(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(size - 5);
+        }
+        assertEquals(game.size() - 5, ReplayFile.repair(file));
+        assertEquals((long) (count - 1) * game.size(), Files.size(file));
+        assertEquals(count - 1, ReplayFile.read(file).size());
+        assertEquals(0, ReplayFile.repair(file));
+        Files.delete(file);
+    }
+
+    @Test
+    void badMoveLeavesTheGameAlone() {
+        Replayer replayer = new Replayer(9, NAMES, BOTS);
+        int handSize = replayer.getGame().getPlayers().get(0).getHand().size();
+        assertThrows(IllegalStateException.class, () -> replayer.apply(MoveRecord.discard(1, 0, 0)));
+        assertThrows(IllegalStateException.class, () -> replayer.apply(MoveRecord.discard(0, 0, 7)));
+        assertThrows(IllegalStateException.class, () -> replayer.apply(MoveRecord.turn(0)));
+        assertEquals(handSize, replayer.getGame().getPlayers().get(0).getHand().size());
+        assertEquals(0, replayer.getApplied());
+    }
+
+    // we play a whole game greedily, the way GameTable applies moves, and record it
+    private static GameRecord play(long seed) {
+        Replayer live = new Replayer(seed, NAMES, BOTS);
+        Game game = live.getGame();
+        List<Short> moves = new ArrayList<>();
+        while (game.getState() == GameState.IN_PROGRESS) {
+            Player player = game.getCurrentPlayer();
+            int seat = game.getPlayers().indexOf(player);
+            short move;
+            while (game.getState() == GameState.IN_PROGRESS && (move = firstPlay(game, player, seat)) != 0) {
+                live.apply(move);
+                moves.add(move);
+            }
+            if (game.getState() != GameState.IN_PROGRESS) {
+                break;
+            }
+            if (!player.getHand().isEmpty()) {
+                move = MoveRecord.discard(seat, 0, moves.size() % 4);
+                live.apply(move);
+                moves.add(move);
+            }
+            move = MoveRecord.turn((seat + 1) % NAMES.size());
+            live.apply(move);
+            moves.add(move);
+        }
+        short[] packed = new short[moves.size()];
+        for (int i = 0; i < packed.length; i++) {
+            packed[i] = moves.get(i);
+        }
+        return new GameRecord((int) seed, seed, 0, 0, NAMES, BOTS, packed, live.getWinner());
+    }
+
+    private static short firstPlay(Game game, Player player, int seat) {
+        for (int b = 0; b < Game.NUM_BUILDING_PILES; b++) {
+            BuildingPile pile = game.getBuildingPile(b);
+            if (!player.getStockPile().isEmpty() && pile.canPlay(player.getStockPile().peekTop())) {
+                return MoveRecord.play(seat, MoveRecord.STOCK, 0, b);
+            }
+            for (int h = 0; h < player.getHand().size(); h++) {
+                if (pile.canPlay(player.getHand().get(h))) {
+                    return MoveRecord.play(seat, MoveRecord.HAND, h, b);
+                }
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,77 @@
+package com.group29.skipbo.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncLoggerTest {
+
+    @Test
+    void linesReachTheFileInOrder_belowLevelIsSkipped() throws IOException {
+        Path dir = Files.createTempDirectory("skipbo-log");
+        Path file = dir.resolve("server.log");
+        AsyncLogger logger = new AsyncLogger(64, AsyncLogger.Level.INFO, file, 1 << 20, 2);
+        AtomicInteger built = new AtomicInteger();
+
+        logger.log(AsyncLogger.Level.INFO, "GAME", "first");
+        logger.log(AsyncLogger.Level.DEBUG, "GAME", () -> "debug " + built.incrementAndGet());
+        logger.log(AsyncLogger.Level.ERROR, "ERROR", () -> "second");
+        logger.close(5000);
+
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0).endsWith("[GAME] first"));
+        assertTrue(lines.get(1).endsWith("[ERROR] second"));
+        // a DEBUG message is never even built at INFO
+        assertEquals(0, built.get());
+    }
+
+    @Test
+    void bigFile_rollsOver() throws IOException {
+        Path dir = Files.createTempDirectory("skipbo-log");
+        Path file = dir.resolve("server.log");
+        AsyncLogger logger = new AsyncLogger(4096, AsyncLogger.Level.INFO, file, 200, 2);
+
+        for (int i = 0; i < 100; i++) {
+            logger.log(AsyncLogger.Level.INFO, "SERVER", "line " + i);
+        }
+        logger.close(5000);
+
+        assertTrue(Files.exists(dir.resolve("server.log.1")));
+        assertFalse(Files.exists(dir.resolve("server.log.3")));
+    }
+
+    @Test
+    void manyThreads_noLineLostOrDoubled() throws Exception {
+        Path dir = Files.createTempDirectory("skipbo-log");
+        Path file = dir.resolve("server.log");
+        AsyncLogger logger = new AsyncLogger(1 << 16, AsyncLogger.Level.INFO, file, 1 << 30, 1);
+
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            int id = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 5000; i++) {
+                    logger.log(AsyncLogger.Level.INFO, "T" + id, "line " + i);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        logger.close(5000);
+
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(20_000 - logger.getDropped(), lines.size());
+        // without the timestamp every line is still different
+        assertEquals(20_000, lines.stream().map(line -> line.substring(line.indexOf('['))).distinct().count()
+                + logger.getDropped());
+    }
+}
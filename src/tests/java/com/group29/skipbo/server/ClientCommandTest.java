@@ -0,0 +1,201 @@
+package com.group29.skipbo.server;
+
+import org.junit.jupiter.api.Test;
+import protocol.BinaryProtocol;
+import protocol.common.ErrorCode;
+import protocol.common.Feature;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClientCommandTest {
+
+    @Test
+    void blankLine_hasNoType() {
+        ClientCommand command = new ClientCommand();
+        assertNull(command.parse("   "));
+        assertNull(command.type);
+    }
+
+    @Test
+    void hello_keepsTrimmedName() {
+        ClientCommand command = new ClientCommand();
+        assertNull(command.parse("hello~ Alice ~CHAT"));
+        assertEquals(ClientCommand.Type.HELLO, command.type);
+        assertEquals("Alice", command.name);
+    }
+
+    @Test
+    void helloWithoutName_isInvalidName() {
+        ClientCommand command = new ClientCommand();
+        assertEquals(ErrorCode.INVALID_PLAYER_NAME, command.parse("HELLO"));
+        assertEquals(ErrorCode.INVALID_PLAYER_NAME, command.parse("HELLO~  "));
+    }
+
+    @Test
+    void game_readsPlayerCount() {
+        ClientCommand command = new ClientCommand();
+        assertNull(command.parse("GAME~4\r"));
+        assertEquals(ClientCommand.Type.GAME, command.type);
+        assertEquals(4, command.playerCount);
+    }
+
+    @Test
+    void gameWithBadCount_isInvalidCommand() {
+        ClientCommand command = new ClientCommand();
+        assertEquals(ErrorCode.INVALID_COMMAND, command.parse("GAME"));
+        assertEquals(ErrorCode.INVALID_COMMAND, command.parse("GAME~x"));
+        assertEquals(ErrorCode.INVALID_COMMAND, command.parse("GAME~99999999999"));
+    }
+
+    @Test
+    void play_readsSourceAndBuildingPile() {
+        ClientCommand command = new ClientCommand();
+        assertNull(command.parse("PLAY~h.3~B.2"));
+        assertEquals(ClientCommand.Type.PLAY, command.type);
+        assertEquals(ClientCommand.Source.HAND, command.source);
+        assertEquals(3, command.sourceIndex);
+        assertEquals(2, command.buildingIndex);
+
+        assertNull(command.parse("PLAY~S~B.0"));
+        assertEquals(ClientCommand.Source.STOCK, command.source);
+        assertEquals(0, command.buildingIndex);
+
+        assertNull(command.parse("PLAY~D.1~b.3"));
+        assertEquals(ClientCommand.Source.DISCARD, command.source);
+        assertEquals(1, command.sourceIndex);
+        assertEquals(3, command.buildingIndex);
+    }
+
+    @Test
+    void playWithBadPositions_isInvalidMove() {
+        ClientCommand command = new ClientCommand();
+        assertEquals(ErrorCode.INVALID_MOVE, command.parse("PLAY~X.1~B.0"));
+        assertEquals(ErrorCode.INVALID_MOVE, command.parse("PLAY~H~B.0"));
+        assertEquals(ErrorCode.INVALID_MOVE, command.parse("PLAY~H.1~D.0"));
+        assertEquals(ErrorCode.INVALID_MOVE, command.parse("PLAY~S~B.x"));
+    }
+
+    @Test
+    void playWithMissingFields_isInvalidCommand() {
+        ClientCommand command = new ClientCommand();
+        assertEquals(ErrorCode.INVALID_COMMAND, command.parse("PLAY"));
+        assertEquals(ErrorCode.INVALID_COMMAND, command.parse("PLAY~S"));
+    }
+
+    @Test
+    void heartbeat_parsesBothWays() {
+        ClientCommand command = new ClientCommand();
+        assertNull(command.parse("PING"));
+        assertEquals(ClientCommand.Type.PING, command.type);
+        assertNull(command.parse(body("PONG")));
+        assertEquals(ClientCommand.Type.PONG, command.type);
+    }
+
+    @Test
+    void unknownCommand_isInvalidCommand() {
+        ClientCommand command = new ClientCommand();
+        assertEquals(ErrorCode.INVALID_COMMAND, command.parse("JUMP~1"));
+        assertNull(command.type);
+    }
+
+    @Test
+    void formatting_matchesProtocol() {
+        assertEquals("S", ClientCommand.formatSource(ClientCommand.Source.STOCK, 0));
+        assertEquals("H.4", ClientCommand.formatSource(ClientCommand.Source.HAND, 4));
+        assertEquals("B.1", ClientCommand.formatBuilding(1));
+    }
+
+    @Test
+    void hello_readsFeatureLetters() {
+        ClientCommand command = new ClientCommand();
+        assertNull(command.parse("HELLO~Alice~CBT"));
+        assertTrue(command.hasFeature(Feature.BINARY));
+        assertTrue(command.hasFeature(Feature.TABLE_DELTA));
+        assertNull(command.parse("HELLO~Alice~C"));
+        assertFalse(command.hasFeature(Feature.BINARY));
+        assertTrue(command.hasFeature(Feature.CHAT));
+    }
+
+    @Test
+    void handAndTable_readOptionalVersion() {
+        ClientCommand command = new ClientCommand();
+        assertNull(command.parse("TABLE"));
+        assertEquals(-1, command.version);
+        assertNull(command.parse("TABLE~12"));
+        assertEquals(ClientCommand.Type.TABLE, command.type);
+        assertEquals(12, command.version);
+        assertNull(command.parse("hand~0"));
+        assertEquals(ClientCommand.Type.HAND, command.type);
+        assertEquals(0, command.version);
+        assertEquals(ErrorCode.INVALID_COMMAND, command.parse("HAND~x"));
+
+        assertNull(command.parse(body("TABLE~40000")));
+        assertEquals(40000, command.version);
+        assertNull(command.parse(body("HAND")));
+        assertEquals(-1, command.version);
+    }
+
+    @Test
+    void binaryFrames_parseLikeText() {
+        ClientCommand command = new ClientCommand();
+        assertNull(command.parse(body("PLAY~D.2~B.1")));
+        assertEquals(ClientCommand.Type.PLAY, command.type);
+        assertEquals(ClientCommand.Source.DISCARD, command.source);
+        assertEquals(2, command.sourceIndex);
+        assertEquals(1, command.buildingIndex);
+
+        assertNull(command.parse(body("GAME~5")));
+        assertEquals(5, command.playerCount);
+
+        assertNull(command.parse(body("HELLO~Bob~B")));
+        assertEquals("Bob", command.name);
+        assertTrue(command.hasFeature(Feature.BINARY));
+
+        assertEquals(ErrorCode.INVALID_MOVE, command.parse(body("PLAY~H.SB~B.1")));
+        assertEquals(ErrorCode.INVALID_COMMAND, command.parse(body("JUMP")));
+    }
+
+    private static ByteBuffer body(String line) {
+        byte[] frame = BinaryProtocol.encode(line);
+        return ByteBuffer.wrap(frame, BinaryProtocol.HEADER_LENGTH, frame.length - BinaryProtocol.HEADER_LENGTH);
+    }
+
+    @Test
+    void metrics_readsOptionalToken() {
+        ClientCommand command = new ClientCommand();
+        assertNull(command.parse("METRICS~ s3cret "));
+        assertEquals(ClientCommand.Type.METRICS, command.type);
+        assertEquals("s3cret", command.token);
+
+        assertNull(command.parse("metrics"));
+        assertEquals(ClientCommand.Type.METRICS, command.type);
+        assertNull(command.token);
+    }
+
+    @Test
+    void watch_needsTableNumber() {
+        ClientCommand command = new ClientCommand();
+        assertNull(command.parse("watch~12"));
+        assertEquals(ClientCommand.Type.WATCH, command.type);
+        assertEquals(12, command.tableId);
+
+        assertEquals(ErrorCode.INVALID_COMMAND, command.parse("WATCH"));
+        assertEquals(ErrorCode.INVALID_COMMAND, command.parse("WATCH~x"));
+    }
+
+    @Test
+    void resume_readsNameTokenAndSequence() {
+        ClientCommand command = new ClientCommand();
+        assertNull(command.parse("RESUME~ann~k3y~42"));
+        assertEquals(ClientCommand.Type.RESUME, command.type);
+        assertEquals("ann", command.name);
+        assertEquals("k3y", command.token);
+        assertEquals(42, command.sequence);
+
+        assertEquals(ErrorCode.INVALID_PLAYER_NAME, command.parse("RESUME"));
+        assertEquals(ErrorCode.INVALID_COMMAND, command.parse("RESUME~ann~k3y"));
+        assertEquals(ErrorCode.INVALID_COMMAND, command.parse("RESUME~ann~k3y~-1"));
+    }
+}
@@ -0,0 +1,58 @@
+package com.group29.skipbo.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventLogTest {
+
+    @Test
+    void since_returnsWhatTheSeatMissed() {
+        EventLog log = new EventLog();
+        assertEquals(1, log.append("START~a,b", -1).getSequence());
+        log.append("HAND~1-R", 0);
+        log.append("HAND~2-B", 1);
+        log.append("TURN~a", -1);
+        assertEquals(4, log.last());
+
+        List<EncodedLine> missed = log.since(1, 1);
+        assertEquals(List.of("HAND~2-B", "TURN~a"), missed.stream().map(EncodedLine::toString).toList());
+        assertTrue(log.since(4, 0).isEmpty());
+        assertNull(log.since(5, 0)); // from the future
+    }
+
+    @Test
+    void since_isNullOnceTheRingMovedOn() {
+        EventLog log = new EventLog();
+        for (int i = 0; i < EventLog.CAPACITY + 10; i++) {
+            log.append("TURN~a", -1);
+        }
+        assertNull(log.since(5, 0));
+        assertEquals(EventLog.CAPACITY, log.since(10, 0).size());
+    }
+
+    @Test
+    void resumableClientsGetTheSequenceAsLastField() {
+        GameController controller = new GameController(0);
+        try {
+            ClientHandler plain = new ClientHandler(new RecordingConnection(), controller);
+            ClientHandler resumable = new ClientHandler(new RecordingConnection(), controller);
+            plain.handleLine("HELLO~plain");
+            resumable.handleLine("HELLO~res~R");
+
+            EncodedLine line = new EventLog().append("TURN~a", -1);
+            assertEquals("TURN~a\n", text(line, plain));
+            assertEquals("TURN~a~1\n", text(line, resumable));
+            assertSame(line.encodedFor(plain), line.encodedFor(plain));
+        } finally {
+            controller.shutdown();
+        }
+    }
+
+    private static String text(EncodedLine line, ClientHandler client) {
+        return StandardCharsets.UTF_8.decode(line.encodedFor(client).duplicate()).toString();
+    }
+}
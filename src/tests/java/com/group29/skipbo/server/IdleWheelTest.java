@@ -0,0 +1,108 @@
+package com.group29.skipbo.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdleWheelTest {
+
+    // we keep what the handler sends instead of writing it anywhere
+    private static final class RecordingConnection implements ClientConnection {
+        final List<String> lines = new ArrayList<>();
+        boolean closed;
+
+        @Override
+        public boolean offer(ByteBuffer frame) {
+            lines.add(StandardCharsets.UTF_8.decode(frame.duplicate()).toString().trim());
+            return true;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public int pendingLines() {
+            return 0;
+        }
+
+        @Override
+        public long pendingSince() {
+            return 0;
+        }
+
+        @Override
+        public void replacePending(ByteBuffer frame) {
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private long now;
+
+    private void advance(IdleWheel wheel, long ms, Runnable eachTick) {
+        for (long t = 0; t < ms; t += IdleWheel.TICK_MS) {
+            now += TimeUnit.MILLISECONDS.toNanos(IdleWheel.TICK_MS);
+            eachTick.run();
+            wheel.tick();
+        }
+    }
+
+    @Test
+    void quietClient_getsPingThenIsDropped() {
+        GameController controller = new GameController();
+        RecordingConnection connection = new RecordingConnection();
+        ClientHandler handler = new ClientHandler(connection, controller);
+        IdleWheel wheel = new IdleWheel(1000, 3000, () -> now);
+        wheel.watch(handler);
+
+        advance(wheel, 1500, () -> { });
+        assertEquals(List.of("PING"), connection.lines);
+        assertTrue(handler.isConnected());
+
+        advance(wheel, 2000, () -> { });
+        assertFalse(handler.isConnected());
+        assertTrue(connection.closed);
+        controller.shutdown();
+    }
+
+    @Test
+    void activeClient_isLeftAlone() {
+        GameController controller = new GameController();
+        RecordingConnection connection = new RecordingConnection();
+        ClientHandler handler = new ClientHandler(connection, controller);
+        IdleWheel wheel = new IdleWheel(1000, 3000, () -> now);
+        wheel.watch(handler);
+
+        advance(wheel, 10_000, () -> handler.touch(now));
+        assertTrue(connection.lines.isEmpty());
+        assertTrue(handler.isConnected());
+        controller.shutdown();
+    }
+
+    @Test
+    void longTimeouts_waitWholeTurnsOfTheWheel() {
+        GameController controller = new GameController();
+        RecordingConnection connection = new RecordingConnection();
+        ClientHandler handler = new ClientHandler(connection, controller);
+        // more than one turn of the wheel (128 s)
+        IdleWheel wheel = new IdleWheel(0, 200_000, () -> now);
+        wheel.watch(handler);
+
+        advance(wheel, 199_000, () -> { });
+        assertTrue(handler.isConnected());
+        advance(wheel, 1500, () -> { });
+        assertFalse(handler.isConnected());
+        assertTrue(connection.lines.isEmpty());
+        controller.shutdown();
+    }
+}
@@ -0,0 +1,39 @@
+package com.group29.skipbo.server;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    void percentiles_stayWithinABucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int micros = 1; micros <= 1000; micros++) {
+            histogram.record(micros * 1000L);
+        }
+
+        assertEquals(1000, histogram.count());
+        assertEquals(1000, histogram.max());
+        assertEquals(500, histogram.mean());
+        // 32 buckets per power of two, so at most about 3% above the real value
+        assertTrue(Math.abs(histogram.percentile(0.50) - 500) <= 16);
+        assertTrue(Math.abs(histogram.percentile(0.99) - 990) <= 32);
+    }
+
+    @Test
+    void bucketBounds_coverEveryValueOnce() {
+        for (long micros = 0; micros < 100_000; micros++) {
+            int index = LatencyHistogram.index(micros);
+            assertTrue(micros <= LatencyHistogram.upperBound(index));
+            if (index > 0) {
+                assertTrue(micros > LatencyHistogram.upperBound(index - 1));
+            }
+        }
+    }
+
+    @Test
+    void empty_summarizesToZeros() {
+        assertEquals("0/0.00/0.00/0.00/0.00", new LatencyHistogram().summary());
+    }
+}
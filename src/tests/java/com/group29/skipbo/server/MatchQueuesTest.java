@@ -0,0 +1,89 @@
+package com.group29.skipbo.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MatchQueuesTest {
+
+    @Test
+    void fullQueue_seatsOldestFirst() {
+        MatchQueues queues = new MatchQueues();
+        queues.add("a", null, 2, 0);
+        assertNull(queues.takeTable(2));
+        queues.add("b", null, 2, 1);
+        queues.add("c", null, 2, 2);
+
+        Map<String, ClientHandler> seats = queues.takeTable(2);
+        assertEquals(List.of("a", "b"), List.copyOf(seats.keySet()));
+        assertEquals(1, queues.size(2));
+        assertNotNull(queues.get("c"));
+        assertNull(queues.get("a"));
+    }
+
+    @Test
+    void sizes_dontBlockEachOther() {
+        MatchQueues queues = new MatchQueues();
+        queues.add("five", null, 5, 0);
+        queues.add("a", null, 3, 1);
+        queues.add("b", null, 3, 2);
+        queues.add("c", null, 3, 3);
+
+        assertEquals(List.of("a", "b", "c"), List.copyOf(queues.takeTable(3).keySet()));
+        assertNull(queues.takeTable(5));
+        assertEquals(1, queues.size(5));
+    }
+
+    @Test
+    void askingAgain_movesToTheNewQueue() {
+        MatchQueues queues = new MatchQueues();
+        queues.add("a", null, 4, 0);
+        queues.add("a", null, 2, 1);
+        queues.add("b", null, 2, 2);
+
+        assertEquals(0, queues.size(4));
+        assertEquals(List.of("a", "b"), List.copyOf(queues.takeTable(2).keySet()));
+        assertNull(queues.remove("a"));
+    }
+
+    @Test
+    void takeAll_emptiesAShortQueue() {
+        MatchQueues queues = new MatchQueues();
+        queues.add("a", null, 4, 0);
+        queues.add("b", null, 4, 1);
+        queues.remove("a");
+
+        assertEquals(List.of("b"), List.copyOf(queues.takeAll(4).keySet()));
+        assertEquals(0, queues.size(4));
+    }
+
+    @Test
+    void botsLeave_withThePlayerWhoAddedThem() {
+        MatchQueues queues = new MatchQueues();
+        queues.addBot("Bot1", "a", 3, 0);
+        queues.add("a", null, 3, 1);
+        queues.addBot("Bot2", "a", 3, 2);
+        queues.add("b", null, 3, 3);
+
+        queues.remove("a");
+        assertEquals(List.of("Bot1", "Bot2"), queues.removeBots("a"));
+        assertEquals(1, queues.size(3));
+        assertNull(queues.get("Bot1"));
+        assertTrue(queues.removeBots("a").isEmpty());
+    }
+
+    @Test
+    void seatedBots_areNoLongerTheirOwnersToRemove() {
+        MatchQueues queues = new MatchQueues();
+        queues.add("a", null, 2, 0);
+        queues.addBot("Bot1", "a", 2, 1);
+        queues.addBot("Bot2", "a", 2, 2);
+
+        assertEquals(List.of("a", "Bot1"), List.copyOf(queues.takeTable(2).keySet()));
+        assertEquals(List.of("Bot2"), queues.removeBots("a"));
+        assertEquals(0, queues.size(2));
+    }
+}
@@ -0,0 +1,145 @@
+package com.group29.skipbo.server;
+
+import com.group29.skipbo.card.BuildingPile;
+import com.group29.skipbo.card.Card;
+import com.group29.skipbo.game.Game;
+import com.group29.skipbo.game.GameState;
+import com.group29.skipbo.player.HumanPlayer;
+import com.group29.skipbo.player.Player;
+import com.group29.skipbo.replay.MoveRecord;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MoveJournalTest {
+
+    @Test
+    void recoveredGameMatchesThePlayedOne() throws Exception {
+        Path file = Files.createTempFile("table-", ".journal");
+        List<String> names = List.of("ann", "bob", "cid");
+        Game live = new Game(42);
+        for (String name : names) {
+            live.addPlayer(HumanPlayer.create(name));
+        }
+        live.startGame();
+        MoveJournal journal = MoveJournal.create(file, 7, live.getSeed(), 0, names, List.of());
+
+        // we play greedy turns the way GameTable applies them and journal each step
+        for (int turn = 0; turn < 60 && live.getState() == GameState.IN_PROGRESS; turn++) {
+            Player player = live.getCurrentPlayer();
+            int seat = names.indexOf(player.getName());
+            while (live.getState() == GameState.IN_PROGRESS && playOne(live, player, seat, journal)) {
+                // keep playing
+            }
+            if (live.getState() != GameState.IN_PROGRESS) {
+                break;
+            }
+            if (!player.getHand().isEmpty()) {
+                player.discardFromHand(0, turn % 4);
+                journal.append(MoveRecord.discard(seat, 0, turn % 4));
+            }
+            live.nextTurn();
+            Player next = live.getCurrentPlayer();
+            if (!live.getDrawPile().isEmpty()) {
+                next.refillHand(live.getDrawPile());
+            }
+            journal.append(MoveRecord.turn(names.indexOf(next.getName())));
+        }
+        journal.close();
+
+        MoveJournal.Recovered recovered = MoveJournal.read(file);
+        assertEquals(7, recovered.tableId);
+        assertEquals(names, recovered.names);
+        assertTrue(recovered.moves.length > 60);
+        Game game = recovered.game;
+        assertEquals(live.getState(), game.getState());
+        assertEquals(live.getDrawPile().size(), game.getDrawPile().size());
+        for (int i = 0; i < Game.NUM_BUILDING_PILES; i++) {
+            assertEquals(live.getBuildingPile(i).getCurrentValue(), game.getBuildingPile(i).getCurrentValue());
+        }
+        for (int seat = 0; seat < names.size(); seat++) {
+            Player expected = live.getPlayers().get(seat);
+            Player actual = game.getPlayers().get(seat);
+            assertEquals(format(expected.getHand().getCards()), format(actual.getHand().getCards()));
+            assertEquals(expected.getStockPile().size(), actual.getStockPile().size());
+            for (int d = 0; d < 4; d++) {
+                assertEquals(TableViews.formatCard(expected.getDiscardPile(d).getTopCard()),
+                        TableViews.formatCard(actual.getDiscardPile(d).getTopCard()));
+            }
+        }
+        Files.delete(file);
+    }
+
+    @Test
+    void badRecordEndsTheJournal() throws Exception {
+        Path file = Files.createTempFile("table-", ".journal");
+        MoveJournal journal = MoveJournal.create(file, 1, 5, 0, List.of("ann", "bob"), List.of("bob"));
+        // ann may not end her turn twice
+        journal.append(MoveRecord.turn(1));
+        journal.append(MoveRecord.turn(1));
+        journal.close();
+
+        MoveJournal.Recovered recovered = MoveJournal.read(file);
+        assertEquals(1, recovered.moves.length);
+        assertTrue(recovered.bots.contains("bob"));
+        assertEquals("bob", recovered.game.getCurrentPlayer().getName());
+        Files.delete(file);
+    }
+
+    @Test
+    void failedGrow_stopsTheJournalNotTheGame() throws Exception {
+        Path file = Files.createTempFile("table-", ".journal");
+        MoveJournal journal = MoveJournal.create(file, 1, 5, 0, List.of("ann", "bob"), List.of());
+        for (int i = 0; i < MoveJournal.REGION_BYTES / Short.BYTES; i++) {
+            journal.append(MoveRecord.turn(i % 2));
+        }
+        // an interrupted mailbox thread closes the channel, so mapping the next region fails
+        Thread.currentThread().interrupt();
+        try {
+            assertDoesNotThrow(() -> journal.append(MoveRecord.turn(0)));
+        } finally {
+            Thread.interrupted();
+        }
+        assertDoesNotThrow(() -> journal.append(MoveRecord.turn(1)));
+        journal.sync();
+        journal.delete();
+        assertFalse(Files.exists(file));
+    }
+
+    private static List<String> format(List<Card> cards) {
+        return cards.stream().map(TableViews::formatCard).toList();
+    }
+
+    // the first legal play of stock, hand and discard, in that order
+    private static boolean playOne(Game game, Player player, int seat, MoveJournal journal) {
+        for (int b = 0; b < Game.NUM_BUILDING_PILES; b++) {
+            BuildingPile pile = game.getBuildingPile(b);
+            if (!player.getStockPile().isEmpty() && pile.canPlay(player.getStockPile().peekTop())) {
+                player.playFromStock(pile);
+                journal.append(MoveRecord.play(seat, MoveRecord.STOCK, 0, b));
+                return afterPlay(game, player);
+            }
+            for (int h = 0; h < player.getHand().size(); h++) {
+                if (pile.canPlay(player.getHand().get(h))) {
+                    player.playFromHand(h, pile);
+                    journal.append(MoveRecord.play(seat, MoveRecord.HAND, h, b));
+                    return afterPlay(game, player);
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean afterPlay(Game game, Player player) {
+        if (player.getStockPile().isEmpty()) {
+            game.endRound(player);
+        } else if (player.getHand().isEmpty() && !game.getDrawPile().isEmpty()) {
+            player.refillHand(game.getDrawPile());
+        }
+        return true;
+    }
+}
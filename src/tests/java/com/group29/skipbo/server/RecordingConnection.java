@@ -0,0 +1,84 @@
+package com.group29.skipbo.server;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// a text connection for tests that keeps every frame it was given, like a real
+// one the frames of a table task only show up once it flushes
+final class RecordingConnection implements ClientConnection {
+
+    private final List<ByteBuffer> pending = new ArrayList<>();
+    private final List<ByteBuffer> frames = new ArrayList<>();
+
+    @Override
+    public synchronized boolean offer(ByteBuffer frame) {
+        pending.add(frame);
+        return true;
+    }
+
+    @Override
+    public synchronized void flush() {
+        frames.addAll(pending);
+        pending.clear();
+        notifyAll();
+    }
+
+    // we wait until a line matches, the tables answer on their own threads
+    synchronized void await(Predicate<List<String>> done) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 20_000;
+        while (!done.test(lines())) {
+            long left = deadline - System.currentTimeMillis();
+            assertTrue(left > 0, "timed out, got " + lines());
+            wait(left);
+        }
+    }
+
+    synchronized void awaitLine(String prefix) throws InterruptedException {
+        await(lines -> lines.stream().anyMatch(line -> line.startsWith(prefix)));
+    }
+
+    synchronized void awaitWinner() throws InterruptedException {
+        awaitLine("WINNER~");
+    }
+
+    synchronized List<String> lines() {
+        List<String> lines = new ArrayList<>();
+        for (ByteBuffer frame : frames) {
+            lines.add(StandardCharsets.UTF_8.decode(frame.duplicate()).toString().trim());
+        }
+        return lines;
+    }
+
+    // everything after the spectator snapshot (WATCHING, TABLE, the stocks and TURN)
+    synchronized List<ByteBuffer> events() {
+        List<String> lines = lines();
+        int start = 2;
+        while (!lines.get(start).startsWith("TURN~")) {
+            start++;
+        }
+        return new ArrayList<>(frames.subList(start + 1, frames.size()));
+    }
+
+    @Override
+    public synchronized int pendingLines() {
+        return pending.size();
+    }
+
+    @Override
+    public long pendingSince() {
+        return 0;
+    }
+
+    @Override
+    public void replacePending(ByteBuffer frame) {
+    }
+
+    @Override
+    public void close() {
+    }
+}
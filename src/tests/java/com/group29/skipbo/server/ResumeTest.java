@@ -0,0 +1,71 @@
+package com.group29.skipbo.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResumeTest {
+
+    @Test
+    void droppedPlayerGetsOnlyTheMissedEvents() throws InterruptedException {
+        GameController controller = new GameController(0);
+        try {
+            RecordingConnection first = new RecordingConnection();
+            ClientHandler ann = new ClientHandler(first, controller);
+            ann.handleLine("HELLO~ann~R");
+            ann.handleLine("ADDBOT");
+            ann.handleLine("GAME~2");
+            // the bot plays at once, so the game waits for ann
+            first.awaitLine("TURN~ann~");
+
+            String welcome = first.lines().get(0);
+            assertTrue(welcome.startsWith("WELCOME~ann~R~"));
+            String token = welcome.substring("WELCOME~ann~R~".length());
+            List<String> events = first.lines().stream().filter(line -> line.matches(".*~\\d+$")
+                    && !line.startsWith("WELCOME")).toList();
+            assertTrue(events.get(0).startsWith("START~ann,"));
+            assertEquals("1", events.get(0).substring(events.get(0).lastIndexOf('~') + 1));
+
+            ann.disconnect();
+            assertTrue(controller.getTable("ann").isVacant("ann"));
+
+            // a wrong token gets nothing, the right one the seat and everything after START
+            RecordingConnection second = new RecordingConnection();
+            ClientHandler back = new ClientHandler(second, controller);
+            back.handleLine("RESUME~ann~notthetoken~1");
+            assertEquals("ERROR~205", second.lines().get(0));
+            back.handleLine("RESUME~ann~" + token + "~1");
+            int last = events.size();
+            second.await(lines -> lines.size() >= 3 + last - 1);
+
+            List<String> lines = second.lines();
+            assertEquals(welcome, lines.get(1));
+            assertTrue(lines.get(2).startsWith("RESUMED~"));
+            assertEquals(events.subList(1, last), lines.subList(3, lines.size()));
+            assertFalse(controller.getTable("ann").isVacant("ann"));
+        } finally {
+            controller.shutdown();
+        }
+    }
+
+    @Test
+    void clientsWithoutResumeLeaveAsBefore() throws InterruptedException {
+        GameController controller = new GameController(0);
+        try {
+            RecordingConnection connection = new RecordingConnection();
+            ClientHandler bob = new ClientHandler(connection, controller);
+            bob.handleLine("HELLO~bob");
+            bob.handleLine("ADDBOT");
+            bob.handleLine("GAME~2");
+            connection.awaitLine("TURN~bob");
+            assertEquals("WELCOME~bob", connection.lines().get(0));
+
+            bob.disconnect();
+            assertNull(controller.getTable("bob"));
+        } finally {
+            controller.shutdown();
+        }
+    }
+}
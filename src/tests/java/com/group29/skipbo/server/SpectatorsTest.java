@@ -0,0 +1,64 @@
+package com.group29.skipbo.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpectatorsTest {
+
+    @Test
+    void watchersFollowTheGameWithoutHands() throws InterruptedException {
+        GameController controller = new GameController(0);
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        BotScheduler scheduler = new BotScheduler();
+        try {
+            Map<String, ClientHandler> seats = new LinkedHashMap<>();
+            seats.put("Bot1", null);
+            seats.put("Bot2", null);
+            GameTable table = new GameTable(7, seats, controller, pool, scheduler, 1);
+            RecordingConnection first = new RecordingConnection();
+            RecordingConnection second = new RecordingConnection();
+            ClientHandler firstWatcher = new ClientHandler(first, controller);
+            ClientHandler secondWatcher = new ClientHandler(second, controller);
+
+            table.start();
+            for (ClientHandler watcher : List.of(firstWatcher, secondWatcher)) {
+                watcher.watch(table);
+                table.watch(watcher);
+            }
+            assertSame(table, firstWatcher.getWatching());
+            first.awaitWinner();
+            second.awaitWinner();
+
+            List<String> lines = first.lines();
+            assertEquals("WATCHING~7~Bot1,Bot2", lines.get(0));
+            assertTrue(lines.get(1).startsWith("TABLE~"));
+            assertTrue(lines.stream().noneMatch(line -> line.startsWith("HAND")));
+            assertTrue(lines.stream().anyMatch(line -> line.startsWith("PLAY~")));
+
+            // both saw the same events, from the same encoded bytes
+            List<ByteBuffer> a = first.events();
+            List<ByteBuffer> b = second.events();
+            assertFalse(a.isEmpty());
+            assertSame(a.get(a.size() - 1), b.get(b.size() - 1));
+
+            // once the game is won the table lets its watchers go
+            long deadline = System.currentTimeMillis() + 5000;
+            while (firstWatcher.getWatching() != null && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertNull(firstWatcher.getWatching());
+        } finally {
+            scheduler.shutdown();
+            pool.shutdown();
+            controller.shutdown();
+        }
+    }
+}
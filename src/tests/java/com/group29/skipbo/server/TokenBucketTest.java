@@ -0,0 +1,88 @@
+package com.group29.skipbo.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBucketTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    void burstThenRefill() {
+        TokenBucket bucket = new TokenBucket(2, 4, 0);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(bucket.tryTake(0));
+        }
+        assertFalse(bucket.tryTake(0));
+
+        // half a second brings back one token at 2 per second
+        assertTrue(bucket.tryTake(SECOND / 2));
+        assertFalse(bucket.tryTake(SECOND / 2));
+
+        // a long pause never saves up more than the burst
+        for (int i = 0; i < 4; i++) {
+            assertTrue(bucket.tryTake(100 * SECOND));
+        }
+        assertFalse(bucket.tryTake(100 * SECOND));
+    }
+
+    // we keep what the handler sends instead of writing it anywhere
+    private static final class RecordingConnection implements ClientConnection {
+        final List<String> lines = new ArrayList<>();
+
+        @Override
+        public boolean offer(ByteBuffer frame) {
+            lines.add(StandardCharsets.UTF_8.decode(frame.duplicate()).toString().trim());
+            return true;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public int pendingLines() {
+            return 0;
+        }
+
+        @Override
+        public long pendingSince() {
+            return 0;
+        }
+
+        @Override
+        public void replacePending(ByteBuffer frame) {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Test
+    void handler_answersOverBudgetWithRateLimited() {
+        GameController controller = new GameController();
+        controller.configureRateLimits(1, 0);
+        RecordingConnection connection = new RecordingConnection();
+        ClientHandler handler = new ClientHandler(connection, controller);
+
+        handler.handleLine("HELLO~spammer");
+        // a burst of 2 queries, then the third is over budget
+        handler.handleLine("TABLE");
+        handler.handleLine("TABLE");
+        handler.handleLine("TABLE");
+        // the heartbeat is never limited
+        handler.handleLine("PING");
+
+        assertEquals(List.of("WELCOME~spammer", "ERROR~205", "ERROR~205", "ERROR~207", "PONG"),
+                connection.lines);
+        handler.disconnect();
+        controller.shutdown();
+    }
+}
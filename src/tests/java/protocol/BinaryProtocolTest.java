@@ -0,0 +1,100 @@
+package protocol;
+
+import org.junit.jupiter.api.Test;
+import protocol.client.Hello;
+import protocol.common.Feature;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryProtocolTest {
+
+    private static String roundTrip(String line) throws ProtocolException {
+        byte[] frame = BinaryProtocol.encode(line);
+        assertEquals(frame.length - BinaryProtocol.HEADER_LENGTH, BinaryProtocol.readLength(frame[0], frame[1]));
+        return BinaryProtocol.decode(ByteBuffer.wrap(frame, BinaryProtocol.HEADER_LENGTH,
+                frame.length - BinaryProtocol.HEADER_LENGTH));
+    }
+
+    @Test
+    void clientCommands_roundTrip() throws ProtocolException {
+        assertEquals("HELLO~Alice~BC", roundTrip("HELLO~Alice~BC"));
+        assertEquals("GAME~3", roundTrip("GAME~3"));
+        assertEquals("HAND", roundTrip("HAND"));
+        assertEquals("TABLE", roundTrip("TABLE"));
+        assertEquals("TABLE~7", roundTrip("TABLE~7"));
+        assertEquals("HAND~0", roundTrip("HAND~0"));
+        assertEquals(BinaryProtocol.TABLE, BinaryProtocol.encode("TABLE~7")[BinaryProtocol.HEADER_LENGTH]);
+        assertEquals("PLAY~H.SB~B.2", roundTrip("PLAY~H.SB~B.2"));
+        assertEquals("PLAY~S~B.0", roundTrip("PLAY~S~B.0"));
+        assertEquals("END", roundTrip("END"));
+    }
+
+    @Test
+    void serverCommands_roundTrip() throws ProtocolException {
+        assertEquals("WELCOME~Alice~B", roundTrip("WELCOME~Alice~B"));
+        assertEquals("START~Alice,Bot1", roundTrip("START~Alice,Bot1"));
+        assertEquals("HAND~5-R,SB,12-Y", roundTrip("HAND~5-R,SB,12-Y"));
+        assertEquals("HAND~", roundTrip("HAND~"));
+        assertEquals("STOCK~Alice~X", roundTrip("STOCK~Alice~X"));
+        assertEquals("PLAY~Bot1~D.3~B.1~7", roundTrip("PLAY~Bot1~D.3~B.1~7"));
+        assertEquals("DISCARD~Alice~9-G~0", roundTrip("DISCARD~Alice~9-G~0"));
+        assertEquals("TABLE~X.3.SB.X~Alice.X.X.4-B.X,Bot1.X.X.X.X",
+                roundTrip("TABLE~X.3.SB.X~Alice.X.X.4-B.X,Bot1.X.X.X.X"));
+        assertEquals("TABLE~X.X.X.X~Alice.X.X.X.X~7", roundTrip("TABLE~X.X.X.X~Alice.X.X.X.X~7"));
+        assertEquals("TABLEDELTA~3~5~B.0.1-R,D.1.2.SB", roundTrip("TABLEDELTA~3~5~B.0.1-R,D.1.2.SB"));
+        assertEquals("TABLEDELTA~5~5~", roundTrip("TABLEDELTA~5~5~"));
+        assertEquals("HAND~5-R,SB~12", roundTrip("HAND~5-R,SB~12"));
+        assertEquals("NOTMODIFIED~TABLE~12", roundTrip("NOTMODIFIED~TABLE~12"));
+        assertEquals("WINNER~Alice", roundTrip("WINNER~Alice"));
+        assertEquals("ROUND~Alice.25,Bob.0", roundTrip("ROUND~Alice.25,Bob.0"));
+        assertEquals("ERROR~001", roundTrip("ERROR~001"));
+    }
+
+    @Test
+    void sequenceNumbers_followTheOpcode() throws ProtocolException {
+        assertEquals("TURN~Alice~18", roundTrip("TURN~Alice~18"));
+        assertEquals("STOCK~Alice~5-R~17", roundTrip("STOCK~Alice~5-R~17"));
+        assertEquals("PLAY~Bot1~D.3~B.1~7~40", roundTrip("PLAY~Bot1~D.3~B.1~7~40"));
+        byte[] frame = BinaryProtocol.encode("TURN~Alice~18");
+        assertEquals(BinaryProtocol.TURN | BinaryProtocol.SEQUENCED, frame[BinaryProtocol.HEADER_LENGTH] & 0xFF);
+        // a field that fits the command is never read as a sequence number
+        assertEquals(BinaryProtocol.HAND_CARDS, BinaryProtocol.encode("HAND~5~5")[BinaryProtocol.HEADER_LENGTH]);
+        assertEquals(BinaryProtocol.RAW, BinaryProtocol.encode("TURN~Alice~0")[BinaryProtocol.HEADER_LENGTH]);
+    }
+
+    @Test
+    void cardsAndPositions_areOneByte() {
+        assertEquals(BinaryProtocol.HEADER_LENGTH + 1 + 2, BinaryProtocol.encode("PLAY~H.1~B.2").length);
+        assertEquals(BinaryProtocol.HEADER_LENGTH + 1 + 1 + 3, BinaryProtocol.encode("HAND~1-R,2-G,SB").length);
+        assertEquals(-1, BinaryProtocol.packCard("13"));
+        assertEquals(-1, BinaryProtocol.packPosition("Q.1"));
+    }
+
+    @Test
+    void unknownOrOddLines_goAsRawText() throws ProtocolException {
+        byte[] frame = BinaryProtocol.encode("CHAT~hello there");
+        assertEquals(BinaryProtocol.RAW, frame[BinaryProtocol.HEADER_LENGTH]);
+        assertEquals("CHAT~hello there", roundTrip("CHAT~hello there"));
+        assertEquals("GAME~007", roundTrip("GAME~007"));
+        assertEquals("HAND~5-R,", roundTrip("HAND~5-R,"));
+        assertEquals("WINNER~Alice,", roundTrip("WINNER~Alice,"));
+    }
+
+    @Test
+    void truncatedFrame_throws() {
+        byte[] frame = BinaryProtocol.encode("STOCK~Alice~5-R");
+        // cut inside the name
+        ByteBuffer body = ByteBuffer.wrap(frame, BinaryProtocol.HEADER_LENGTH, 4);
+        assertThrows(ProtocolException.class, () -> BinaryProtocol.decode(body));
+    }
+
+    @Test
+    void commandObjects_encodeTheirText() throws ProtocolException {
+        Hello hello = new Hello("Alice", new Feature[]{Feature.BINARY});
+        byte[] frame = hello.transformToBinary();
+        assertEquals(BinaryProtocol.HELLO, frame[BinaryProtocol.HEADER_LENGTH]);
+        assertEquals(hello.transformToProtocolString(), roundTrip(hello.transformToProtocolString()));
+    }
+}